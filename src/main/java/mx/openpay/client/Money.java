@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import mx.openpay.client.enums.Currency;
+
+/**
+ * Exact amount of money kept as a long number of minor units of its currency, like cents, for code that adds or
+ * compares many amounts. Amounts are parsed directly from their text in the JSON and added, subtracted and multiplied
+ * without creating BigDecimals; operations that would overflow throw ArithmeticException instead of wrapping around.
+ * The equivalent BigDecimal is created only when asked for.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Longest text converted without BigDecimal: 18 digits always fit in a long. */
+    private static final int MAX_FAST_DIGITS = 18;
+
+    private final long minorUnits;
+
+    private final Currency currency;
+
+    /** Created the first time it's needed. Racing threads may each create one, with the same value. */
+    private transient BigDecimal decimal;
+
+    private Money(final long minorUnits, final Currency currency) {
+        if (currency == null) {
+            throw new IllegalArgumentException("Currency can't be null");
+        }
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    /**
+     * @param minorUnits The amount in minor units of the currency, like cents.
+     */
+    public static Money of(final long minorUnits, final Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * @throws ArithmeticException If the amount has more decimals than the currency or doesn't fit in a long.
+     */
+    public static Money valueOf(final BigDecimal amount, final Currency currency) {
+        BigInteger value = amount.setScale(currency.getFractionDigits(), RoundingMode.UNNECESSARY).unscaledValue();
+        if (value.bitLength() > 63) {
+            throw new ArithmeticException("Amount too large: " + amount);
+        }
+        return new Money(value.longValue(), currency);
+    }
+
+    /**
+     * Parses an amount as it comes in the JSON, like 100, 100.5, -0.05 or 1e2.
+     * @throws ArithmeticException If the amount has more decimals than the currency or doesn't fit in a long.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    public static Money parse(final CharSequence amount, final Currency currency) {
+        return new Money(parseMinorUnits(amount, currency.getFractionDigits()), currency);
+    }
+
+    /**
+     * Parses an amount as it comes in the JSON into minor units, with plain arithmetic when the amount has no exponent
+     * and at most the given decimals, and with BigDecimal otherwise.
+     * @param digits Number of decimals of the minor units.
+     * @throws ArithmeticException If the amount has more decimals than the given ones or doesn't fit in a long.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    public static long parseMinorUnits(final CharSequence amount, final int digits) {
+        int length = amount.length();
+        int first = length > 0 && amount.charAt(0) == '-' ? 1 : 0;
+        if (first == length || length - first > MAX_FAST_DIGITS) {
+            return slowMinorUnits(amount, digits);
+        }
+        long value = 0;
+        int decimals = -1;
+        for (int i = first; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == '.' && decimals < 0 && i > first) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9' && decimals < digits) {
+                value = value * 10 + (c - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return slowMinorUnits(amount, digits);
+            }
+        }
+        for (int i = Math.max(decimals, 0); i < digits; i++) {
+            value = multiplyExact(value, 10);
+        }
+        return first == 0 ? value : -value;
+    }
+
+    private static long slowMinorUnits(final CharSequence amount, final int digits) {
+        BigInteger value = new BigDecimal(amount.toString()).setScale(digits, RoundingMode.UNNECESSARY)
+                .unscaledValue();
+        if (value.bitLength() > 63) {
+            throw new ArithmeticException("Amount too large: " + amount);
+        }
+        return value.longValue();
+    }
+
+    public long getMinorUnits() {
+        return this.minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return this.currency;
+    }
+
+    /**
+     * @return The amount as a BigDecimal with the scale of the currency.
+     */
+    public BigDecimal toBigDecimal() {
+        BigDecimal value = this.decimal;
+        if (value == null) {
+            value = BigDecimal.valueOf(this.minorUnits, this.currency.getFractionDigits());
+            this.decimal = value;
+        }
+        return value;
+    }
+
+    public Money plus(final Money other) {
+        this.checkCurrency(other);
+        return new Money(addExact(this.minorUnits, other.minorUnits), this.currency);
+    }
+
+    public Money minus(final Money other) {
+        this.checkCurrency(other);
+        return new Money(addExact(this.minorUnits, negateExact(other.minorUnits)), this.currency);
+    }
+
+    public Money times(final long factor) {
+        return new Money(multiplyExact(this.minorUnits, factor), this.currency);
+    }
+
+    public Money negate() {
+        return new Money(negateExact(this.minorUnits), this.currency);
+    }
+
+    public int signum() {
+        return Long.signum(this.minorUnits);
+    }
+
+    /**
+     * Compares amounts of the same currency.
+     * @throws IllegalArgumentException If the currencies are different.
+     */
+    @Override
+    public int compareTo(final Money other) {
+        this.checkCurrency(other);
+        return this.minorUnits < other.minorUnits ? -1 : this.minorUnits == other.minorUnits ? 0 : 1;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) obj;
+        return this.minorUnits == other.minorUnits && this.currency == other.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (this.minorUnits ^ this.minorUnits >>> 32) * 31 + this.currency.hashCode();
+    }
+
+    /**
+     * @return The amount like 100.05, as sent in requests.
+     */
+    public String toPlainString() {
+        int digits = this.currency.getFractionDigits();
+        if (digits == 0) {
+            return Long.toString(this.minorUnits);
+        }
+        // Long.MIN_VALUE has no positive counterpart, so the digits are taken from the negative value
+        StringBuilder sb = new StringBuilder(Long.toString(this.minorUnits));
+        int start = this.minorUnits < 0 ? 1 : 0;
+        while (sb.length() - start <= digits) {
+            sb.insert(start, '0');
+        }
+        sb.insert(sb.length() - digits, '.');
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.toPlainString() + " " + this.currency;
+    }
+
+    private void checkCurrency(final Money other) {
+        if (this.currency != other.currency) {
+            throw new IllegalArgumentException("Different currencies: " + this.currency + ", " + other.currency);
+        }
+    }
+
+    private static long addExact(final long a, final long b) {
+        long sum = a + b;
+        // Overflow only if both have the same sign and the sum has a different one
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            throw new ArithmeticException("Amount too large");
+        }
+        return sum;
+    }
+
+    private static long negateExact(final long a) {
+        if (a == Long.MIN_VALUE) {
+            throw new ArithmeticException("Amount too large");
+        }
+        return -a;
+    }
+
+    private static long multiplyExact(final long a, final long b) {
+        long product = a * b;
+        if (a != 0 && (product / a != b || a == -1 && b == Long.MIN_VALUE)) {
+            throw new ArithmeticException("Amount too large");
+        }
+        return product;
+    }
+
+}
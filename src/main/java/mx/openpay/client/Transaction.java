@@ -23,6 +23,7 @@ import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import mx.openpay.client.enums.Currency;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -90,4 +91,17 @@ public class Transaction {
     /** Optional gateway affiliation information. */
     private GatewayResponse gateway;
 
+    /**
+     * @return The amount in the currency of the transaction, or null if the transaction has no amount or its currency
+     *         is not one of {@link Currency}.
+     * @throws ArithmeticException If the amount has more decimals than the currency or doesn't fit in a long.
+     */
+    public Money getMoney() {
+        if (this.amount == null || this.currency == null) {
+            return null;
+        }
+        Currency value = Currency.fromCode(this.currency);
+        return value == null ? null : Money.valueOf(this.amount, value);
+    }
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * JsonSerializer that reads and writes UTF-8 bytes directly, so bodies don't need to be converted to and from Strings.
+ */
+public interface ByteJsonSerializer extends StreamingJsonSerializer {
+
+    /**
+     * Serializes the object as UTF-8 JSON. Same rules as {@link JsonSerializer#serialize(Object)}.
+     * @param values The parameters to serialize.
+     * @param out The stream where the JSON is written. It is flushed, but not closed.
+     */
+    public void serialize(final Object values, final OutputStream out);
+
+    /**
+     * Serializes the object as UTF-8 JSON. Same rules as {@link JsonSerializer#serialize(Object)}.
+     * @param values The parameters to serialize.
+     * @return The serialized JSON.
+     */
+    public byte[] serializeToBytes(final Object values);
+
+    /**
+     * Deserializes the UTF-8 JSON stream into a list of objects of the given class. Same rules as
+     * {@link JsonSerializer#deserializeList(String, Class)}.
+     * @param json The JSON stream. It is not closed.
+     * @param clazz The expected object class
+     * @return The list of objects.
+     */
+    public <T> List<T> deserializeList(final InputStream json, final Class<T> clazz);
+
+    /**
+     * Deserializes the UTF-8 JSON stream into an object of the given class. Same rules as
+     * {@link JsonSerializer#deserialize(String, Class)}.
+     * @param json The JSON stream. It is not closed.
+     * @param clazz Type of the expected object.
+     * @return The deserialized object.
+     */
+    public <T> T deserialize(final InputStream json, final Class<T> clazz);
+
+}
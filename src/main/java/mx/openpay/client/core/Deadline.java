@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which the calls to Openpay must finish. A deadline is attached to the current thread, so every call
+ * made by the thread while it is attached, including retries, waiting for a pooled connection and reading the
+ * response, is limited to the remaining time.
+ * <p>
+ * Usually the deadline comes from the request that triggered the calls:
+ * </p>
+ *
+ * <pre>
+ * Deadline previous = Deadline.after(2, TimeUnit.SECONDS).attach();
+ * try {
+ *     api.charges().createCharge(params);
+ * } finally {
+ *     Deadline.restore(previous);
+ * }
+ * </pre>
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long nanoTime;
+
+    private Deadline(final long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Creates a deadline that expires after the given time.
+     */
+    public static Deadline after(final long duration, final TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @return The deadline attached to the current thread, or null if there is none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Restores the deadline that was attached before calling {@link #attach()}.
+     * @param previous The deadline returned by attach. May be null.
+     */
+    public static void restore(final Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Attaches this deadline to the current thread. If the thread already has an earlier deadline, that one is kept,
+     * so a nested call can never extend the budget of its caller.
+     * @return The deadline that was attached before, to be given to {@link #restore(Deadline)}.
+     */
+    public Deadline attach() {
+        Deadline previous = CURRENT.get();
+        if (previous == null || this.nanoTime - previous.nanoTime < 0) {
+            CURRENT.set(this);
+        }
+        return previous;
+    }
+
+    /**
+     * @return Milliseconds left before the deadline expires. Zero or negative if already expired.
+     */
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.nanoTime - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return this.nanoTime - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + this.remainingMillis() + " ms left]";
+    }
+
+}
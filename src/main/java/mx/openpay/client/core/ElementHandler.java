@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+/**
+ * Receives the objects of a list one at a time, while the list is parsed, so large pages can be processed without
+ * keeping all of them in memory.
+ * @see StreamingJsonSerializer#deserializeList(java.io.Reader, Class, ElementHandler)
+ */
+public interface ElementHandler<T> {
+
+    /**
+     * Receives the next object of the list.
+     * @param element The object, or null if the list contains a null.
+     */
+    public void handle(final T element);
+
+}
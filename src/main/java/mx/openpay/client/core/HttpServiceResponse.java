@@ -33,6 +33,11 @@ public class HttpServiceResponse {
 
     private String body;
 
+    /**
+     * Id given by Openpay to the request, from the response headers. Null if it wasn't sent.
+     */
+    private String requestId;
+
     public boolean isJson() {
         return this.contentType != null && this.contentType.startsWith(JSON_MIME_TYPE);
     }
@@ -17,13 +17,23 @@ package mx.openpay.client.core;
 
 import static mx.openpay.client.utils.OpenpayPathComponents.VERSION;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import mx.openpay.client.core.impl.DefaultHttpServiceClient;
 import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.core.tracing.Span;
+import mx.openpay.client.core.tracing.Span.Phase;
+import mx.openpay.client.core.tracing.Tracer;
+import mx.openpay.client.core.validation.CardValidator;
 import mx.openpay.client.exceptions.OpenpayServiceException;
 import mx.openpay.client.exceptions.ServiceUnavailableException;
 
@@ -38,6 +48,9 @@ public class JsonServiceClient {
 
     private static final String HTTP_RESOURCE_SEPARATOR = "/";
 
+    private static final ServiceInterceptor[] NO_INTERCEPTORS = new ServiceInterceptor[0];
+
+    @Getter
     private final String root;
 
     @Getter
@@ -49,6 +62,31 @@ public class JsonServiceClient {
     @Getter
     private final String merchantId;
 
+    /**
+     * Validates the cards before they are sent to Openpay. No validation is done if null.
+     */
+    @Getter
+    @Setter
+    private volatile CardValidator cardValidator;
+
+    /**
+     * Limits the rate of the requests made to Openpay. No limit is applied if null.
+     */
+    @Getter
+    @Setter
+    private volatile RateLimiter rateLimiter;
+
+    /**
+     * Interceptors run around each request, in order. Replaced on each change so requests don't need to lock.
+     */
+    private volatile ServiceInterceptor[] interceptors = NO_INTERCEPTORS;
+
+    /**
+     * Creates a span for each request. No spans are created by default.
+     */
+    @Getter
+    private volatile Tracer tracer = Tracer.NOOP;
+
     /**
      * Initializes a JsonServiceClient with the default JsonSerializer and HttpServiceClient.
      * @param location Base URL of the Webservice.
@@ -102,44 +140,153 @@ public class JsonServiceClient {
         return baseUri.toString();
     }
 
+    /**
+     * Adds an interceptor after the ones already added. The first interceptor added is the outermost one.
+     */
+    public synchronized void addInterceptor(final ServiceInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Interceptor can't be null");
+        }
+        ServiceInterceptor[] current = this.interceptors;
+        ServiceInterceptor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = interceptor;
+        this.interceptors = updated;
+    }
+
+    /**
+     * @return Whether the interceptor had been added.
+     */
+    public synchronized boolean removeInterceptor(final ServiceInterceptor interceptor) {
+        ServiceInterceptor[] current = this.interceptors;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == interceptor) {
+                ServiceInterceptor[] updated = new ServiceInterceptor[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, updated.length - i);
+                this.interceptors = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<ServiceInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(this.interceptors));
+    }
+
+    /**
+     * @param tracer The tracer, or null to stop tracing the requests.
+     */
+    public void setTracer(final Tracer tracer) {
+        this.tracer = tracer == null ? Tracer.NOOP : tracer;
+    }
+
     public <T> T get(final String path, final Class<T> clazz) throws OpenpayServiceException,
             ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.get(this.buildUri(path));
-        this.checkForErrors(response);
-        return this.deserializeObject(response, clazz);
+        return this.get(path, null, clazz);
     }
 
     public <T> T get(final String path, final Map<String, String> params, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.get(this.buildUri(path), params);
-        this.checkForErrors(response);
-        return this.deserializeObject(response, clazz);
+        Tracer tracer = this.tracer;
+        Span span = tracer.start();
+        try {
+            if (this.isStreaming()) {
+                return this.streamObject(path, params, clazz);
+            }
+            HttpServiceResponse response = this.call("GET", path, params, null, null, false);
+            this.checkForErrors(response);
+            return this.deserializeObject(response, clazz);
+        } finally {
+            tracer.end(span);
+        }
     }
 
     public <T> List<T> list(final String path, final Map<String, String> params, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.get(this.buildUri(path), params);
-        this.checkForErrors(response);
-        return this.deserializeList(response, clazz);
+        Tracer tracer = this.tracer;
+        Span span = tracer.start();
+        try {
+            if (this.isStreaming()) {
+                return this.streamList(path, params, clazz);
+            }
+            HttpServiceResponse response = this.call("GET", path, params, null, null, true);
+            this.checkForErrors(response);
+            return this.deserializeList(response, clazz);
+        } finally {
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Lists like {@link #list(String, Map, Class)}, but gives each object to the handler as soon as it is parsed
+     * instead of building the list, when the serializer supports it.
+     * @return The number of objects in the list.
+     */
+    public <T> int list(final String path, final Map<String, String> params, final Class<T> clazz,
+            final ElementHandler<? super T> handler) throws OpenpayServiceException, ServiceUnavailableException {
+        if (!(this.serializer instanceof StreamingJsonSerializer)) {
+            List<T> list = this.list(path, params, clazz);
+            if (list == null) {
+                return 0;
+            }
+            for (T element : list) {
+                handler.handle(element);
+            }
+            return list.size();
+        }
+        final StreamingJsonSerializer streamingSerializer = (StreamingJsonSerializer) this.serializer;
+        BodyReader<Integer> reader = new BodyReader<Integer>() {
+
+            @Override
+            public void read(final Reader body) {
+                this.value = streamingSerializer.deserializeList(body, clazz, handler);
+            }
+        };
+        this.read(path, params, reader);
+        return reader.value == null ? 0 : reader.value;
+    }
+
+    /**
+     * Gives the body of a successful GET to the reader, so it can be parsed without creating the model objects. The
+     * body is read while it is received when the HTTP client supports it.
+     */
+    public void read(final String path, final Map<String, String> params, final ResponseBodyReader reader)
+            throws OpenpayServiceException, ServiceUnavailableException {
+        Tracer tracer = this.tracer;
+        Span span = tracer.start();
+        try {
+            if (this.isStreaming()) {
+                this.stream(path, params, reader, true);
+            } else {
+                HttpServiceResponse response = this.call("GET", path, params, null, null, true);
+                this.checkForErrors(response);
+                this.readBody(response, reader);
+            }
+        } finally {
+            tracer.end(span);
+        }
     }
 
     public void delete(final String path) throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.delete(this.buildUri(path));
-        this.checkForErrors(response);
+        Tracer tracer = this.tracer;
+        Span span = tracer.start();
+        try {
+            HttpServiceResponse response = this.call("DELETE", path, null, null, null, false);
+            this.checkForErrors(response);
+        } finally {
+            tracer.end(span);
+        }
     }
 
     public <T> T put(final String path, final T params, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.put(this.buildUri(path), this.serializer.serialize(params));
-        this.checkForErrors(response);
-        return this.deserializeObject(response, clazz);
+        return this.send("PUT", path, params, true, clazz);
     }
 
     public <T> T put(final String path, final Map<String, Object> params, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.put(this.buildUri(path), this.serializer.serialize(params));
-        this.checkForErrors(response);
-        return this.deserializeObject(response, clazz);
+        return this.send("PUT", path, params, true, clazz);
     }
 
     public <T> T post(final String path, final Map<String, Object> params, final Class<T> clazz)
@@ -164,17 +311,164 @@ public class JsonServiceClient {
     
     public <T> T postObjectAsJson(final String path, final Object request, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        return this.postString(path, this.serializer.serialize(request), clazz);
+        return this.send("POST", path, request, true, clazz);
     }
 
     public <T> T postString(final String path, final String request, final Class<T> clazz)
             throws OpenpayServiceException, ServiceUnavailableException {
-        HttpServiceResponse response = this.httpClient.post(this.buildUri(path), request);
+        return this.send("POST", path, request, false, clazz);
+    }
+
+    /**
+     * Sends a POST or PUT.
+     * @param serialize Whether the request must be serialized, or is already a JSON String.
+     * @param clazz Class of the response, or null to ignore it.
+     */
+    private <T> T send(final String method, final String path, final Object request, final boolean serialize,
+            final Class<T> clazz) throws OpenpayServiceException, ServiceUnavailableException {
+        Tracer tracer = this.tracer;
+        Span span = tracer.start();
+        try {
+            String json;
+            if (serialize) {
+                long start = System.nanoTime();
+                json = this.serializer.serialize(request);
+                Span.addTimeSince(Phase.SERIALIZATION, start);
+            } else {
+                json = (String) request;
+            }
+            HttpServiceResponse response = this.call(method, path, null, json, null, false);
+            this.checkForErrors(response);
+            if (clazz == null) {
+                return null;
+            } else {
+                return this.deserializeObject(response, clazz);
+            }
+        } finally {
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Responses can be parsed while they are received only if both the client and the serializer support it.
+     */
+    private boolean isStreaming() {
+        return this.httpClient instanceof StreamingHttpServiceClient
+                && this.serializer instanceof StreamingJsonSerializer;
+    }
+
+    private <T> T streamObject(final String path, final Map<String, String> params, final Class<T> clazz)
+            throws OpenpayServiceException, ServiceUnavailableException {
+        final StreamingJsonSerializer streamingSerializer = (StreamingJsonSerializer) this.serializer;
+        BodyReader<T> reader = new BodyReader<T>() {
+
+            @Override
+            public void read(final Reader body) {
+                this.value = streamingSerializer.deserialize(body, clazz);
+            }
+        };
+        this.stream(path, params, reader, false);
+        return reader.value;
+    }
+
+    private <T> List<T> streamList(final String path, final Map<String, String> params, final Class<T> clazz)
+            throws OpenpayServiceException, ServiceUnavailableException {
+        final StreamingJsonSerializer streamingSerializer = (StreamingJsonSerializer) this.serializer;
+        BodyReader<List<T>> reader = new BodyReader<List<T>>() {
+
+            @Override
+            public void read(final Reader body) {
+                this.value = streamingSerializer.deserializeList(body, clazz);
+            }
+        };
+        this.stream(path, params, reader, true);
+        return reader.value;
+    }
+
+    private void stream(final String path, final Map<String, String> params, final ResponseBodyReader reader,
+            final boolean bulk) throws OpenpayServiceException, ServiceUnavailableException {
+        HttpServiceResponse response = this.call("GET", path, params, null, reader, bulk);
         this.checkForErrors(response);
-        if (clazz == null) {
-            return null;
+        // The body was buffered or returned by an interceptor instead of the HTTP client, so the reader hasn't seen it
+        if (response.getBody() != null) {
+            this.readBody(response, reader);
+        }
+    }
+
+    private void readBody(final HttpServiceResponse response, final ResponseBodyReader reader)
+            throws ServiceUnavailableException {
+        if (!response.isJson()) {
+            log.debug("Body wasn't returned as JSON: {}", response.getBody());
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            reader.read(new StringReader(response.getBody()));
+        } catch (IOException e) {
+            throw new ServiceUnavailableException(e);
+        } finally {
+            Span.addTimeSince(Phase.DESERIALIZATION, start);
+        }
+    }
+
+    /**
+     * Runs the request through the interceptors.
+     */
+    private HttpServiceResponse call(final String method, final String path, final Map<String, String> params,
+            final String body, final ResponseBodyReader reader, final boolean bulk)
+            throws ServiceUnavailableException {
+        ServiceCall call = new ServiceCall(this, this.interceptors, method, path, this.buildUri(path), params, body,
+                reader, bulk);
+        Span span = Span.current();
+        if (span == null || !span.isRecording()) {
+            return call.proceed();
+        }
+        span.setName(call.getOperationName());
+        try {
+            HttpServiceResponse response = call.proceed();
+            span.setStatusCode(response.getStatusCode());
+            span.setRequestId(response.getRequestId());
+            return response;
+        } catch (ServiceUnavailableException e) {
+            span.setError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the HTTP request of the call after the last interceptor, waiting for the rate limiter if any.
+     */
+    HttpServiceResponse execute(final ServiceCall call) throws ServiceUnavailableException {
+        RateLimiter limiter = this.rateLimiter;
+        OperationClass operation = null;
+        if (limiter != null) {
+            operation = call.getOperationClass();
+            limiter.acquire(operation, call.isBulk());
+        }
+        HttpServiceResponse response = this.send(call);
+        if (limiter != null) {
+            limiter.completed(operation, response.getStatusCode());
+        }
+        return response;
+    }
+
+    private HttpServiceResponse send(final ServiceCall call) throws ServiceUnavailableException {
+        String method = call.getMethod();
+        if ("GET".equals(method)) {
+            if (call.isStreaming()) {
+                return ((StreamingHttpServiceClient) this.httpClient).get(call.getUrl(), call.getParams(),
+                        call.getReader());
+            } else if (call.getParams() == null) {
+                return this.httpClient.get(call.getUrl());
+            } else {
+                return this.httpClient.get(call.getUrl(), call.getParams());
+            }
+        } else if ("POST".equals(method)) {
+            return this.httpClient.post(call.getUrl(), call.getBody());
+        } else if ("PUT".equals(method)) {
+            return this.httpClient.put(call.getUrl(), call.getBody());
         } else {
-            return this.deserializeObject(response, clazz);
+            return this.httpClient.delete(call.getUrl());
         }
     }
 
@@ -186,27 +480,37 @@ public class JsonServiceClient {
     }
 
     private void checkForErrors(final HttpServiceResponse response) throws OpenpayServiceException {
-        if (response.getStatusCode() >= 300) {
-            if (response.isJson()) {
-                OpenpayServiceException error = this.serializer.deserialize(response.getBody(),
-                        OpenpayServiceException.class);
-                error.setBody(response.getBody());
-                throw error;
-            } else {
-                log.error("Not a Json response. Code: {}, body: {} ", response.getStatusCode(), response.getBody());
-                OpenpayServiceException openpayServiceException = new OpenpayServiceException("["
-                        + response.getStatusCode() + "] Internal server error");
-                openpayServiceException.setHttpCode(response.getStatusCode());
-                openpayServiceException.setErrorCode(1000);
-                openpayServiceException.setBody(response.getBody());
-                throw openpayServiceException;
-            }
+        if (response.getStatusCode() < 300) {
+            return;
+        }
+        OpenpayServiceException error;
+        if (response.isJson()) {
+            error = this.serializer.deserialize(response.getBody(), OpenpayServiceException.class);
+            error.setBody(response.getBody());
+        } else {
+            log.error("Not a Json response. Code: {}, body: {} ", response.getStatusCode(), response.getBody());
+            error = new OpenpayServiceException("[" + response.getStatusCode() + "] Internal server error");
+            error.setHttpCode(response.getStatusCode());
+            error.setErrorCode(1000);
+            error.setBody(response.getBody());
+        }
+        if (error.getRequestId() == null) {
+            error.setRequestId(response.getRequestId());
         }
+        Span span = Span.current();
+        if (span != null && span.isRecording()) {
+            span.setError(error);
+            span.setRequestId(error.getRequestId());
+        }
+        throw error;
     }
 
     private <T> T deserializeObject(final HttpServiceResponse response, final Class<T> clazz) {
         if (response.isJson()) {
-            return this.serializer.deserialize(response.getBody(), clazz);
+            long start = System.nanoTime();
+            T value = this.serializer.deserialize(response.getBody(), clazz);
+            Span.addTimeSince(Phase.DESERIALIZATION, start);
+            return value;
         } else if (response.getBody() != null) {
             log.debug("Body wasn't returned as JSON: {}", response.getBody());
         }
@@ -215,11 +519,23 @@ public class JsonServiceClient {
 
     private <T> List<T> deserializeList(final HttpServiceResponse response, final Class<T> clazz) {
         if (response.isJson()) {
-            return this.serializer.deserializeList(response.getBody(), clazz);
+            long start = System.nanoTime();
+            List<T> list = this.serializer.deserializeList(response.getBody(), clazz);
+            Span.addTimeSince(Phase.DESERIALIZATION, start);
+            return list;
         } else {
             log.debug("Body wasn't returned as JSON: {}", response.getBody());
         }
         return null;
     }
 
+    /**
+     * Keeps the value parsed from a streamed response body.
+     */
+    private abstract static class BodyReader<T> implements ResponseBodyReader {
+
+        T value;
+
+    }
+
 }
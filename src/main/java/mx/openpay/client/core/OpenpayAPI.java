@@ -15,6 +15,11 @@
  */
 package mx.openpay.client.core;
 
+import mx.openpay.client.core.cache.CachingCardOperations;
+import mx.openpay.client.core.cache.CachingCustomerOperations;
+import mx.openpay.client.core.cache.CustomerCache;
+import mx.openpay.client.core.impl.Bulkhead;
+import mx.openpay.client.core.impl.DefaultHttpServiceClient;
 import mx.openpay.client.core.operations.BankAccountOperations;
 import mx.openpay.client.core.operations.BinesOperations;
 import mx.openpay.client.core.operations.CardOperations;
@@ -31,9 +36,11 @@ import mx.openpay.client.core.operations.SubscriptionOperations;
 import mx.openpay.client.core.operations.TransactionsPayoutOperations;
 import mx.openpay.client.core.operations.TransferOperations;
 import mx.openpay.client.core.operations.WebhookOperations;
+import mx.openpay.client.core.tracing.Tracer;
+import mx.openpay.client.core.validation.CardValidator;
 
 /**
- * Initializes all Operations from the Openpay API.
+ * Gives access to all Operations from the Openpay API. Each Operations object is created the first time it is used.
  * <p>
  * A custom JsonServiceClient can be used for all the operations. If only one operation is needed in all the
  * application, it may be better to initialize a JsonServiceClient and instantiate the Operation object.
@@ -44,37 +51,42 @@ public class OpenpayAPI {
 
     private final JsonServiceClient jsonClient;
 
-    private final BankAccountOperations bankAccountOperations;
+    // Most operations are stateless, so two threads racing on the first call may both create one without harm.
+    // Customers and cards depend on the customer cache, so they are created and replaced under a lock.
 
-    private final CustomerOperations customerOperations;
+    private CustomerCache customerCache;
 
-    private final CardOperations cardOperations;
+    private volatile BankAccountOperations bankAccountOperations;
 
-    private final ChargeOperations chargeOperations;
+    private volatile CustomerOperations customerOperations;
 
-    private final FeeOperations feeOperations;
+    private volatile CardOperations cardOperations;
 
-    private final PayoutOperations payoutOperations;
+    private volatile ChargeOperations chargeOperations;
 
-    private final TransferOperations transferOperations;
+    private volatile FeeOperations feeOperations;
 
-    private final PlanOperations planOperations;
+    private volatile PayoutOperations payoutOperations;
 
-    private final SubscriptionOperations subscriptionsOperations;
+    private volatile TransferOperations transferOperations;
 
-    private final MerchantOperations merchantOperations;
+    private volatile PlanOperations planOperations;
 
-    private final PaymentPlanOperations paymentPlanOperations;
+    private volatile SubscriptionOperations subscriptionsOperations;
 
-    private final WebhookOperations webhookOperations;
+    private volatile MerchantOperations merchantOperations;
 
-    private final OpenpayFeesOperations openpayFeesOperations;
+    private volatile PaymentPlanOperations paymentPlanOperations;
 
-    private final TransactionsPayoutOperations transactionsPayoutOperations;
+    private volatile WebhookOperations webhookOperations;
 
-    private final OrderOperations orderOperations;
+    private volatile OpenpayFeesOperations openpayFeesOperations;
 
-    private final BinesOperations binesOperations;
+    private volatile TransactionsPayoutOperations transactionsPayoutOperations;
+
+    private volatile OrderOperations orderOperations;
+
+    private volatile BinesOperations binesOperations;
 
     public OpenpayAPI(final String location, final String apiKey, final String merchantId) {
         this(new JsonServiceClient(location, merchantId, apiKey));
@@ -82,89 +94,240 @@ public class OpenpayAPI {
 
     public OpenpayAPI(final JsonServiceClient client) {
         this.jsonClient = client;
-        this.cardOperations = new CardOperations(this.jsonClient);
-        this.bankAccountOperations = new BankAccountOperations(this.jsonClient);
-        this.customerOperations = new CustomerOperations(this.jsonClient);
-        this.chargeOperations = new ChargeOperations(this.jsonClient);
-        this.feeOperations = new FeeOperations(this.jsonClient);
-        this.payoutOperations = new PayoutOperations(this.jsonClient);
-        this.transferOperations = new TransferOperations(this.jsonClient);
-        this.planOperations = new PlanOperations(this.jsonClient);
-        this.subscriptionsOperations = new SubscriptionOperations(this.jsonClient);
-        this.merchantOperations = new MerchantOperations(this.jsonClient);
-        this.openpayFeesOperations = new OpenpayFeesOperations(this.jsonClient);
-        this.transactionsPayoutOperations = new TransactionsPayoutOperations(this.jsonClient);
-        this.orderOperations = new OrderOperations(this.jsonClient);
-        this.paymentPlanOperations = new PaymentPlanOperations(this.jsonClient);
-        this.webhookOperations = new WebhookOperations(this.jsonClient);
-        this.binesOperations = new BinesOperations(this.jsonClient);
     }
 
     public void setTimeout(final int timeout) {
         this.jsonClient.getHttpClient().setConnectionTimeout(timeout);
     }
 
+    /**
+     * Sets the timeouts for one kind of request. Does nothing if a custom HttpServiceClient is used.
+     * @param profile The kind of request.
+     * @param connectionTimeout Timeout to establish the connection, in milliseconds.
+     * @param socketTimeout Maximum time waiting for data from the server, in milliseconds.
+     */
+    public void setTimeouts(final RequestProfile profile, final int connectionTimeout, final int socketTimeout) {
+        HttpServiceClient httpClient = this.jsonClient.getHttpClient();
+        if (httpClient instanceof DefaultHttpServiceClient) {
+            ((DefaultHttpServiceClient) httpClient).setTimeouts(profile, connectionTimeout, socketTimeout);
+        }
+    }
+
+    /**
+     * Limits the number of requests of one kind in flight at the same time, so slow reports can't take the
+     * connections needed by charges. Does nothing if a custom HttpServiceClient is used.
+     * @param profile The kind of request.
+     * @param maxInFlight Maximum number of requests in flight, or zero to remove the limit.
+     * @param queueTimeoutMillis Maximum time a request waits for its turn, in milliseconds.
+     * @see DefaultHttpServiceClient#setBulkhead(RequestProfile, int, long)
+     */
+    public void setBulkhead(final RequestProfile profile, final int maxInFlight, final long queueTimeoutMillis) {
+        HttpServiceClient httpClient = this.jsonClient.getHttpClient();
+        if (httpClient instanceof DefaultHttpServiceClient) {
+            ((DefaultHttpServiceClient) httpClient).setBulkhead(profile, maxInFlight, queueTimeoutMillis);
+        }
+    }
+
+    /**
+     * @return The bulkhead of the given kind of request, with its saturation metrics, or null if it has no limit or a
+     *         custom HttpServiceClient is used.
+     */
+    public Bulkhead getBulkhead(final RequestProfile profile) {
+        HttpServiceClient httpClient = this.jsonClient.getHttpClient();
+        if (httpClient instanceof DefaultHttpServiceClient) {
+            return ((DefaultHttpServiceClient) httpClient).getBulkhead(profile);
+        }
+        return null;
+    }
+
+    /**
+     * Validates the new cards of charges and card registrations before sending them, rejecting the ones Openpay would
+     * reject with a {@link mx.openpay.client.exceptions.CardValidationException}.
+     * @param cardValidator The validator, or null to send the cards without validation.
+     */
+    public void setCardValidator(final CardValidator cardValidator) {
+        this.jsonClient.setCardValidator(cardValidator);
+    }
+
+    /**
+     * Limits the rate of the requests made with this API, see {@link RateLimiter}.
+     * @param rateLimiter The rate limiter, or null to make the requests without limit.
+     */
+    public void setRateLimiter(final RateLimiter rateLimiter) {
+        this.jsonClient.setRateLimiter(rateLimiter);
+    }
+
+    /**
+     * Traces the requests made with this API, see {@link Tracer}.
+     * @param tracer The tracer, or null to stop tracing the requests.
+     */
+    public void setTracer(final Tracer tracer) {
+        this.jsonClient.setTracer(tracer);
+    }
+
+    /**
+     * Adds an interceptor that runs around each request made with this API, after the ones already added.
+     * @see JsonServiceClient#addInterceptor(ServiceInterceptor)
+     */
+    public void addInterceptor(final ServiceInterceptor interceptor) {
+        this.jsonClient.addInterceptor(interceptor);
+    }
+
+    /**
+     * @return Whether the interceptor had been added.
+     */
+    public boolean removeInterceptor(final ServiceInterceptor interceptor) {
+        return this.jsonClient.removeInterceptor(interceptor);
+    }
+
+    /**
+     * Answers the gets of customers and the gets and lists of cards from a near-cache. The operations returned by
+     * {@link #customers()} and {@link #cards()} are replaced by ones that use the cache.
+     * @param cache The cache, or null to stop using it.
+     */
+    public synchronized void setCustomerCache(final CustomerCache cache) {
+        this.customerCache = cache;
+        this.customerOperations = null;
+        this.cardOperations = null;
+    }
+
+    /**
+     * Opens connections to Openpay in advance, so the first requests after startup don't have to wait for the TCP and
+     * TLS handshakes. Does nothing if a custom HttpServiceClient is used.
+     * @param connections Number of connections to open.
+     * @return The number of connections that were opened.
+     */
+    public int warmUp(final int connections) {
+        HttpServiceClient httpClient = this.jsonClient.getHttpClient();
+        if (httpClient instanceof DefaultHttpServiceClient) {
+            return ((DefaultHttpServiceClient) httpClient).warmUp(this.jsonClient.getRoot(), connections);
+        }
+        return 0;
+    }
+
     public CustomerOperations customers() {
-        return this.customerOperations;
+        CustomerOperations operations = this.customerOperations;
+        if (operations == null) {
+            synchronized (this) {
+                if (this.customerOperations == null) {
+                    this.customerOperations = this.customerCache == null ? new CustomerOperations(this.jsonClient)
+                            : new CachingCustomerOperations(this.jsonClient, this.customerCache);
+                }
+                operations = this.customerOperations;
+            }
+        }
+        return operations;
     }
 
     public CardOperations cards() {
-        return this.cardOperations;
+        CardOperations operations = this.cardOperations;
+        if (operations == null) {
+            synchronized (this) {
+                if (this.cardOperations == null) {
+                    this.cardOperations = this.customerCache == null ? new CardOperations(this.jsonClient)
+                            : new CachingCardOperations(this.jsonClient, this.customerCache);
+                }
+                operations = this.cardOperations;
+            }
+        }
+        return operations;
     }
 
     public ChargeOperations charges() {
+        if (this.chargeOperations == null) {
+            this.chargeOperations = new ChargeOperations(this.jsonClient);
+        }
         return this.chargeOperations;
     }
 
     public FeeOperations fees() {
+        if (this.feeOperations == null) {
+            this.feeOperations = new FeeOperations(this.jsonClient);
+        }
         return this.feeOperations;
     }
 
     public PayoutOperations payouts() {
+        if (this.payoutOperations == null) {
+            this.payoutOperations = new PayoutOperations(this.jsonClient);
+        }
         return this.payoutOperations;
     }
 
     public TransferOperations transfers() {
+        if (this.transferOperations == null) {
+            this.transferOperations = new TransferOperations(this.jsonClient);
+        }
         return this.transferOperations;
     }
 
     public BankAccountOperations bankAccounts() {
+        if (this.bankAccountOperations == null) {
+            this.bankAccountOperations = new BankAccountOperations(this.jsonClient);
+        }
         return this.bankAccountOperations;
     }
 
     public PlanOperations plans() {
+        if (this.planOperations == null) {
+            this.planOperations = new PlanOperations(this.jsonClient);
+        }
         return this.planOperations;
     }
 
     public SubscriptionOperations subscriptions() {
+        if (this.subscriptionsOperations == null) {
+            this.subscriptionsOperations = new SubscriptionOperations(this.jsonClient);
+        }
         return this.subscriptionsOperations;
     }
 
     public MerchantOperations merchant() {
+        if (this.merchantOperations == null) {
+            this.merchantOperations = new MerchantOperations(this.jsonClient);
+        }
         return this.merchantOperations;
     }
 
     public OpenpayFeesOperations openpayFees() {
+        if (this.openpayFeesOperations == null) {
+            this.openpayFeesOperations = new OpenpayFeesOperations(this.jsonClient);
+        }
         return this.openpayFeesOperations;
     }
 
     public TransactionsPayoutOperations transactionsPayout() {
+        if (this.transactionsPayoutOperations == null) {
+            this.transactionsPayoutOperations = new TransactionsPayoutOperations(this.jsonClient);
+        }
         return this.transactionsPayoutOperations;
     }
 
     public OrderOperations orders() {
+        if (this.orderOperations == null) {
+            this.orderOperations = new OrderOperations(this.jsonClient);
+        }
         return this.orderOperations;
     }
 
     public PaymentPlanOperations paymentsPlans() {
+        if (this.paymentPlanOperations == null) {
+            this.paymentPlanOperations = new PaymentPlanOperations(this.jsonClient);
+        }
         return this.paymentPlanOperations;
     }
 
     public WebhookOperations webhooks() {
+        if (this.webhookOperations == null) {
+            this.webhookOperations = new WebhookOperations(this.jsonClient);
+        }
         return this.webhookOperations;
     }
 
     public BinesOperations bines() {
+        if (this.binesOperations == null) {
+            this.binesOperations = new BinesOperations(this.jsonClient);
+        }
         return this.binesOperations;
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import mx.openpay.client.core.impl.DefaultHttpServiceClient;
+import mx.openpay.client.core.impl.DefaultSerializer;
+
+/**
+ * Holds the credentials of many merchants and gives access to an {@link OpenpayAPI} for each one of them. All the
+ * merchants share a single connection pool, SSL context and serializer; the key and merchant id are sent per request
+ * by lightweight clients created with {@link DefaultHttpServiceClient#withKey(String)}.
+ * <p>
+ * The API of a merchant is created on first use and evicted after it has been idle for the configured time. Evicted
+ * merchants remain registered, so the next call simply creates a new API for them.
+ * </p>
+ */
+public class OpenpayTenantRegistry {
+
+    private final String location;
+
+    @Getter
+    private final JsonSerializer serializer;
+
+    @Getter
+    private final DefaultHttpServiceClient httpClient;
+
+    private final long maxIdleMillis;
+
+    private final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+
+    private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Initializes the registry with the default serializer and a pooled HTTP client.
+     * @param location Base URL of the Webservice.
+     * @param maxIdleMillis Time after which the API of an unused merchant is discarded.
+     */
+    public OpenpayTenantRegistry(final String location, final long maxIdleMillis) {
+        this(location, new DefaultSerializer(), new DefaultHttpServiceClient(true), maxIdleMillis);
+    }
+
+    /**
+     * Initializes the registry with a custom serializer and HTTP client, shared by all the merchants.
+     * @param location Base URL of the Webservice.
+     * @param serializer Serializer used by all the merchants.
+     * @param httpClient HTTP client whose connections are shared by all the merchants.
+     * @param maxIdleMillis Time after which the API of an unused merchant is discarded.
+     */
+    public OpenpayTenantRegistry(final String location, final JsonSerializer serializer,
+            final DefaultHttpServiceClient httpClient, final long maxIdleMillis) {
+        if (location == null) {
+            throw new IllegalArgumentException("Location can't be null");
+        }
+        this.location = location;
+        this.serializer = serializer;
+        this.httpClient = httpClient;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * Registers or replaces the key of a merchant. If the key changes, the current API of the merchant is discarded.
+     * @param merchantId Merchant's Id.
+     * @param apiKey Public or private key of the merchant.
+     */
+    public void register(final String merchantId, final String apiKey) {
+        if (merchantId == null) {
+            throw new IllegalArgumentException("Merchant ID can't be null");
+        }
+        String previous = this.keys.put(merchantId, apiKey);
+        if (previous != null && !previous.equals(apiKey)) {
+            this.tenants.remove(merchantId);
+        }
+    }
+
+    /**
+     * Removes the merchant and its API from the registry.
+     * @param merchantId Merchant's Id.
+     */
+    public void unregister(final String merchantId) {
+        this.keys.remove(merchantId);
+        this.tenants.remove(merchantId);
+    }
+
+    public boolean isRegistered(final String merchantId) {
+        return this.keys.containsKey(merchantId);
+    }
+
+    /**
+     * Returns the API of the given merchant, creating it if it was never used or had been evicted.
+     * @param merchantId Merchant's Id. Must have been registered previously.
+     * @return The API for the merchant.
+     */
+    public OpenpayAPI get(final String merchantId) {
+        long now = System.currentTimeMillis();
+        this.evictIfDue(now);
+        Tenant tenant = this.tenants.get(merchantId);
+        if (tenant == null) {
+            String key = this.keys.get(merchantId);
+            if (key == null) {
+                throw new IllegalArgumentException("Merchant not registered: " + merchantId);
+            }
+            Tenant created = new Tenant(this.createApi(merchantId, key));
+            tenant = this.tenants.putIfAbsent(merchantId, created);
+            if (tenant == null) {
+                tenant = created;
+            }
+        }
+        tenant.lastAccess = now;
+        return tenant.api;
+    }
+
+    protected OpenpayAPI createApi(final String merchantId, final String key) {
+        return new OpenpayAPI(new JsonServiceClient(this.location, merchantId, key, this.serializer,
+                this.httpClient.withKey(key)));
+    }
+
+    /**
+     * Discards the APIs that have not been used in the configured idle time.
+     * @return The number of evicted APIs.
+     */
+    public int evictIdle() {
+        long now = System.currentTimeMillis();
+        this.lastEviction.set(now);
+        return this.evictOlderThan(now - this.maxIdleMillis);
+    }
+
+    /**
+     * @return The number of merchants with an API currently in memory.
+     */
+    public int getActiveCount() {
+        return this.tenants.size();
+    }
+
+    private void evictIfDue(final long now) {
+        long last = this.lastEviction.get();
+        if (now - last >= this.maxIdleMillis / 2 && this.lastEviction.compareAndSet(last, now)) {
+            this.evictOlderThan(now - this.maxIdleMillis);
+        }
+    }
+
+    private int evictOlderThan(final long limit) {
+        int evicted = 0;
+        for (Iterator<Tenant> it = this.tenants.values().iterator(); it.hasNext();) {
+            if (it.next().lastAccess < limit) {
+                it.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private static class Tenant {
+
+        private final OpenpayAPI api;
+
+        private volatile long lastAccess;
+
+        Tenant(final OpenpayAPI api) {
+            this.api = api;
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import mx.openpay.client.utils.OpenpayPathComponents;
+
+/**
+ * Class of operation used to apply a separate rate limit to each, see {@link RateLimiter}.
+ */
+public enum OperationClass {
+
+    /** Charges, refunds and captures. */
+    CHARGES,
+
+    /** Payouts. */
+    PAYOUTS,
+
+    /** Any request that only reads data, including searches and reports. */
+    READS,
+
+    /** Everything else, like creating customers or cards. */
+    OTHER;
+
+    /**
+     * Finds the class of a request.
+     * @param method HTTP method of the request.
+     * @param path URL or path of the request.
+     * @return The class of the request.
+     */
+    public static OperationClass of(final String method, final String path) {
+        if ("GET".equals(method)) {
+            return READS;
+        }
+        if (path.contains(OpenpayPathComponents.CHARGES)) {
+            return CHARGES;
+        }
+        if (path.contains(OpenpayPathComponents.PAYOUTS)) {
+            return PAYOUTS;
+        }
+        return OTHER;
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Keeps the requests made with an API key under the rate Openpay allows, so the requests that matter most are not the
+ * ones throttled. There is a limit for all the requests, and optionally one for each {@link OperationClass}.
+ * <p>
+ * Requests are either interactive, like creating a charge, or bulk, like searches and reports. Bulk requests may only
+ * use part of the burst, so when both are waiting the interactive ones go first and always find room. When Openpay
+ * answers that there were too many requests, the rate is halved and then restored a little with each request that
+ * isn't throttled.
+ * </p>
+ * <p>
+ * Each limit is a token bucket kept as the time at which it would be empty again, updated with compare-and-set, so
+ * requests under the limit don't lock or allocate. Requests over it sleep until there is room; if that would take
+ * longer than the {@link Deadline} of the thread, they fail at once.
+ * </p>
+ *
+ * <pre>
+ * api.setRateLimiter(new RateLimiter(20, 40).limit(OperationClass.READS, 5, 10));
+ * </pre>
+ */
+public class RateLimiter {
+
+    /** HTTP status used by Openpay to throttle requests. */
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    /** Maximum number of times the rate is reduced after repeated throttling. */
+    private static final int MAX_SLOWDOWN = 16;
+
+    private final Bucket total;
+
+    private volatile Bucket[] buckets = new Bucket[OperationClass.values().length];
+
+    private volatile double bulkShare = 0.5;
+
+    /**
+     * @param requestsPerSecond Rate allowed for all the requests.
+     * @param burst Number of requests that can be made at once after being idle.
+     */
+    public RateLimiter(final double requestsPerSecond, final int burst) {
+        this.total = new Bucket(requestsPerSecond, burst);
+    }
+
+    /**
+     * Adds a separate limit for a class of operations, which also count for the total limit.
+     */
+    public synchronized RateLimiter limit(final OperationClass operation, final double requestsPerSecond,
+            final int burst) {
+        Bucket[] copy = this.buckets.clone();
+        copy[operation.ordinal()] = new Bucket(requestsPerSecond, burst);
+        this.buckets = copy;
+        return this;
+    }
+
+    /**
+     * Part of the burst that bulk requests can use, from 0 to 1. By default, half.
+     */
+    public RateLimiter bulkShare(final double bulkShare) {
+        if (bulkShare < 0 || bulkShare > 1) {
+            throw new IllegalArgumentException("Bulk share must be between 0 and 1");
+        }
+        this.bulkShare = bulkShare;
+        return this;
+    }
+
+    /**
+     * Waits until the request can be made.
+     * @param operation Class of the request.
+     * @param bulk true for searches and reports, false for interactive requests.
+     * @throws ServiceUnavailableException If waiting would exceed the deadline, or the thread is interrupted.
+     */
+    public void acquire(final OperationClass operation, final boolean bulk) throws ServiceUnavailableException {
+        double share = bulk ? this.bulkShare : 1;
+        Bucket bucket = this.buckets[operation.ordinal()];
+        if (bucket == null) {
+            this.await(this.total, share, operation);
+            return;
+        }
+        this.await(bucket, share, operation);
+        try {
+            this.await(this.total, share, operation);
+        } catch (ServiceUnavailableException e) {
+            // The request is not made, so its token of the operation goes back
+            bucket.refund();
+            throw e;
+        }
+    }
+
+    /**
+     * Adjusts the rates after a response from Openpay.
+     * @param operation Class of the request.
+     * @param statusCode HTTP status of the response.
+     */
+    public void completed(final OperationClass operation, final int statusCode) {
+        Bucket bucket = this.buckets[operation.ordinal()];
+        if (statusCode == TOO_MANY_REQUESTS) {
+            long now = System.nanoTime();
+            if (bucket != null) {
+                bucket.slowDown(now);
+            }
+            this.total.slowDown(now);
+        } else {
+            if (bucket != null) {
+                bucket.speedUp();
+            }
+            this.total.speedUp();
+        }
+    }
+
+    /**
+     * @return Requests per second currently allowed for all the requests, lower than configured after throttling.
+     */
+    public double getCurrentRate() {
+        return this.total.getRate();
+    }
+
+    /**
+     * @return Requests per second currently allowed for a class of operations, or infinity if it has no limit.
+     */
+    public double getCurrentRate(final OperationClass operation) {
+        Bucket bucket = this.buckets[operation.ordinal()];
+        return bucket == null ? Double.POSITIVE_INFINITY : bucket.getRate();
+    }
+
+    private void await(final Bucket bucket, final double share, final OperationClass operation)
+            throws ServiceUnavailableException {
+        long wait;
+        while ((wait = bucket.tryAcquire(System.nanoTime(), share)) > 0) {
+            Deadline deadline = Deadline.current();
+            if (deadline != null && TimeUnit.NANOSECONDS.toMillis(wait) >= deadline.remainingMillis()) {
+                throw new ServiceUnavailableException("Rate limit of " + operation + " requests would exceed "
+                        + deadline);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException("Interrupted while waiting for the rate limit", e);
+            }
+        }
+    }
+
+    /**
+     * Token bucket kept as the theoretical arrival time of the next request: the bucket is empty when that time is
+     * the burst away from now.
+     */
+    static final class Bucket {
+
+        private final long baseInterval;
+
+        private final int burst;
+
+        private final AtomicLong interval;
+
+        private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+
+        Bucket(final double requestsPerSecond, final int burst) {
+            if (requestsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+            }
+            this.baseInterval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+            this.burst = burst;
+            this.interval = new AtomicLong(this.baseInterval);
+        }
+
+        /**
+         * Takes a token if there is one within the share of the burst.
+         * @return 0 if the token was taken, or the nanoseconds to wait before trying again.
+         */
+        long tryAcquire(final long now, final double share) {
+            while (true) {
+                long current = this.arrival.get();
+                long interval = this.interval.get();
+                long next = (current - now > 0 ? current : now) + interval;
+                long tolerance = interval + (long) (interval * (this.burst - 1) * share);
+                long excess = next - now - tolerance;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (this.arrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Gives back a token taken by a request that was not made.
+         */
+        void refund() {
+            this.arrival.addAndGet(-this.interval.get());
+        }
+
+        /**
+         * Halves the rate and makes the next request wait for one interval.
+         */
+        void slowDown(final long now) {
+            long interval;
+            long slower;
+            do {
+                interval = this.interval.get();
+                slower = Math.min(this.baseInterval * MAX_SLOWDOWN, interval * 2);
+            } while (!this.interval.compareAndSet(interval, slower));
+            long current;
+            do {
+                current = this.arrival.get();
+            } while (current - (now + slower) < 0 && !this.arrival.compareAndSet(current, now + slower));
+        }
+
+        /**
+         * Moves the rate back towards the configured one, by a sixteenth of the configured interval each time.
+         */
+        void speedUp() {
+            long interval = this.interval.get();
+            if (interval > this.baseInterval) {
+                this.interval.compareAndSet(interval, Math.max(this.baseInterval, interval - this.baseInterval / 16));
+            }
+        }
+
+        double getRate() {
+            return (double) TimeUnit.SECONDS.toNanos(1) / this.interval.get();
+        }
+
+    }
+
+}
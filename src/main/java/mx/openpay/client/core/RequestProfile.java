@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import static mx.openpay.client.utils.OpenpayPathComponents.REPORTS;
+
+/**
+ * Kind of request made to Openpay, used to give different timeouts to requests with very different costs.
+ */
+public enum RequestProfile {
+
+    /** Requests that only read data, like getting a customer or a BIN. */
+    READ,
+
+    /** Requests that create, update or delete data, like charges, refunds and captures. */
+    WRITE,
+
+    /** Requests for reports, which may take much longer to answer. */
+    REPORT;
+
+    /**
+     * Finds the profile of a request.
+     * @param method HTTP method of the request.
+     * @param url URL or path of the request.
+     * @return The profile of the request.
+     */
+    public static RequestProfile of(final String method, final String url) {
+        if (url != null && url.contains(REPORTS + "/")) {
+            return REPORT;
+        }
+        if ("GET".equals(method)) {
+            return READ;
+        }
+        return WRITE;
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the body of a successful response while it is being received, without buffering it first.
+ * @see StreamingHttpServiceClient
+ */
+public interface ResponseBodyReader {
+
+    /**
+     * Reads the body. The reader is already decompressed and decoded, and is closed after this method returns.
+     * @param body The response body.
+     * @throws IOException If the body can't be read.
+     */
+    public void read(final Reader body) throws IOException;
+
+}
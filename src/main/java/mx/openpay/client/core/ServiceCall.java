@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * An HTTP call made by a {@link JsonServiceClient}, as seen by its {@link ServiceInterceptor}s. A new call is created
+ * for each request; it is not thread-safe and must not be kept after the request ends.
+ */
+public final class ServiceCall {
+
+    /** Path segments that name resources instead of identifying them. */
+    private static final Set<String> RESOURCES = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("customers", "bankaccounts", "cards", "charges", "payouts", "transfers", "fees",
+                    "refund", "capture", "confirm", "plans", "payments-plans", "subscriptions", "reports", "detail",
+                    "payout", "points", "orders", "webhooks", "verify", "bines", "groups", "merchants", "cancel")));
+
+    private final JsonServiceClient client;
+
+    private final ServiceInterceptor[] interceptors;
+
+    private final String method;
+
+    private final String path;
+
+    private final String url;
+
+    private final Map<String, String> params;
+
+    private final String body;
+
+    private final ResponseBodyReader reader;
+
+    private final boolean bulk;
+
+    private final long startNanos;
+
+    /** Index of the next interceptor to run. */
+    private int index;
+
+    private String pathTemplate;
+
+    private boolean buffered;
+
+    ServiceCall(final JsonServiceClient client, final ServiceInterceptor[] interceptors, final String method,
+            final String path, final String url, final Map<String, String> params, final String body,
+            final ResponseBodyReader reader, final boolean bulk) {
+        this.client = client;
+        this.interceptors = interceptors;
+        this.method = method;
+        this.path = path;
+        this.url = url;
+        this.params = params;
+        this.body = body;
+        this.reader = reader;
+        this.bulk = bulk;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Runs the next interceptor, or makes the HTTP call if there are no more. May be called more than once, for
+     * example to retry, and each time runs the rest of the chain again.
+     * @return The response, which may be an error response.
+     * @throws ServiceUnavailableException If the service could not be called.
+     */
+    public HttpServiceResponse proceed() throws ServiceUnavailableException {
+        int current = this.index;
+        if (current == this.interceptors.length) {
+            return this.client.execute(this);
+        }
+        this.index = current + 1;
+        try {
+            return this.interceptors[current].intercept(this);
+        } finally {
+            this.index = current;
+        }
+    }
+
+    /**
+     * @return The HTTP method: GET, POST, PUT or DELETE.
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return The path of the call relative to the API root, like /mid/customers/cid/cards.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return The full URL of the call, without query parameters.
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * @return The path with its identifiers replaced by placeholders, like /{merchantId}/customers/{id}/cards, to
+     *         group the calls of the same operation in metrics.
+     */
+    public String getPathTemplate() {
+        if (this.pathTemplate == null) {
+            this.pathTemplate = template(this.path);
+        }
+        return this.pathTemplate;
+    }
+
+    /**
+     * @return The operation of the call, made of its method and path template, like GET /{merchantId}/charges.
+     */
+    public String getOperationName() {
+        return this.method + " " + this.getPathTemplate();
+    }
+
+    public OperationClass getOperationClass() {
+        return OperationClass.of(this.method, this.path);
+    }
+
+    /**
+     * @return The query parameters of a GET, or null.
+     */
+    public Map<String, String> getParams() {
+        return this.params;
+    }
+
+    /**
+     * @return The JSON body of a POST or PUT, or null.
+     */
+    public String getBody() {
+        return this.body;
+    }
+
+    /**
+     * @return true if the body of a successful response is given to a reader while it arrives, in which case the
+     *         response returned by {@link #proceed()} has no body. A response returned by an interceptor instead of
+     *         proceeding may have a body, and it is given to the reader.
+     */
+    public boolean isStreaming() {
+        return this.reader != null && !this.buffered;
+    }
+
+    /**
+     * Asks for the whole body of the response, so the response returned by {@link #proceed()} has it even if the
+     * client would stream it. Interceptors that keep or inspect bodies, like caches, call it before proceeding; the
+     * body is given to the reader after the interceptors return.
+     */
+    public void bufferBody() {
+        this.buffered = true;
+    }
+
+    /**
+     * @return Whether the call is a list or search that may return many objects.
+     */
+    public boolean isBulk() {
+        return this.bulk;
+    }
+
+    /**
+     * @return The value of {@link System#nanoTime()} when the call started, before the first interceptor.
+     */
+    public long getStartNanos() {
+        return this.startNanos;
+    }
+
+    /**
+     * @return Nanoseconds since the call started.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+
+    ResponseBodyReader getReader() {
+        return this.reader;
+    }
+
+    static String template(final String path) {
+        StringBuilder sb = new StringBuilder(path.length() + 16);
+        int start = path.startsWith("/") ? 1 : 0;
+        boolean first = true;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                String segment = path.substring(start, end);
+                sb.append('/');
+                if (RESOURCES.contains(segment)) {
+                    sb.append(segment);
+                } else {
+                    sb.append(first ? "{merchantId}" : "{id}");
+                }
+                first = false;
+            }
+            start = end + 1;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.getOperationName();
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Runs around each HTTP call made by a {@link JsonServiceClient}, to add tracing, metrics, caching or retries without
+ * changing the HttpServiceClient. Interceptors run in the order they were added; each one usually calls
+ * {@link ServiceCall#proceed()} to continue with the next one and the HTTP call, and may instead return its own
+ * response, for example a cached one. Responses of GETs may be streamed to the caller without a body; an interceptor
+ * that needs the body calls {@link ServiceCall#bufferBody()} before proceeding.
+ * <p>
+ * Interceptors are shared by all the threads using the client, so they must be thread-safe.
+ * </p>
+ */
+public interface ServiceInterceptor {
+
+    /**
+     * Intercepts a call.
+     * @param call The call, with its method, path and parameters.
+     * @return The response of the call. Error responses are turned into exceptions after all the interceptors return.
+     * @throws ServiceUnavailableException If the service could not be called.
+     */
+    public HttpServiceResponse intercept(final ServiceCall call) throws ServiceUnavailableException;
+
+}
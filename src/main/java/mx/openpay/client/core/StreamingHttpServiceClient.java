@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.util.Map;
+
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * HttpServiceClient that can hand the body of a response to a reader as it arrives, so large responses are never held
+ * in memory as a whole.
+ */
+public interface StreamingHttpServiceClient extends HttpServiceClient {
+
+    /**
+     * Calls the service with a GET request. If the response is a successful JSON response, its body is given to the
+     * reader and the returned response has no body. Otherwise the body is set in the response, as in
+     * {@link #get(String, Map)}.
+     * @param url The URL to call.
+     * @param queryParams The query parameters. Optional.
+     * @param reader Reads the body of a successful response.
+     * @return The status and content type of the response, and the body if it was not given to the reader.
+     * @throws ServiceUnavailableException If the service could not be called or the body could not be read.
+     */
+    public HttpServiceResponse get(final String url, final Map<String, String> queryParams,
+            final ResponseBodyReader reader) throws ServiceUnavailableException;
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * JsonSerializer that can parse the server response directly from a stream.
+ */
+public interface StreamingJsonSerializer extends JsonSerializer {
+
+    /**
+     * Deserializes the JSON stream into a list of objects of the given class. Same rules as
+     * {@link JsonSerializer#deserializeList(String, Class)}.
+     * @param json The JSON stream. It is not closed.
+     * @param clazz The expected object class
+     * @return The list of objects.
+     */
+    public <T> List<T> deserializeList(final Reader json, final Class<T> clazz);
+
+    /**
+     * Deserializes the JSON stream as a list of objects of the given class, giving each object to the handler as soon
+     * as it is parsed instead of building the list.
+     * @param json The JSON stream. It is not closed.
+     * @param clazz The expected object class
+     * @param handler Receives the objects in order.
+     * @return The number of objects in the list.
+     */
+    public <T> int deserializeList(final Reader json, final Class<T> clazz, final ElementHandler<? super T> handler);
+
+    /**
+     * Deserializes the JSON stream into an object of the given class. Same rules as
+     * {@link JsonSerializer#deserialize(String, Class)}.
+     * @param json The JSON stream. It is not closed.
+     * @param clazz Type of the expected object.
+     * @return The deserialized object.
+     */
+    public <T> T deserialize(final Reader json, final Class<T> clazz);
+
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.analytics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.serialization.ISO8601DateParser;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Keeps a large number of transactions in columns of primitives instead of model objects, for reports and analytics.
+ * Dates are kept as epoch milliseconds, amounts as unscaled longs with a fixed scale, and the text columns with few
+ * distinct values (status, method, currency, type and card brand) as codes into a dictionary, so each transaction
+ * takes a few dozen bytes plus its id.
+ * <p>
+ * The columns are filled directly from the JSON of list and report responses, skipping the fields they don't keep:
+ * </p>
+ *
+ * <pre>
+ * TransactionColumns columns = new TransactionColumns();
+ * api.charges().stream(search().between(start, end).limit(1000), columns.reader());
+ * BigDecimal completed = columns.where(TransactionColumn.STATUS, &quot;completed&quot;).sum();
+ * Map&lt;String, BigDecimal&gt; byBrand = columns.where(TransactionColumn.STATUS, &quot;completed&quot;).sumBy(
+ *         TransactionColumn.CARD_BRAND);
+ * </pre>
+ * <p>
+ * Adding rows is not thread-safe; queries may run concurrently once the columns are filled.
+ * </p>
+ */
+public class TransactionColumns {
+
+    /** Value of a missing date. */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int NO_CODE = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int scale;
+
+    private int size;
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+
+    private long[] creationDates = new long[INITIAL_CAPACITY];
+
+    private long[] amounts = new long[INITIAL_CAPACITY];
+
+    private final Map<TransactionColumn, Dictionary> dictionaries =
+            new EnumMap<TransactionColumn, Dictionary>(TransactionColumn.class);
+
+    /**
+     * Creates columns for amounts with two decimals.
+     */
+    public TransactionColumns() {
+        this(2);
+    }
+
+    /**
+     * @param scale Number of decimals kept for the amounts. Amounts with more decimals are rejected.
+     */
+    public TransactionColumns(final int scale) {
+        this.scale = scale;
+        for (TransactionColumn column : TransactionColumn.values()) {
+            this.dictionaries.put(column, new Dictionary(INITIAL_CAPACITY));
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getScale() {
+        return this.scale;
+    }
+
+    /**
+     * Adds a transaction.
+     * @param id Id of the transaction.
+     * @param creationDate Creation date in epoch milliseconds, or {@link #NO_DATE}.
+     * @param amount Amount of the transaction. May be null, and is then kept as zero.
+     * @param values Values of the text columns. Missing columns are kept as null.
+     * @throws ArithmeticException If the amount has more decimals than the scale or doesn't fit in a long.
+     */
+    public void add(final String id, final long creationDate, final BigDecimal amount,
+            final Map<TransactionColumn, String> values) {
+        long unscaled = 0;
+        if (amount != null) {
+            BigInteger value = amount.setScale(this.scale, RoundingMode.UNNECESSARY).unscaledValue();
+            if (value.bitLength() > 63) {
+                throw new ArithmeticException("Amount too large: " + amount);
+            }
+            unscaled = value.longValue();
+        }
+        this.ensureCapacity(this.size + 1);
+        this.ids[this.size] = id;
+        this.creationDates[this.size] = creationDate;
+        this.amounts[this.size] = unscaled;
+        for (Map.Entry<TransactionColumn, Dictionary> entry : this.dictionaries.entrySet()) {
+            entry.getValue().add(this.size, values == null ? null : values.get(entry.getKey()));
+        }
+        this.size++;
+    }
+
+    /**
+     * Reads a JSON array of transactions, as returned by the list and report operations, adding each one to the
+     * columns.
+     * @param json The JSON array.
+     * @return Number of transactions added.
+     * @throws IOException If the JSON can't be read or is not an array of transactions.
+     */
+    public int read(final Reader json) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        int added = 0;
+        Map<TransactionColumn, String> values = new EnumMap<TransactionColumn, String>(TransactionColumn.class);
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                values.clear();
+                this.readTransaction(reader, values);
+                added++;
+            }
+            reader.endArray();
+        } catch (IllegalStateException e) {
+            // Thrown by the reader when the JSON doesn't have the expected structure
+            throw new IOException("Not an array of transactions: " + e.getMessage());
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid JSON: " + e.getMessage());
+        }
+        return added;
+    }
+
+    /**
+     * @return A reader that adds the transactions in the body of a response to these columns.
+     */
+    public ResponseBodyReader reader() {
+        return new ResponseBodyReader() {
+
+            @Override
+            public void read(final Reader body) throws IOException {
+                TransactionColumns.this.read(body);
+            }
+        };
+    }
+
+    private void readTransaction(final JsonReader reader, final Map<TransactionColumn, String> values)
+            throws IOException {
+        String id = null;
+        long creationDate = NO_DATE;
+        BigDecimal amount = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("id".equals(name)) {
+                id = reader.nextString();
+            } else if ("amount".equals(name)) {
+                amount = new BigDecimal(reader.nextString());
+            } else if ("creation_date".equals(name)) {
+                creationDate = this.parseDate(reader.nextString());
+            } else if ("status".equals(name)) {
+                values.put(TransactionColumn.STATUS, reader.nextString());
+            } else if ("method".equals(name)) {
+                values.put(TransactionColumn.METHOD, reader.nextString());
+            } else if ("currency".equals(name)) {
+                values.put(TransactionColumn.CURRENCY, reader.nextString());
+            } else if ("transaction_type".equals(name)) {
+                values.put(TransactionColumn.TRANSACTION_TYPE, reader.nextString());
+            } else if ("card".equals(name)) {
+                values.put(TransactionColumn.CARD_BRAND, this.readCardBrand(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        this.add(id, creationDate, amount, values);
+    }
+
+    private String readCardBrand(final JsonReader reader) throws IOException {
+        String brand = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("brand".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                brand = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return brand;
+    }
+
+    private long parseDate(final String date) throws IOException {
+        try {
+            return ISO8601DateParser.parse(date).getTime();
+        } catch (ParseException e) {
+            throw new IOException("Invalid date: " + date);
+        } catch (StringIndexOutOfBoundsException e) {
+            throw new IOException("Invalid date: " + date);
+        }
+    }
+
+    public String getId(final int row) {
+        this.checkRow(row);
+        return this.ids[row];
+    }
+
+    /**
+     * @return The creation date in epoch milliseconds, or {@link #NO_DATE}.
+     */
+    public long getCreationDate(final int row) {
+        this.checkRow(row);
+        return this.creationDates[row];
+    }
+
+    public BigDecimal getAmount(final int row) {
+        this.checkRow(row);
+        return BigDecimal.valueOf(this.amounts[row], this.scale);
+    }
+
+    /**
+     * @return The amount of the row multiplied by 10^scale.
+     */
+    public long getUnscaledAmount(final int row) {
+        this.checkRow(row);
+        return this.amounts[row];
+    }
+
+    public String get(final int row, final TransactionColumn column) {
+        this.checkRow(row);
+        return this.dictionaries.get(column).get(row);
+    }
+
+    /**
+     * @return A query over all the rows, restricted to those with the given value in the column.
+     */
+    public Query where(final TransactionColumn column, final String value) {
+        return new Query().and(column, value);
+    }
+
+    /**
+     * @return A query over all the rows, restricted to those created in the given period.
+     */
+    public Query between(final Date from, final Date to) {
+        return new Query().between(from, to);
+    }
+
+    /**
+     * @return A query over all the rows.
+     */
+    public Query all() {
+        return new Query();
+    }
+
+    private void checkRow(final int row) {
+        if (row < 0 || row >= this.size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + this.size);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= this.ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, this.ids.length + (this.ids.length >> 1));
+        this.ids = Arrays.copyOf(this.ids, newCapacity);
+        this.creationDates = Arrays.copyOf(this.creationDates, newCapacity);
+        this.amounts = Arrays.copyOf(this.amounts, newCapacity);
+        for (Dictionary dictionary : this.dictionaries.values()) {
+            dictionary.ensureCapacity(newCapacity);
+        }
+    }
+
+    private static long addExact(final long total, final long value) {
+        long sum = total + value;
+        // Overflow only if both have the same sign and the sum has a different one
+        if (((total ^ sum) & (value ^ sum)) < 0) {
+            throw new ArithmeticException("Sum too large");
+        }
+        return sum;
+    }
+
+    /**
+     * Filters the rows of the columns, to count, sum or group them. Filters are combined with AND.
+     */
+    public class Query {
+
+        private final List<TransactionColumn> filterColumns = new ArrayList<TransactionColumn>();
+
+        private final List<String> filterValues = new ArrayList<String>();
+
+        private long from = Long.MIN_VALUE;
+
+        private long to = Long.MAX_VALUE;
+
+        Query() {
+        }
+
+        /**
+         * Keeps only the rows with the value in the column.
+         */
+        public Query and(final TransactionColumn column, final String value) {
+            this.filterColumns.add(column);
+            this.filterValues.add(value);
+            return this;
+        }
+
+        /**
+         * Keeps only the rows created in the period, including both ends. Rows without creation date are excluded.
+         */
+        public Query between(final Date start, final Date end) {
+            this.from = Math.max(this.from, start.getTime());
+            this.to = Math.min(this.to, end.getTime());
+            return this;
+        }
+
+        /**
+         * @return Number of rows that match the query.
+         */
+        public int count() {
+            return this.rows().length;
+        }
+
+        /**
+         * @return Sum of the amounts of the rows that match the query.
+         */
+        public BigDecimal sum() {
+            long[] amounts = TransactionColumns.this.amounts;
+            long total = 0;
+            for (int row : this.rows()) {
+                total = addExact(total, amounts[row]);
+            }
+            return BigDecimal.valueOf(total, TransactionColumns.this.scale);
+        }
+
+        /**
+         * @return Sum of the amounts of the rows that match the query, by each value of the column. Rows with no
+         *         value are under the null key.
+         */
+        public Map<String, BigDecimal> sumBy(final TransactionColumn column) {
+            Dictionary dictionary = TransactionColumns.this.dictionaries.get(column);
+            long[] amounts = TransactionColumns.this.amounts;
+            // Slot 0 is for the rows without value
+            long[] totals = new long[dictionary.distinct() + 1];
+            boolean[] seen = new boolean[totals.length];
+            for (int row : this.rows()) {
+                int slot = dictionary.codes[row] + 1;
+                totals[slot] = addExact(totals[slot], amounts[row]);
+                seen[slot] = true;
+            }
+            Map<String, BigDecimal> result = new LinkedHashMap<String, BigDecimal>();
+            for (int slot = 0; slot < totals.length; slot++) {
+                if (seen[slot]) {
+                    result.put(dictionary.value(slot - 1), BigDecimal.valueOf(totals[slot],
+                            TransactionColumns.this.scale));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return Number of rows that match the query, by each value of the column. Rows with no value are under the
+         *         null key.
+         */
+        public Map<String, Integer> countBy(final TransactionColumn column) {
+            Dictionary dictionary = TransactionColumns.this.dictionaries.get(column);
+            int[] counts = new int[dictionary.distinct() + 1];
+            for (int row : this.rows()) {
+                counts[dictionary.codes[row] + 1]++;
+            }
+            Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+            for (int slot = 0; slot < counts.length; slot++) {
+                if (counts[slot] > 0) {
+                    result.put(dictionary.value(slot - 1), counts[slot]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return The rows that match the query, to read their values with the getters of the columns.
+         */
+        public int[] rows() {
+            int size = TransactionColumns.this.size;
+            long[] dates = TransactionColumns.this.creationDates;
+            boolean byDate = this.from != Long.MIN_VALUE || this.to != Long.MAX_VALUE;
+            int[][] columns = new int[this.filterColumns.size()][];
+            int[] wanted = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Dictionary dictionary = TransactionColumns.this.dictionaries.get(this.filterColumns.get(i));
+                columns[i] = dictionary.codes;
+                wanted[i] = dictionary.find(this.filterValues.get(i));
+                if (wanted[i] == NO_CODE && this.filterValues.get(i) != null) {
+                    // No row has the value
+                    return new int[0];
+                }
+            }
+            int[] rows = new int[size];
+            int count = 0;
+            rows: for (int row = 0; row < size; row++) {
+                if (byDate && (dates[row] == NO_DATE || dates[row] < this.from || dates[row] > this.to)) {
+                    continue;
+                }
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i][row] != wanted[i]) {
+                        continue rows;
+                    }
+                }
+                rows[count++] = row;
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+    }
+
+    /**
+     * Column of values kept as codes into a list of the distinct values.
+     */
+    private static class Dictionary {
+
+        private int[] codes;
+
+        private final List<String> values = new ArrayList<String>();
+
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+        Dictionary(final int capacity) {
+            this.codes = new int[capacity];
+        }
+
+        void add(final int row, final String value) {
+            this.codes[row] = value == null ? NO_CODE : this.codeOf(value);
+        }
+
+        String get(final int row) {
+            return this.value(this.codes[row]);
+        }
+
+        String value(final int code) {
+            return code == NO_CODE ? null : this.values.get(code);
+        }
+
+        int find(final String value) {
+            Integer code = value == null ? null : this.index.get(value);
+            return code == null ? NO_CODE : code;
+        }
+
+        int distinct() {
+            return this.values.size();
+        }
+
+        void ensureCapacity(final int capacity) {
+            this.codes = Arrays.copyOf(this.codes, capacity);
+        }
+
+        private int codeOf(final String value) {
+            Integer code = this.index.get(value);
+            if (code == null) {
+                code = this.values.size();
+                this.values.add(value);
+                this.index.put(value, code);
+            }
+            return code;
+        }
+
+    }
+
+}
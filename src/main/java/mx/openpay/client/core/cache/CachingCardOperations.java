@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.core.JsonSerializer;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.operations.CardOperations;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Card operations that answer gets and lists from a {@link CustomerCache}, and evict the cached cards of a customer
+ * when a card is created or deleted through them.
+ */
+public class CachingCardOperations extends CardOperations {
+
+    private final CustomerCache cache;
+
+    public CachingCardOperations(final JsonServiceClient client, final CustomerCache cache) {
+        super(client);
+        if (cache == null) {
+            throw new IllegalArgumentException("Cache is required");
+        }
+        this.cache = cache;
+    }
+
+    @Override
+    public Card create(final Card card) throws OpenpayServiceException, ServiceUnavailableException {
+        try {
+            return super.create(card);
+        } finally {
+            this.cache.evictCards(null);
+        }
+    }
+
+    @Override
+    public Card create(final String customerId, final Card card) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        try {
+            return super.create(customerId, card);
+        } finally {
+            this.cache.evictCards(customerId);
+        }
+    }
+
+    @Override
+    public List<Card> list(final SearchParams params) throws ServiceUnavailableException, OpenpayServiceException {
+        return this.list(null, params);
+    }
+
+    @Override
+    public List<Card> list(final String customerId, final SearchParams params) throws ServiceUnavailableException,
+            OpenpayServiceException {
+        Map<String, String> map = params == null ? null : new TreeMap<String, String>(params.asMap());
+        String key = CustomerCache.cardsPrefix(customerId) + "?" + map;
+        JsonSerializer serializer = this.getJsonClient().getSerializer();
+        String json = this.cache.get(key);
+        if (json != null) {
+            return serializer.deserializeList(json, Card.class);
+        }
+        long generation = this.cache.getGeneration();
+        List<Card> cards = customerId == null ? super.list(params) : super.list(customerId, params);
+        if (cards != null) {
+            this.cache.put(key, serializer.serialize(cards), generation);
+        }
+        return cards;
+    }
+
+    @Override
+    public Card get(final String cardId) throws ServiceUnavailableException, OpenpayServiceException {
+        return this.get(null, cardId);
+    }
+
+    @Override
+    public Card get(final String customerId, final String cardId) throws ServiceUnavailableException,
+            OpenpayServiceException {
+        String key = CustomerCache.cardsPrefix(customerId) + cardId;
+        JsonSerializer serializer = this.getJsonClient().getSerializer();
+        String json = this.cache.get(key);
+        if (json != null) {
+            return serializer.deserialize(json, Card.class);
+        }
+        long generation = this.cache.getGeneration();
+        Card card = customerId == null ? super.get(cardId) : super.get(customerId, cardId);
+        if (card != null) {
+            this.cache.put(key, serializer.serialize(card), generation);
+        }
+        return card;
+    }
+
+    @Override
+    public void delete(final String cardId) throws ServiceUnavailableException, OpenpayServiceException {
+        try {
+            super.delete(cardId);
+        } finally {
+            this.cache.evictCards(null);
+        }
+    }
+
+    @Override
+    public void delete(final String customerId, final String cardId) throws ServiceUnavailableException,
+            OpenpayServiceException {
+        try {
+            super.delete(customerId, cardId);
+        } finally {
+            this.cache.evictCards(customerId);
+        }
+    }
+
+    public CustomerCache getCache() {
+        return this.cache;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import mx.openpay.client.Customer;
+import mx.openpay.client.core.JsonSerializer;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.operations.CustomerOperations;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Customer operations that answer {@link #get(String)} from a {@link CustomerCache}, and evict the cached customer
+ * when it is updated or deleted through them.
+ */
+public class CachingCustomerOperations extends CustomerOperations {
+
+    private final CustomerCache cache;
+
+    public CachingCustomerOperations(final JsonServiceClient client, final CustomerCache cache) {
+        super(client);
+        if (cache == null) {
+            throw new IllegalArgumentException("Cache is required");
+        }
+        this.cache = cache;
+    }
+
+    @Override
+    public Customer get(final String customerId) throws OpenpayServiceException, ServiceUnavailableException {
+        String key = CustomerCache.customerKey(customerId);
+        JsonSerializer serializer = this.getJsonClient().getSerializer();
+        String json = this.cache.get(key);
+        if (json != null) {
+            return serializer.deserialize(json, Customer.class);
+        }
+        long generation = this.cache.getGeneration();
+        Customer customer = super.get(customerId);
+        if (customer != null) {
+            this.cache.put(key, serializer.serialize(customer), generation);
+        }
+        return customer;
+    }
+
+    @Override
+    public Customer update(final Customer customer) throws OpenpayServiceException, ServiceUnavailableException {
+        try {
+            return super.update(customer);
+        } finally {
+            this.cache.remove(CustomerCache.customerKey(customer.getId()));
+        }
+    }
+
+    @Override
+    public void delete(final String customerId) throws OpenpayServiceException, ServiceUnavailableException {
+        try {
+            super.delete(customerId);
+        } finally {
+            this.cache.evict(customerId);
+        }
+    }
+
+    public CustomerCache getCache() {
+        return this.cache;
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Near-cache of customers and their cards, used by {@link CachingCustomerOperations} and
+ * {@link CachingCardOperations}. Entries are kept as the JSON returned by Openpay, so every hit returns new objects
+ * that callers can change freely.
+ * <p>
+ * Entries expire after a fixed time since they were read from Openpay, and the least recently used ones are dropped
+ * when the cache is full. Updates and deletes made through the caching operations evict the affected entries; changes
+ * made elsewhere, for example notified by a webhook, can be evicted with {@link #evict(String)}. A read that was
+ * already running when an entry was evicted doesn't put its result in the cache, so an eviction is never undone by an
+ * older response.
+ * </p>
+ */
+public class CustomerCache {
+
+    private static final String CUSTOMERS = "customers/";
+
+    private static final String CARDS = "cards/";
+
+    private final long ttlMillis;
+
+    private final Map<String, Entry> entries;
+
+    /** Increased on every eviction, to discard the results of reads started before it. */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile long maxServedAge;
+
+    /**
+     * @param maxSize Maximum number of entries kept. Each customer, card and list of cards is one entry.
+     * @param ttl Time an entry is kept after it is read from Openpay.
+     * @param unit Unit of the time.
+     */
+    public CustomerCache(final int maxSize, final long ttl, final TimeUnit unit) {
+        if (maxSize < 1 || ttl <= 0) {
+            throw new IllegalArgumentException("Size and time to live must be positive");
+        }
+        this.ttlMillis = unit.toMillis(ttl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Evicts a customer and all its cards. Meant to be called when Openpay notifies a change made outside this client.
+     * @param customerId Id of the customer, or null for the cards of the merchant.
+     */
+    public synchronized void evict(final String customerId) {
+        if (customerId != null) {
+            this.entries.remove(customerKey(customerId));
+        }
+        this.removePrefix(cardsPrefix(customerId));
+        this.generation++;
+        this.evictions.incrementAndGet();
+    }
+
+    /**
+     * Evicts all the entries.
+     */
+    public synchronized void evictAll() {
+        this.entries.clear();
+        this.generation++;
+        this.evictions.incrementAndGet();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return Hits divided by all the lookups, or zero if there were no lookups.
+     */
+    public double getHitRatio() {
+        long hit = this.hits.get();
+        long total = hit + this.misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return Longest time an entry may be served after it was read from Openpay, for changes that are not evicted.
+     */
+    public long getTtlMillis() {
+        return this.ttlMillis;
+    }
+
+    /**
+     * @return Age of the oldest entry served so far, in milliseconds. Never greater than the time to live.
+     */
+    public long getMaxServedAgeMillis() {
+        return this.maxServedAge;
+    }
+
+    synchronized String get(final String key) {
+        Entry entry = this.entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry == null || now - entry.loaded >= this.ttlMillis) {
+            if (entry != null) {
+                this.entries.remove(key);
+            }
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        long age = now - entry.loaded;
+        if (age > this.maxServedAge) {
+            this.maxServedAge = age;
+        }
+        return entry.json;
+    }
+
+    synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Keeps the JSON read from Openpay, unless something was evicted since the read started.
+     * @param generation The generation before the read started.
+     */
+    synchronized void put(final String key, final String json, final long generation) {
+        if (generation == this.generation) {
+            this.entries.put(key, new Entry(json, System.currentTimeMillis()));
+        }
+    }
+
+    synchronized void remove(final String key) {
+        this.entries.remove(key);
+        this.generation++;
+    }
+
+    /**
+     * Evicts the cards of a customer, but not the customer.
+     */
+    synchronized void evictCards(final String customerId) {
+        this.removePrefix(cardsPrefix(customerId));
+        this.generation++;
+    }
+
+    private void removePrefix(final String prefix) {
+        Iterator<String> keys = this.entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    static String customerKey(final String customerId) {
+        return CUSTOMERS + customerId;
+    }
+
+    static String cardsPrefix(final String customerId) {
+        return CARDS + (customerId == null ? "" : customerId) + "/";
+    }
+
+    private static class Entry {
+
+        final String json;
+
+        final long loaded;
+
+        Entry(final String json, final long loaded) {
+            this.json = json;
+            this.loaded = loaded;
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.openpay.client.Merchant;
+import mx.openpay.client.PaymentPlan;
+import mx.openpay.client.Plan;
+import mx.openpay.client.Webhook;
+import mx.openpay.client.core.OpenpayAPI;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Keeps in memory the configuration of the merchant that rarely changes: plans, payment plans, the merchant itself and
+ * its webhooks. All of it is read together into an immutable snapshot, which is replaced in a background thread before
+ * it gets old, so reads never lock or wait for Openpay. If a refresh fails, the previous snapshot is kept.
+ * <p>
+ * The objects returned are shared by all callers and must not be changed.
+ * </p>
+ *
+ * <pre>
+ * ReferenceDataCache reference = new ReferenceDataCache(api);
+ * reference.load();
+ * reference.start(10, TimeUnit.MINUTES);
+ * Plan plan = reference.getPlan(planId);
+ * </pre>
+ */
+@Slf4j
+public class ReferenceDataCache {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final OpenpayAPI api;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(new Snapshot());
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private ScheduledExecutorService refresher;
+
+    public ReferenceDataCache(final OpenpayAPI api) {
+        if (api == null) {
+            throw new IllegalArgumentException("API is required");
+        }
+        this.api = api;
+    }
+
+    /**
+     * Reads all the data from Openpay and replaces the snapshot. Meant to be called at startup, so the first requests
+     * find the data already loaded.
+     * @throws OpenpayServiceException If the service returns an error.
+     * @throws ServiceUnavailableException If the service is not available.
+     */
+    public void load() throws OpenpayServiceException, ServiceUnavailableException {
+        Snapshot loaded = new Snapshot();
+        int offset = 0;
+        List<Plan> page;
+        do {
+            page = this.api.plans().list(new SearchParams().offset(offset).limit(PAGE_SIZE));
+            for (Plan plan : page) {
+                loaded.plans.put(plan.getId(), plan);
+            }
+            offset += page.size();
+        } while (page.size() == PAGE_SIZE);
+        loaded.paymentPlans = unmodifiable(this.api.paymentsPlans().listAll());
+        loaded.merchant = this.api.merchant().get();
+        loaded.webhooks = unmodifiable(this.api.webhooks().list());
+        loaded.loaded = System.currentTimeMillis();
+        this.snapshot.set(loaded);
+        this.refreshes.incrementAndGet();
+    }
+
+    /**
+     * Starts refreshing the data in a background thread.
+     * @param interval Time between refreshes.
+     * @param unit Unit of the time.
+     */
+    public synchronized void start(final long interval, final TimeUnit unit) {
+        if (this.refresher != null) {
+            throw new IllegalStateException("Refresh already started");
+        }
+        this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "openpay-reference-data");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.refresher.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                ReferenceDataCache.this.refresh();
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops the background refresh. The current snapshot is still available.
+     */
+    public synchronized void stop() {
+        if (this.refresher != null) {
+            this.refresher.shutdownNow();
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * Returns a plan. Plans created after the last refresh are read from Openpay and added to the snapshot.
+     * @return The plan, or null if it doesn't exist.
+     */
+    public Plan getPlan(final String planId) throws OpenpayServiceException, ServiceUnavailableException {
+        Plan plan = this.snapshot.get().plans.get(planId);
+        if (plan != null) {
+            return plan;
+        }
+        plan = this.api.plans().get(planId);
+        if (plan != null) {
+            Snapshot current;
+            Snapshot updated;
+            do {
+                current = this.snapshot.get();
+                updated = current.withPlan(plan);
+            } while (!this.snapshot.compareAndSet(current, updated));
+        }
+        return plan;
+    }
+
+    public List<Plan> getPlans() {
+        return Collections.unmodifiableList(new ArrayList<Plan>(this.snapshot.get().plans.values()));
+    }
+
+    public List<PaymentPlan> getPaymentPlans() {
+        return this.snapshot.get().paymentPlans;
+    }
+
+    /**
+     * @return The merchant, or null if the data was never loaded.
+     */
+    public Merchant getMerchant() {
+        return this.snapshot.get().merchant;
+    }
+
+    public List<Webhook> getWebhooks() {
+        return this.snapshot.get().webhooks;
+    }
+
+    /**
+     * @return Milliseconds since the data was read from Openpay, or -1 if it was never loaded.
+     */
+    public long getAgeMillis() {
+        long loaded = this.snapshot.get().loaded;
+        return loaded == 0 ? -1 : System.currentTimeMillis() - loaded;
+    }
+
+    public long getRefreshes() {
+        return this.refreshes.get();
+    }
+
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    private void refresh() {
+        try {
+            this.load();
+        } catch (OpenpayServiceException e) {
+            this.failed(e);
+        } catch (ServiceUnavailableException e) {
+            this.failed(e);
+        } catch (RuntimeException e) {
+            this.failed(e);
+        }
+    }
+
+    private void failed(final Exception e) {
+        this.failures.incrementAndGet();
+        log.warn("Couldn't refresh reference data, keeping data from {} ms ago: {}", this.getAgeMillis(),
+                e.getMessage());
+    }
+
+    private static <T> List<T> unmodifiable(final List<T> list) {
+        return list == null ? Collections.<T> emptyList() : Collections.unmodifiableList(new ArrayList<T>(list));
+    }
+
+    /**
+     * Data read at the same time. Never changed once it is published.
+     */
+    private static class Snapshot {
+
+        Map<String, Plan> plans = new LinkedHashMap<String, Plan>();
+
+        List<PaymentPlan> paymentPlans = Collections.emptyList();
+
+        Merchant merchant;
+
+        List<Webhook> webhooks = Collections.emptyList();
+
+        long loaded;
+
+        Snapshot withPlan(final Plan plan) {
+            Snapshot copy = new Snapshot();
+            copy.plans.putAll(this.plans);
+            copy.plans.put(plan.getId(), plan);
+            copy.paymentPlans = this.paymentPlans;
+            copy.merchant = this.merchant;
+            copy.webhooks = this.webhooks;
+            copy.loaded = this.loaded;
+            return copy;
+        }
+
+    }
+
+}
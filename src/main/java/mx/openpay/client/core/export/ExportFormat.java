@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.export;
+
+/**
+ * Format of the files written by {@link OpenpayExporter}.
+ */
+public enum ExportFormat {
+
+    /** One JSON object per line, as returned by Openpay. */
+    NDJSON(".ndjson"),
+
+    /** Comma-separated values of the selected fields, with a header line. */
+    CSV(".csv");
+
+    private final String extension;
+
+    private ExportFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return this.extension;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.export;
+
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * List operation whose results can be exported. See {@link ExportSources} for charges, payouts and customers.
+ */
+public interface ExportSource {
+
+    /**
+     * @return Name used as prefix of the exported files.
+     */
+    String getName();
+
+    /**
+     * Searches the objects and gives the JSON array of results to the reader.
+     */
+    void read(SearchParams params, ResponseBodyReader reader) throws OpenpayServiceException,
+            ServiceUnavailableException;
+
+}
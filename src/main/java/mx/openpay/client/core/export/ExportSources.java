@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.export;
+
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.core.operations.ChargeOperations;
+import mx.openpay.client.core.operations.CustomerOperations;
+import mx.openpay.client.core.operations.PayoutOperations;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Sources for the objects that can be exported.
+ */
+public final class ExportSources {
+
+    private ExportSources() {
+    }
+
+    public static ExportSource charges(final ChargeOperations charges) {
+        return new ExportSource() {
+
+            @Override
+            public String getName() {
+                return "charges";
+            }
+
+            @Override
+            public void read(final SearchParams params, final ResponseBodyReader reader)
+                    throws OpenpayServiceException, ServiceUnavailableException {
+                charges.stream(params, reader);
+            }
+        };
+    }
+
+    public static ExportSource payouts(final PayoutOperations payouts) {
+        return new ExportSource() {
+
+            @Override
+            public String getName() {
+                return "payouts";
+            }
+
+            @Override
+            public void read(final SearchParams params, final ResponseBodyReader reader)
+                    throws OpenpayServiceException, ServiceUnavailableException {
+                payouts.stream(params, reader);
+            }
+        };
+    }
+
+    public static ExportSource customers(final CustomerOperations customers) {
+        return new ExportSource() {
+
+            @Override
+            public String getName() {
+                return "customers";
+            }
+
+            @Override
+            public void read(final SearchParams params, final ResponseBodyReader reader)
+                    throws OpenpayServiceException, ServiceUnavailableException {
+                customers.stream(params, reader);
+            }
+        };
+    }
+
+}
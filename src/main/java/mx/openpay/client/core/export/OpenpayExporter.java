@@ -0,0 +1,395 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.core.impl.ParallelCalls;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Exports all the objects created in a period to files, as newline-delimited JSON or CSV, optionally compressed with
+ * gzip. The period is split in partitions of a number of days, each written to its own file by a pool of threads.
+ * <p>
+ * Each page is written to the file as it is received, one object at a time, so memory use doesn't depend on the size
+ * of the export. After every page the position of the file and the number of objects written are saved to a checkpoint
+ * file next to it; an interrupted export started again skips the completed partitions and continues the others from
+ * their last checkpoint. When compressed, each page is a separate gzip member, which standard tools read as a single
+ * stream.
+ * </p>
+ *
+ * <pre>
+ * long rows = new OpenpayExporter(ExportSources.charges(api.charges()), new File(&quot;/data/charges&quot;))
+ *         .format(ExportFormat.NDJSON).gzip(true).parallelism(4)
+ *         .export(start, end, 7);
+ * </pre>
+ */
+public class OpenpayExporter {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Largest limit Openpay accepts on a search; a larger one is lowered and would end the partition early. */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final String[] DEFAULT_CSV_COLUMNS = { "id", "creation_date", "operation_date", "amount",
+            "currency", "status", "method", "transaction_type", "order_id", "customer_id", "description" };
+
+    private final ExportSource source;
+
+    private final File directory;
+
+    private ExportFormat format = ExportFormat.NDJSON;
+
+    private String[] columns = DEFAULT_CSV_COLUMNS;
+
+    private boolean gzip;
+
+    private int parallelism = 1;
+
+    private int pageSize = 100;
+
+    /**
+     * @param source Objects to export.
+     * @param directory Directory where the files and checkpoints are written. Created if it doesn't exist.
+     */
+    public OpenpayExporter(final ExportSource source, final File directory) {
+        if (source == null || directory == null) {
+            throw new IllegalArgumentException("Source and directory are required");
+        }
+        this.source = source;
+        this.directory = directory;
+    }
+
+    public OpenpayExporter format(final ExportFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * Fields written to CSV files, in order. Nested fields are separated by dots, like "card.brand". By default, the
+     * common fields of transactions.
+     */
+    public OpenpayExporter columns(final String... columns) {
+        this.columns = columns.clone();
+        return this;
+    }
+
+    public OpenpayExporter gzip(final boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Maximum number of partitions written at the same time.
+     */
+    public OpenpayExporter parallelism(final int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Number of objects requested on each page, at most 100.
+     */
+    public OpenpayExporter pageSize(final int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Exports the objects created from the start day to the end day, both included.
+     * @param start First day to export.
+     * @param end Last day to export.
+     * @param daysPerPartition Number of days written to each file.
+     * @return Number of objects written to the files by this call, without counting the ones written before.
+     * @throws OpenpayServiceException If the service returns an error.
+     * @throws ServiceUnavailableException If the service is not available, or the files can't be written.
+     */
+    public long export(final Date start, final Date end, final int daysPerPartition) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        if (daysPerPartition < 1) {
+            throw new IllegalArgumentException("Partitions must have at least one day");
+        }
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new ServiceUnavailableException("Can't create directory " + this.directory);
+        }
+        List<Partition> partitions = new ArrayList<Partition>();
+        Calendar day = this.startOfDay(start);
+        Calendar last = this.startOfDay(end);
+        while (!day.after(last)) {
+            Date from = day.getTime();
+            day.add(Calendar.DAY_OF_MONTH, daysPerPartition - 1);
+            Date to = day.after(last) ? last.getTime() : day.getTime();
+            partitions.add(new Partition(from, to));
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        long total = 0;
+        for (Long written : new ParallelCalls(this.parallelism).invokeAll(partitions)) {
+            total += written;
+        }
+        return total;
+    }
+
+    private Calendar startOfDay(final Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+
+    private void writeCsvHeader(final Writer writer) throws IOException {
+        for (int i = 0; i < this.columns.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            this.writeCsvValue(writer, this.columns[i]);
+        }
+        writer.write('\n');
+    }
+
+    private void writeCsv(final Writer writer, final JsonElement element) throws IOException {
+        for (int i = 0; i < this.columns.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            JsonElement value = element;
+            for (String field : this.columns[i].split("\\.")) {
+                value = value != null && value.isJsonObject() ? ((JsonObject) value).get(field) : null;
+            }
+            if (value == null || value.isJsonNull()) {
+                continue;
+            }
+            this.writeCsvValue(writer, value.isJsonPrimitive() ? value.getAsString() : value.toString());
+        }
+        writer.write('\n');
+    }
+
+    private void writeCsvValue(final Writer writer, final String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Writes the objects created in a range of days to a file.
+     */
+    private class Partition implements Callable<Long> {
+
+        private final Date from;
+
+        private final Date to;
+
+        private final File file;
+
+        private final File checkpoint;
+
+        Partition(final Date from, final Date to) {
+            this.from = from;
+            this.to = to;
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+            String name = OpenpayExporter.this.source.getName() + "-" + format.format(from) + "-"
+                    + format.format(to) + OpenpayExporter.this.format.getExtension()
+                    + (OpenpayExporter.this.gzip ? ".gz" : "");
+            this.file = new File(OpenpayExporter.this.directory, name);
+            this.checkpoint = new File(OpenpayExporter.this.directory, name + ".checkpoint");
+        }
+
+        @Override
+        public Long call() throws Exception {
+            Properties state = this.loadCheckpoint();
+            if (Boolean.parseBoolean(state.getProperty("complete"))) {
+                return 0L;
+            }
+            int offset = Integer.parseInt(state.getProperty("offset", "0"));
+            long position = Long.parseLong(state.getProperty("position", "0"));
+            RandomAccessFile output = new RandomAccessFile(this.file, "rw");
+            try {
+                FileChannel channel = output.getChannel();
+                // Anything after the checkpoint belongs to a page that didn't finish
+                channel.truncate(position);
+                channel.position(position);
+                OutputStream stream = new NonClosingOutputStream(Channels.newOutputStream(channel));
+                int written = 0;
+                int count;
+                do {
+                    count = this.writePage(stream, offset + written, position == 0 && written == 0);
+                    written += count;
+                    channel.force(false);
+                    this.saveCheckpoint(offset + written, channel.position(), false);
+                } while (count == OpenpayExporter.this.pageSize);
+                this.saveCheckpoint(offset + written, channel.position(), true);
+                return (long) written;
+            } finally {
+                output.close();
+            }
+        }
+
+        /**
+         * Writes a page, compressed as a separate gzip member if needed, so the file is valid at every checkpoint. A
+         * page that fails leaves garbage after the checkpoint, which is truncated when the partition is resumed.
+         * @return Number of objects written.
+         */
+        private int writePage(final OutputStream stream, final int offset, final boolean first)
+                throws OpenpayServiceException, ServiceUnavailableException, IOException {
+            OutputStream out = OpenpayExporter.this.gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : stream;
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET), BUFFER_SIZE);
+            final int[] count = new int[1];
+            final boolean[] delivered = new boolean[1];
+            try {
+                if (first && OpenpayExporter.this.format == ExportFormat.CSV) {
+                    OpenpayExporter.this.writeCsvHeader(writer);
+                }
+                SearchParams params = new SearchParams().between(this.from, this.to).offset(offset)
+                        .limit(OpenpayExporter.this.pageSize);
+                OpenpayExporter.this.source.read(params, new ResponseBodyReader() {
+
+                    @Override
+                    public void read(final Reader body) throws IOException {
+                        JsonReader reader = new JsonReader(body);
+                        JsonParser parser = new JsonParser();
+                        try {
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                JsonElement element = parser.parse(reader);
+                                if (OpenpayExporter.this.format == ExportFormat.CSV) {
+                                    OpenpayExporter.this.writeCsv(writer, element);
+                                } else {
+                                    writer.write(element.toString());
+                                    writer.write('\n');
+                                }
+                                count[0]++;
+                            }
+                            reader.endArray();
+                            delivered[0] = true;
+                        } catch (JsonParseException e) {
+                            throw new IOException("Invalid page: " + e.getMessage());
+                        } catch (IllegalStateException e) {
+                            throw new IOException("Invalid page: " + e.getMessage());
+                        }
+                    }
+                });
+            } finally {
+                // Finishes the gzip member and releases its native memory, leaving the file open
+                writer.close();
+            }
+            if (!delivered[0]) {
+                // A page that isn't JSON is only logged by the client, and would end the partition as if it were empty
+                throw new ServiceUnavailableException("No JSON page of " + OpenpayExporter.this.source.getName()
+                        + " was returned at offset " + offset);
+            }
+            return count[0];
+        }
+
+        private Properties loadCheckpoint() throws IOException {
+            Properties state = new Properties();
+            if (this.checkpoint.exists()) {
+                InputStream in = new FileInputStream(this.checkpoint);
+                try {
+                    state.load(in);
+                } finally {
+                    in.close();
+                }
+            }
+            return state;
+        }
+
+        private void saveCheckpoint(final int offset, final long position, final boolean complete) throws IOException {
+            Properties state = new Properties();
+            state.setProperty("offset", String.valueOf(offset));
+            state.setProperty("position", String.valueOf(position));
+            state.setProperty("complete", String.valueOf(complete));
+            File temp = new File(this.checkpoint.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                state.store(out, "Export from " + this.from + " to " + this.to);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(this.checkpoint) && !(this.checkpoint.delete() && temp.renameTo(this.checkpoint))) {
+                throw new IOException("Couldn't replace " + this.checkpoint);
+            }
+        }
+
+    }
+
+    /**
+     * Lets the page writers be closed, finishing their gzip members, without closing the file.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mx.openpay.client.core.Deadline;
+import mx.openpay.client.core.RequestProfile;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Limits the number of requests of one {@link RequestProfile} in flight at the same time, so slow requests of one kind
+ * can't take every pooled connection from the others. Requests over the limit wait in line up to a timeout, or the
+ * deadline of the thread if it is sooner, and then fail.
+ */
+public class Bulkhead {
+
+    private final RequestProfile profile;
+
+    private final int maxInFlight;
+
+    private final long queueTimeoutMillis;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param profile Kind of requests limited.
+     * @param maxInFlight Maximum number of requests in flight.
+     * @param queueTimeoutMillis Maximum time a request waits for its turn, in milliseconds.
+     */
+    public Bulkhead(final RequestProfile profile, final int maxInFlight, final long queueTimeoutMillis) {
+        if (maxInFlight < 1 || queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid bulkhead: " + maxInFlight + ", " + queueTimeoutMillis);
+        }
+        this.profile = profile;
+        this.maxInFlight = maxInFlight;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.permits = new Semaphore(maxInFlight, true);
+    }
+
+    /**
+     * Waits for a turn to make a request. Must be followed by {@link #release()} once the response is read.
+     * @throws ServiceUnavailableException If there is no turn before the timeout, or the thread is interrupted.
+     */
+    public void acquire() throws ServiceUnavailableException {
+        if (this.permits.tryAcquire()) {
+            return;
+        }
+        long timeout = this.queueTimeoutMillis;
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            timeout = Math.max(0, Math.min(timeout, deadline.remainingMillis()));
+        }
+        boolean acquired;
+        this.waiting.incrementAndGet();
+        try {
+            acquired = this.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            this.rejected.incrementAndGet();
+            throw new ServiceUnavailableException("Too many " + this.profile + " requests in flight, waited "
+                    + timeout + " ms");
+        }
+    }
+
+    public void release() {
+        this.permits.release();
+    }
+
+    public RequestProfile getProfile() {
+        return this.profile;
+    }
+
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    public long getQueueTimeoutMillis() {
+        return this.queueTimeoutMillis;
+    }
+
+    /**
+     * @return Number of requests in flight.
+     */
+    public int getInFlight() {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    /**
+     * @return Number of requests waiting for their turn.
+     */
+    public int getWaiting() {
+        return this.waiting.get();
+    }
+
+    /**
+     * @return Number of requests that failed because they waited too long.
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * @return Requests in flight and waiting, relative to the limit. Values over 1 mean requests are waiting.
+     */
+    public double getSaturation() {
+        return (double) (this.getInFlight() + this.getWaiting()) / this.maxInFlight;
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead[" + this.profile + ": " + this.getInFlight() + "/" + this.maxInFlight + " in flight, "
+                + this.getWaiting() + " waiting, " + this.getRejected() + " rejected]";
+    }
+
+}
@@ -16,43 +16,78 @@
 package mx.openpay.client.core.impl;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import mx.openpay.client.core.Deadline;
 import mx.openpay.client.core.HttpServiceClient;
 import mx.openpay.client.core.HttpServiceResponse;
+import mx.openpay.client.core.RequestProfile;
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.core.StreamingHttpServiceClient;
+import mx.openpay.client.core.tracing.Span;
+import mx.openpay.client.core.tracing.Span.Phase;
 import mx.openpay.client.exceptions.ServiceUnavailableException;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.StringUtils;
 import org.apache.http.Consts;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContextBuilder;
@@ -63,32 +98,90 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
 
+import com.google.gson.JsonParseException;
+
 /**
  * Uses Apache HttpClient to call the web service and retrieve the response information.
+ * <p>
+ * Responses compressed with gzip or deflate are accepted and decompressed while they are read, unless disabled with
+ * {@link #setContentCompression(boolean)}. Large request bodies can also be sent compressed, see
+ * {@link #setRequestCompressionThreshold(int)}.
+ * </p>
+ * <p>
+ * If the calling thread has a {@link Span} attached, its context is sent in the {@code traceparent} header and the
+ * time waiting for a pooled connection, opening connections and waiting for the server is added to it.
+ * </p>
  * @author elopez
  * @see HttpServiceClient
  */
 @Slf4j
-public class DefaultHttpServiceClient implements HttpServiceClient {
+public class DefaultHttpServiceClient implements StreamingHttpServiceClient {
 
     private static final String AGENT = "openpay-java/";
 
     private static final int DEFAULT_CONNECTION_TIMEOUT = 90000;
 
-    private final CloseableHttpClient httpClient;
+    private static final int SSL_SESSION_CACHE_SIZE = 100;
+
+    private static final int SSL_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private static final int HTTPS_PORT = 443;
+
+    /** Header with the id Openpay gives to each request. */
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private static final String TRACEPARENT_HEADER = "traceparent";
+
+    private final boolean requirePoolManager;
+
+    /** Client that owns the connection pool, or null if this client owns it. */
+    private final DefaultHttpServiceClient shared;
+
+    private volatile CloseableHttpClient httpClient;
+
+    private HttpClientConnectionManager connectionManager;
+
+    private int maxConnections;
+
+    private boolean contentCompression = true;
+
+    /** Minimum size of a request body to send it compressed. Negative if request bodies are never compressed. */
+    @Setter
+    private int requestCompressionThreshold = -1;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+
+    private final AtomicLong resumedHandshakes = new AtomicLong();
 
     private final String userAgent;
 
-    private RequestConfig requestConfig;
+    /** Replaced as a whole when a timeout changes, so request threads never see a map being modified. */
+    private volatile Map<RequestProfile, RequestConfig> requestConfigs;
+
+    /** Limits of requests in flight of each kind. Kept by the client that owns the connection pool. */
+    private volatile Map<RequestProfile, Bulkhead> bulkheads = Collections.emptyMap();
 
     @Setter
     private String key;
 
+    /**
+     * Creates the client. The SSL context and the connection manager are not built until the first request is made,
+     * so creating clients is cheap.
+     * @param requirePoolManager If true, a pool of connections is kept; otherwise a single connection is used.
+     */
     public DefaultHttpServiceClient(final boolean requirePoolManager) {
-        this.httpClient = this.initHttpClient(requirePoolManager, DEFAULT_CONNECTION_TIMEOUT,
-                DEFAULT_CONNECTION_TIMEOUT);
+        this.requirePoolManager = requirePoolManager;
+        this.shared = null;
+        this.requestConfigs = new EnumMap<RequestProfile, RequestConfig>(RequestProfile.class);
+        RequestConfig defaultConfig = RequestConfig.custom().setConnectTimeout(DEFAULT_CONNECTION_TIMEOUT)
+                .setSocketTimeout(DEFAULT_CONNECTION_TIMEOUT).build();
+        for (RequestProfile profile : RequestProfile.values()) {
+            this.requestConfigs.put(profile, defaultConfig);
+        }
         String version = this.getClass().getPackage().getImplementationVersion();
         if (version == null) {
             version = "1.0.10-UNKNOWN";
@@ -96,54 +189,314 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
         this.userAgent = AGENT + version;
     }
 
+    /**
+     * Creates a client that shares the connections and configuration of the given one, but keeps its own key.
+     * @param shared The client that owns the connection pool.
+     * @param key Public or private key to send on the requests made through this client.
+     */
+    protected DefaultHttpServiceClient(final DefaultHttpServiceClient shared, final String key) {
+        this.requirePoolManager = shared.requirePoolManager;
+        this.shared = shared.shared == null ? shared : shared.shared;
+        this.userAgent = shared.userAgent;
+        this.requestConfigs = new EnumMap<RequestProfile, RequestConfig>(shared.requestConfigs);
+        this.requestCompressionThreshold = shared.requestCompressionThreshold;
+        this.key = key;
+    }
+
+    /**
+     * Returns a client that uses the same connection pool as this one, but authenticates with the given key. Changing
+     * the key or timeouts of the returned client does not affect this one, so a single pool can serve many merchants.
+     * @param key Public or private key of the merchant.
+     * @return A lightweight client sharing this client's connections.
+     */
+    public DefaultHttpServiceClient withKey(final String key) {
+        return new DefaultHttpServiceClient(this, key);
+    }
+
+    /**
+     * Sets the maximum number of pooled connections to the Openpay host. Only applies if the client was created
+     * with a pool manager.
+     * @param maxConnections Maximum number of simultaneous connections.
+     */
+    public void setMaxConnections(final int maxConnections) {
+        if (this.shared != null) {
+            this.shared.setMaxConnections(maxConnections);
+            return;
+        }
+        synchronized (this) {
+            this.maxConnections = maxConnections;
+            if (this.connectionManager != null) {
+                this.applyMaxConnections();
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the negotiation of compressed responses. Enabled by default. Must be called before the
+     * first request is made.
+     * @param contentCompression If true, the Accept-Encoding header is sent and compressed responses are decompressed.
+     */
+    public void setContentCompression(final boolean contentCompression) {
+        if (this.shared != null) {
+            this.shared.setContentCompression(contentCompression);
+            return;
+        }
+        this.contentCompression = contentCompression;
+    }
+
+    private void applyMaxConnections() {
+        if (this.maxConnections > 0 && this.connectionManager instanceof PoolingHttpClientConnectionManager) {
+            PoolingHttpClientConnectionManager pool = (PoolingHttpClientConnectionManager) this.connectionManager;
+            pool.setMaxTotal(this.maxConnections);
+            pool.setDefaultMaxPerRoute(this.maxConnections);
+        }
+    }
+
+    /**
+     * Returns the Apache client, building the SSL context and connection manager on the first call.
+     */
+    protected CloseableHttpClient getHttpClient() {
+        if (this.shared != null) {
+            return this.shared.getHttpClient();
+        }
+        CloseableHttpClient client = this.httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = this.httpClient;
+                if (client == null) {
+                    this.connectionManager = this.initConnectionManager(this.requirePoolManager);
+                    this.applyMaxConnections();
+                    client = this.initHttpClient(this.requirePoolManager, DEFAULT_CONNECTION_TIMEOUT,
+                            DEFAULT_CONNECTION_TIMEOUT);
+                    this.httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Opens connections to the host of the given URL and leaves them in the pool, so the first requests don't have to
+     * wait for the TCP and TLS handshakes. The number of connections is limited by the size of the pool.
+     * @param url Any URL of the Openpay host.
+     * @param connections Number of connections to open.
+     * @return The number of connections that were opened and returned to the pool.
+     */
+    public int warmUp(final String url, final int connections) {
+        if (this.shared != null) {
+            return this.shared.warmUp(url, connections);
+        }
+        this.getHttpClient();
+        if (!(this.connectionManager instanceof PoolingHttpClientConnectionManager)) {
+            return 0;
+        }
+        final PoolingHttpClientConnectionManager pool = (PoolingHttpClientConnectionManager) this.connectionManager;
+        URI uri = URI.create(url);
+        final HttpRoute route = new HttpRoute(new HttpHost(uri.getHost(), uri.getPort() > 0 ? uri.getPort()
+                : HTTPS_PORT, "https"), null, true);
+        int total = Math.min(connections, pool.getMaxPerRoute(route));
+        if (total <= 0) {
+            return 0;
+        }
+        final int timeout = this.requestConfigs.get(RequestProfile.READ).getConnectTimeout();
+        final List<HttpClientConnection> opened = Collections.synchronizedList(new ArrayList<HttpClientConnection>());
+        // The first connection goes alone, so the others can resume its TLS session instead of negotiating a new one
+        try {
+            this.openConnection(pool, route, timeout, opened);
+        } catch (Exception e) {
+            log.warn("Could not open connection to {}: {}", route, e.getMessage());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, total - 1));
+        try {
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int i = 1; i < total; i++) {
+                tasks.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        DefaultHttpServiceClient.this.openConnection(pool, route, timeout, opened);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    log.warn("Could not open connection to {}: {}", route, e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int warmed = 0;
+        synchronized (opened) {
+            for (HttpClientConnection conn : opened) {
+                if (conn.isOpen()) {
+                    warmed++;
+                }
+                pool.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+        log.debug("Opened {} connections to {}", warmed, route);
+        return warmed;
+    }
+
+    private void openConnection(final PoolingHttpClientConnectionManager pool, final HttpRoute route,
+            final int timeout, final List<HttpClientConnection> opened) throws Exception {
+        HttpClientConnection conn = pool.requestConnection(route, null).get(timeout, TimeUnit.MILLISECONDS);
+        opened.add(conn);
+        if (!conn.isOpen()) {
+            HttpClientContext context = HttpClientContext.create();
+            try {
+                pool.connect(conn, route, timeout, context);
+                pool.routeComplete(conn, route, context);
+                // Binds the socket streams, otherwise the stale check fails on the first request
+                conn.flush();
+            } catch (IOException e) {
+                // The socket is bound before connecting, so the connection must be closed not to count it as opened
+                conn.shutdown();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return Number of TLS handshakes that negotiated a new session.
+     */
+    public long getFullHandshakes() {
+        return this.shared == null ? this.fullHandshakes.get() : this.shared.getFullHandshakes();
+    }
+
+    /**
+     * @return Number of TLS handshakes that resumed a cached session, skipping the key exchange.
+     */
+    public long getResumedHandshakes() {
+        return this.shared == null ? this.resumedHandshakes.get() : this.shared.getResumedHandshakes();
+    }
+
     /**
      * @see mx.openpay.client.core.HttpServiceClient#setConnectionTimeout(int)
      */
     @Override
-    public void setConnectionTimeout(final int timeout) {
-        this.requestConfig = RequestConfig.copy(this.requestConfig).setConnectTimeout(timeout).build();
+    public synchronized void setConnectionTimeout(final int timeout) {
+        Map<RequestProfile, RequestConfig> configs = new EnumMap<RequestProfile, RequestConfig>(this.requestConfigs);
+        for (Entry<RequestProfile, RequestConfig> entry : configs.entrySet()) {
+            entry.setValue(RequestConfig.copy(entry.getValue()).setConnectTimeout(timeout).build());
+        }
+        this.requestConfigs = configs;
     }
 
     @Override
-    public void setSocketTimeout(final int timeout) {
-        this.requestConfig = RequestConfig.copy(this.requestConfig).setSocketTimeout(timeout).build();
+    public synchronized void setSocketTimeout(final int timeout) {
+        Map<RequestProfile, RequestConfig> configs = new EnumMap<RequestProfile, RequestConfig>(this.requestConfigs);
+        for (Entry<RequestProfile, RequestConfig> entry : configs.entrySet()) {
+            entry.setValue(RequestConfig.copy(entry.getValue()).setSocketTimeout(timeout).build());
+        }
+        this.requestConfigs = configs;
     }
 
-    protected CloseableHttpClient initHttpClient(final boolean requirePoolManager, final int connectionTimeout,
+    /**
+     * Sets the timeouts for one kind of request, so reports can be given more time than reads or charges.
+     * @param profile The kind of request.
+     * @param connectionTimeout Timeout to establish the connection, in milliseconds.
+     * @param socketTimeout Maximum time waiting for data from the server, in milliseconds.
+     */
+    public synchronized void setTimeouts(final RequestProfile profile, final int connectionTimeout,
             final int socketTimeout) {
-        CloseableHttpClient httpClient;
-        HttpClientConnectionManager manager;
-        
-        SSLConnectionSocketFactory sslSocketFactory;
+        Map<RequestProfile, RequestConfig> configs = new EnumMap<RequestProfile, RequestConfig>(this.requestConfigs);
+        configs.put(profile, RequestConfig.copy(configs.get(profile)).setConnectTimeout(connectionTimeout)
+                .setSocketTimeout(socketTimeout).build());
+        this.requestConfigs = configs;
+    }
+
+    /**
+     * Limits the number of requests of one kind in flight at the same time, so they can't take all the connections
+     * from the others. For the partitions to be isolated, the sum of their limits must not exceed the maximum number of
+     * connections. Applies to all the clients sharing the connection pool.
+     * @param profile The kind of request.
+     * @param maxInFlight Maximum number of requests in flight, or zero to remove the limit.
+     * @param queueTimeoutMillis Maximum time a request waits for its turn, in milliseconds.
+     */
+    public void setBulkhead(final RequestProfile profile, final int maxInFlight, final long queueTimeoutMillis) {
+        if (this.shared != null) {
+            this.shared.setBulkhead(profile, maxInFlight, queueTimeoutMillis);
+            return;
+        }
+        synchronized (this) {
+            Map<RequestProfile, Bulkhead> copy = new EnumMap<RequestProfile, Bulkhead>(RequestProfile.class);
+            copy.putAll(this.bulkheads);
+            if (maxInFlight > 0) {
+                copy.put(profile, new Bulkhead(profile, maxInFlight, queueTimeoutMillis));
+            } else {
+                copy.remove(profile);
+            }
+            this.bulkheads = copy;
+        }
+    }
+
+    /**
+     * @return The bulkhead of the given kind of request, with its saturation metrics, or null if it has no limit.
+     */
+    public Bulkhead getBulkhead(final RequestProfile profile) {
+        if (this.shared != null) {
+            return this.shared.getBulkhead(profile);
+        }
+        return this.bulkheads.get(profile);
+    }
+
+    /**
+     * Builds the TLS context of the connections, keeping the sessions so new connections can resume them.
+     */
+    protected SSLContext initTlsContext() throws GeneralSecurityException {
         SSLContext tlsContext;
         try {
-            try {
-                tlsContext = new SSLContextBuilder().useProtocol("TLSv1.2").build();
-            } catch (GeneralSecurityException e) {
-                log.warn("Could not force protocol TLSv1.2: {}", e.getMessage());
-                tlsContext = new SSLContextBuilder().build();
-            }
-            sslSocketFactory = new SSLConnectionSocketFactory(tlsContext);
+            tlsContext = new SSLContextBuilder().useProtocol("TLSv1.2").build();
+        } catch (GeneralSecurityException e) {
+            log.warn("Could not force protocol TLSv1.2: {}", e.getMessage());
+            tlsContext = new SSLContextBuilder().build();
+        }
+        tlsContext.getClientSessionContext().setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+        tlsContext.getClientSessionContext().setSessionTimeout(SSL_SESSION_TIMEOUT_SECONDS);
+        return tlsContext;
+    }
+
+    protected HttpClientConnectionManager initConnectionManager(final boolean requirePoolManager) {
+        SSLConnectionSocketFactory sslSocketFactory;
+        try {
+            sslSocketFactory = new HandshakeCountingSocketFactory(this.initTlsContext(), this.fullHandshakes,
+                    this.resumedHandshakes);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
         
         if (requirePoolManager) {
-            manager = new PoolingHttpClientConnectionManager(
+            return new TracingPoolingConnectionManager(
                     RegistryBuilder.<ConnectionSocketFactory> create().register("https", sslSocketFactory).build());
         } else {
-            manager = new BasicHttpClientConnectionManager(
+            return new TracingBasicConnectionManager(
                     RegistryBuilder.<ConnectionSocketFactory> create().register("https", sslSocketFactory).build());
         }
-        
-        this.requestConfig = RequestConfig.custom().setConnectTimeout(connectionTimeout)
+    }
+
+    protected CloseableHttpClient initHttpClient(final boolean requirePoolManager, final int connectionTimeout,
+            final int socketTimeout) {
+        CloseableHttpClient httpClient;
+        RequestConfig defaultConfig = RequestConfig.custom().setConnectTimeout(connectionTimeout)
                 .setSocketTimeout(socketTimeout).build();
         ConnectionConfig connnectionConfig = ConnectionConfig.custom().setCharset(Charset.forName("UTF-8")).build();
-        httpClient = HttpClientBuilder.create()
-                .setConnectionManager(manager)
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(this.connectionManager)
                 .setDefaultConnectionConfig(connnectionConfig)
-                .setDefaultRequestConfig(this.requestConfig)
-                .build();
+                .setDefaultRequestConfig(defaultConfig)
+                .setRequestExecutor(new TracingRequestExecutor());
+        if (!this.contentCompression) {
+            builder.disableContentCompression();
+        }
+        httpClient = builder.build();
         return httpClient;
     }
 
@@ -173,6 +526,23 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
 
     }
 
+    /**
+     * @see mx.openpay.client.core.StreamingHttpServiceClient#get(java.lang.String, java.util.Map,
+     *      mx.openpay.client.core.ResponseBodyReader)
+     */
+    @Override
+    public HttpServiceResponse get(final String url, final Map<String, String> queryParams,
+            final ResponseBodyReader reader) throws ServiceUnavailableException {
+        URI uri;
+        if (queryParams == null) {
+            uri = URI.create(url);
+        } else {
+            uri = this.createUriWithParams(url, queryParams);
+        }
+        HttpGet request = new HttpGet(uri);
+        return this.executeOperation(request, reader);
+    }
+
     protected URI createUriWithParams(final String url, final Map<String, String> queryParams)
             throws IllegalArgumentException {
         URIBuilder builder = new URIBuilder(URI.create(url));
@@ -203,7 +573,7 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
     @Override
     public HttpServiceResponse put(final String url, final String json) throws ServiceUnavailableException {
         HttpPut request = new HttpPut(URI.create(url));
-        request.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        request.setEntity(this.compressIfNeeded(new StringEntity(json, ContentType.APPLICATION_JSON), json));
         return this.executeOperation(request);
     }
 
@@ -213,29 +583,82 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
     @Override
     public HttpServiceResponse post(final String url, final String json) throws ServiceUnavailableException {
         HttpPost request = new HttpPost(URI.create(url));
-        request.setEntity(new StringEntity(json, Consts.UTF_8.name()));
+        request.setEntity(this.compressIfNeeded(new StringEntity(json, Consts.UTF_8.name()), json));
         return this.executeOperation(request);
     }
 
+    /**
+     * Compresses the request body with gzip if it is larger than the configured threshold. The server must accept
+     * gzip-encoded request bodies for the endpoint being called.
+     */
+    protected HttpEntity compressIfNeeded(final HttpEntity entity, final String json) {
+        if (this.requestCompressionThreshold >= 0 && json.length() >= this.requestCompressionThreshold) {
+            return new GzipCompressingEntity(entity);
+        }
+        return entity;
+    }
+
     protected HttpServiceResponse executeOperation(final HttpRequestBase request) throws ServiceUnavailableException {
+        return this.executeOperation(request, null);
+    }
+
+    /**
+     * Executes the request, giving the body to the reader if one is given. If the current thread has a
+     * {@link Deadline}, the request is aborted when it expires. If the kind of request has a {@link Bulkhead}, the
+     * request waits for its turn first.
+     */
+    protected HttpServiceResponse executeOperation(final HttpRequestBase request, final ResponseBodyReader reader)
+            throws ServiceUnavailableException {
+        Bulkhead bulkhead = this.getBulkhead(RequestProfile.of(request.getMethod(), request.getURI().getPath()));
+        if (bulkhead == null) {
+            return this.executeInBulkhead(request, reader);
+        }
+        bulkhead.acquire();
+        try {
+            return this.executeInBulkhead(request, reader);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private HttpServiceResponse executeInBulkhead(final HttpRequestBase request, final ResponseBodyReader reader)
+            throws ServiceUnavailableException {
         this.addHeaders(request);
         this.addAuthentication(request);
         long init = System.currentTimeMillis();
-        CloseableHttpResponse response = this.callService(request);
-        HttpServiceResponse serviceResponse;
+        Deadline deadline = Deadline.current();
+        Future<?> abort = deadline == null ? null : DeadlineTimer.abortAt(request, deadline);
         try {
-            serviceResponse = this.createResult(response);
+            CloseableHttpResponse response = this.callService(request);
+            HttpServiceResponse serviceResponse;
+            try {
+                if (reader == null) {
+                    serviceResponse = this.createResult(response);
+                } else {
+                    serviceResponse = this.createStreamedResult(response, reader);
+                }
+            } catch (ServiceUnavailableException e) {
+                throw this.deadlineExceeded(request, e);
+            } finally {
+                HttpClientUtils.closeQuietly(response);
+            }
+            log.trace("Request Time: {}", (System.currentTimeMillis() - init));
+            return serviceResponse;
         } finally {
-            HttpClientUtils.closeQuietly(response);
+            if (abort != null) {
+                abort.cancel(false);
+            }
         }
-        log.trace("Request Time: {}", (System.currentTimeMillis() - init));
-        return serviceResponse;
     }
 
     protected void addHeaders(final HttpRequestBase request) {
         request.addHeader(new BasicHeader("User-Agent", this.userAgent));
         request.addHeader(new BasicHeader("Accept", "application/json"));
         request.setHeader(new BasicHeader("Content-Type", "application/json"));
+        Span span = Span.current();
+        if (span != null) {
+            request.setHeader(TRACEPARENT_HEADER, span.getTraceparent());
+        }
     }
 
     protected void addAuthentication(final HttpRequestBase request) {
@@ -253,22 +676,99 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
     }
 
     protected CloseableHttpResponse callService(final HttpRequestBase request) throws ServiceUnavailableException {
-        request.setConfig(this.requestConfig);
+        request.setConfig(this.getRequestConfig(request));
         CloseableHttpResponse response;
         try {
-            response = this.httpClient.execute(request);
+            response = this.getHttpClient().execute(request);
         } catch (ClientProtocolException e) {
             throw new ServiceUnavailableException(e);
         } catch (IOException e) {
-            throw new ServiceUnavailableException(e);
+            throw this.deadlineExceeded(request, new ServiceUnavailableException(e));
         }
         return response;
     }
 
+    /**
+     * Returns the configuration for the profile of the request, with its timeouts limited to the time left before the
+     * deadline of the current thread.
+     */
+    protected RequestConfig getRequestConfig(final HttpRequestBase request) throws ServiceUnavailableException {
+        RequestConfig config = this.requestConfigs.get(RequestProfile.of(request.getMethod(),
+                request.getURI().getPath()));
+        Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return config;
+        }
+        long remaining = deadline.remainingMillis();
+        if (remaining <= 0) {
+            throw new ServiceUnavailableException("Deadline exceeded before calling " + request.getURI().getPath());
+        }
+        int limit = (int) Math.min(remaining, Integer.MAX_VALUE);
+        return RequestConfig.copy(config)
+                .setConnectTimeout(this.limitTimeout(config.getConnectTimeout(), limit))
+                .setSocketTimeout(this.limitTimeout(config.getSocketTimeout(), limit))
+                .setConnectionRequestTimeout(this.limitTimeout(config.getConnectionRequestTimeout(), limit))
+                .build();
+    }
+
+    private int limitTimeout(final int timeout, final int limit) {
+        // Zero or negative timeouts mean no timeout at all
+        return timeout <= 0 ? limit : Math.min(timeout, limit);
+    }
+
+    /**
+     * Replaces the error with a deadline error if the request was aborted because its deadline expired.
+     */
+    private ServiceUnavailableException deadlineExceeded(final HttpRequestBase request,
+            final ServiceUnavailableException error) {
+        if (request.isAborted() && Deadline.current() != null) {
+            return new ServiceUnavailableException("Deadline exceeded calling " + request.getURI().getPath(), error);
+        }
+        return error;
+    }
+
+    /**
+     * Same as {@link #createResult(HttpResponse)}, but a successful JSON body is given to the reader instead of being
+     * read into a String.
+     */
+    protected HttpServiceResponse createStreamedResult(final HttpResponse response, final ResponseBodyReader reader)
+            throws ServiceUnavailableException {
+        HttpServiceResponse serviceResponse = new HttpServiceResponse();
+        serviceResponse.setStatusCode(response.getStatusLine().getStatusCode());
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentType() != null) {
+            serviceResponse.setContentType(entity.getContentType().getValue());
+        }
+        if (entity == null || serviceResponse.getStatusCode() >= 300 || !serviceResponse.isJson()) {
+            return this.createResult(response);
+        }
+        serviceResponse.setRequestId(this.getRequestId(response));
+        ContentType contentType = ContentType.getOrDefault(entity);
+        Charset charset = contentType.getCharset() == null ? Consts.UTF_8 : contentType.getCharset();
+        long start = System.nanoTime();
+        try {
+            Reader body = new InputStreamReader(entity.getContent(), charset);
+            try {
+                reader.read(body);
+            } finally {
+                body.close();
+            }
+        } catch (IOException e) {
+            throw new ServiceUnavailableException(e);
+        } catch (JsonParseException e) {
+            // Gson reports a truncated or reset body as a parse error
+            throw new ServiceUnavailableException(e);
+        } finally {
+            Span.addTimeSince(Phase.DESERIALIZATION, start);
+        }
+        return serviceResponse;
+    }
+
     protected HttpServiceResponse createResult(final HttpResponse response) throws ParseException,
             UnsupportedCharsetException {
         HttpServiceResponse serviceResponse = new HttpServiceResponse();
         serviceResponse.setStatusCode(response.getStatusLine().getStatusCode());
+        serviceResponse.setRequestId(this.getRequestId(response));
         HttpEntity entity = response.getEntity();
         if (entity != null) {
             try {
@@ -283,4 +783,156 @@ public class DefaultHttpServiceClient implements HttpServiceClient {
         return serviceResponse;
     }
 
+    private String getRequestId(final HttpResponse response) {
+        Header header = response.getFirstHeader(REQUEST_ID_HEADER);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Counts the TLS handshakes of the connections, telling apart the ones that resumed a cached session.
+     */
+    private static class HandshakeCountingSocketFactory extends SSLConnectionSocketFactory {
+
+        private final AtomicLong fullHandshakes;
+
+        private final AtomicLong resumedHandshakes;
+
+        HandshakeCountingSocketFactory(final SSLContext context, final AtomicLong fullHandshakes,
+                final AtomicLong resumedHandshakes) {
+            super(context);
+            this.fullHandshakes = fullHandshakes;
+            this.resumedHandshakes = resumedHandshakes;
+        }
+
+        @Override
+        protected void prepareSocket(final SSLSocket socket) throws IOException {
+            final long start = System.currentTimeMillis();
+            socket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+
+                @Override
+                public void handshakeCompleted(final HandshakeCompletedEvent event) {
+                    if (event.getSession().getCreationTime() < start) {
+                        HandshakeCountingSocketFactory.this.resumedHandshakes.incrementAndGet();
+                    } else {
+                        HandshakeCountingSocketFactory.this.fullHandshakes.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Adds the time opening connections and waiting for pooled ones to the span of the thread.
+     */
+    private static class TracingPoolingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        TracingPoolingConnectionManager(final Registry<ConnectionSocketFactory> registry) {
+            super(registry);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+
+                @Override
+                public HttpClientConnection get(final long timeout, final TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    } finally {
+                        Span.addTimeSince(Phase.POOL_LEASE, start);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void connect(final HttpClientConnection conn, final HttpRoute route, final int connectTimeout,
+                final HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.connect(conn, route, connectTimeout, context);
+            } finally {
+                Span.addTimeSince(Phase.CONNECT, start);
+            }
+        }
+
+    }
+
+    /**
+     * Adds the time opening connections to the span of the thread. There is no pool to wait for.
+     */
+    private static class TracingBasicConnectionManager extends BasicHttpClientConnectionManager {
+
+        TracingBasicConnectionManager(final Registry<ConnectionSocketFactory> registry) {
+            super(registry);
+        }
+
+        @Override
+        public void connect(final HttpClientConnection conn, final HttpRoute route, final int connectTimeout,
+                final HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.connect(conn, route, connectTimeout, context);
+            } finally {
+                Span.addTimeSince(Phase.CONNECT, start);
+            }
+        }
+
+    }
+
+    /**
+     * Adds the time from sending the request until receiving the response headers to the span of the thread.
+     */
+    private static class TracingRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        protected HttpResponse doReceiveResponse(final HttpRequest request, final HttpClientConnection conn,
+                final HttpContext context) throws HttpException, IOException {
+            long start = System.nanoTime();
+            try {
+                return super.doReceiveResponse(request, conn, context);
+            } finally {
+                Span.addTimeSince(Phase.SERVER, start);
+            }
+        }
+
+    }
+
+    /**
+     * Aborts the requests whose deadline expires before they finish.
+     */
+    private static class DeadlineTimer {
+
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable, "openpay-deadline-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        static Future<?> abortAt(final HttpRequestBase request, final Deadline deadline) {
+            return TIMER.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    request.abort();
+                }
+            }, Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        }
+
+    }
+
 }
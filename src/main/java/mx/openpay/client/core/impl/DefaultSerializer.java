@@ -15,31 +15,91 @@
  */
 package mx.openpay.client.core.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.Date;
 import java.util.List;
 
+import mx.openpay.client.core.ByteJsonSerializer;
+import mx.openpay.client.core.ElementHandler;
 import mx.openpay.client.core.JsonSerializer;
 import mx.openpay.client.serialization.DateFormatDeserializer;
+import mx.openpay.client.serialization.InterningAdapterFactory;
+import mx.openpay.client.serialization.StringInterner;
 import mx.openpay.client.serialization.SubscriptionAdapterFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
 /**
- * Serializes and deserializes the values using Gson.
+ * Serializes and deserializes the values using Gson. All the instances share the same immutable Gson object, so the
+ * type adapters built for the model classes are reused by every client in the application.
  * @author elopez
  * @see JsonSerializer
  */
-public class DefaultSerializer implements JsonSerializer {
+public class DefaultSerializer implements ByteJsonSerializer {
+
+    private static final String CHARSET = "UTF-8";
 
     private final Gson gson;
 
     public DefaultSerializer() {
-        this.gson = new GsonBuilder()
+        this(false);
+    }
+
+    /**
+     * @param internValues If true, the status, method, type and currency of transactions and the brand, type and bank
+     *            of cards are replaced with canonical instances, so objects kept in memory share those strings.
+     */
+    public DefaultSerializer(final boolean internValues) {
+        this.gson = internValues ? InterningGson.INSTANCE : SharedGson.INSTANCE;
+    }
+
+    /**
+     * For serializers that use a different Gson configuration.
+     */
+    protected DefaultSerializer(final Gson gson) {
+        this.gson = gson;
+    }
+
+    private static GsonBuilder builder() {
+        return new GsonBuilder()
                 .registerTypeAdapter(Date.class, new DateFormatDeserializer())
-                .registerTypeAdapterFactory(new SubscriptionAdapterFactory())
+                .registerTypeAdapterFactory(new SubscriptionAdapterFactory());
+    }
+
+    /**
+     * Creates the Gson object the first time a serializer is created.
+     */
+    private static class SharedGson {
+
+        private static final Gson INSTANCE = builder().create();
+
+    }
+
+    /**
+     * Creates the interning Gson object the first time an interning serializer is created.
+     */
+    private static class InterningGson {
+
+        private static final Gson INSTANCE = builder()
+                .registerTypeAdapterFactory(new InterningAdapterFactory(new StringInterner()))
                 .create();
+
     }
 
     @Override
@@ -58,4 +118,77 @@ public class DefaultSerializer implements JsonSerializer {
         return this.gson.fromJson(json, clazz);
     }
 
+    @Override
+    public <T> List<T> deserializeList(final Reader json, final Class<T> clazz) {
+        Type type = ListTypes.getType(clazz);
+        return this.gson.fromJson(json, type);
+    }
+
+    @Override
+    public <T> T deserialize(final Reader json, final Class<T> clazz) {
+        return this.gson.fromJson(json, clazz);
+    }
+
+    @Override
+    public <T> int deserializeList(final Reader json, final Class<T> clazz, final ElementHandler<? super T> handler) {
+        TypeAdapter<T> adapter = this.gson.getAdapter(clazz);
+        JsonReader reader = new JsonReader(json);
+        reader.setLenient(true); // Same as Gson.fromJson
+        int count = 0;
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                return 0;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                handler.handle(adapter.read(reader));
+                count++;
+            }
+            reader.endArray();
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return count;
+    }
+
+    @Override
+    public void serialize(final Object values, final OutputStream out) {
+        try {
+            Writer writer = new OutputStreamWriter(out, CHARSET);
+            this.gson.toJson(values, writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] serializeToBytes(final Object values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.serialize(values, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> List<T> deserializeList(final InputStream json, final Class<T> clazz) {
+        return this.deserializeList(this.reader(json), clazz);
+    }
+
+    @Override
+    public <T> T deserialize(final InputStream json, final Class<T> clazz) {
+        return this.deserialize(this.reader(json), clazz);
+    }
+
+    private Reader reader(final InputStream json) {
+        try {
+            return new InputStreamReader(json, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
 }
@@ -15,69 +15,79 @@
  */
 package mx.openpay.client.core.impl;
 
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-
-import mx.openpay.client.BankAccount;
-import mx.openpay.client.Card;
-import mx.openpay.client.Charge;
-import mx.openpay.client.Customer;
-import mx.openpay.client.Fee;
-import mx.openpay.client.GenericTransaction;
-import mx.openpay.client.Order;
-import mx.openpay.client.PaymentPlan;
-import mx.openpay.client.Payout;
-import mx.openpay.client.Plan;
-import mx.openpay.client.Subscription;
-import mx.openpay.client.Transfer;
-import mx.openpay.client.Webhook;
-
-import com.google.gson.reflect.TypeToken;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Gives the {@code List<T>} type of any model class. Types are created the first time each class is used.
  * @author elopez
  */
 public class ListTypes {
 
-    private static final Map<Class<?>, Type> TYPES_MAP;
+    private static final ConcurrentMap<Class<?>, Type> TYPES_MAP = new ConcurrentHashMap<Class<?>, Type>();
 
-    static {
-        Map<Class<?>, Type> map = new HashMap<Class<?>, Type>();
-        map.put(BankAccount.class, new TypeToken<List<BankAccount>>() {
-        }.getType());
-        map.put(Card.class, new TypeToken<List<Card>>() {
-        }.getType());
-        map.put(Customer.class, new TypeToken<List<Customer>>() {
-        }.getType());
-        map.put(Charge.class, new TypeToken<List<Charge>>() {
-        }.getType());
-        map.put(Fee.class, new TypeToken<List<Fee>>() {
-        }.getType());
-        map.put(Transfer.class, new TypeToken<List<Transfer>>() {
-        }.getType());
-        map.put(Payout.class, new TypeToken<List<Payout>>() {
-        }.getType());
-        map.put(Plan.class, new TypeToken<List<Plan>>() {
-        }.getType());
-        map.put(Subscription.class, new TypeToken<List<Subscription>>() {
-        }.getType());
-        map.put(GenericTransaction.class, new TypeToken<List<GenericTransaction>>() {
-        }.getType());
-		map.put(Order.class, new TypeToken<List<Order>>() {
-		}.getType());
-        map.put(PaymentPlan.class, new TypeToken<List<PaymentPlan>>() {
-        }.getType());
-        map.put(Webhook.class, new TypeToken<List<Webhook>>() {
-        }.getType());
-        
-        TYPES_MAP = Collections.unmodifiableMap(map);
+    static Type getType(final Class<?> clazz) {
+        Type type = TYPES_MAP.get(clazz);
+        if (type == null) {
+            type = new ListType(clazz);
+            Type previous = TYPES_MAP.putIfAbsent(clazz, type);
+            if (previous != null) {
+                type = previous;
+            }
+        }
+        return type;
     }
 
-    static Type getType(final Class<?> clazz) {
-        return TYPES_MAP.get(clazz);
+    /**
+     * {@code List<T>}, equal to the same type obtained through reflection or a TypeToken.
+     */
+    private static final class ListType implements ParameterizedType {
+
+        private final Class<?> elementClass;
+
+        ListType(final Class<?> elementClass) {
+            this.elementClass = elementClass;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[] { this.elementClass };
+        }
+
+        @Override
+        public Type getRawType() {
+            return List.class;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof ParameterizedType)) {
+                return false;
+            }
+            ParameterizedType other = (ParameterizedType) obj;
+            return List.class.equals(other.getRawType()) && other.getOwnerType() == null
+                    && Arrays.equals(this.getActualTypeArguments(), other.getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 + this.elementClass.hashCode()) ^ List.class.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return List.class.getName() + "<" + this.elementClass.getName() + ">";
+        }
+
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import java.util.List;
+
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.PaginationParams;
+
+/**
+ * Walks the pages of a list from Openpay, giving each page to a handler and keeping only that page in memory.
+ */
+public final class Paging {
+
+    private Paging() {
+    }
+
+    /**
+     * Gets one page of the list.
+     */
+    public interface Source<T> {
+
+        public List<T> getPage(final PaginationParams pagination) throws OpenpayServiceException,
+                ServiceUnavailableException;
+
+    }
+
+    /**
+     * Receives each page of the list, in order.
+     */
+    public interface Handler<T> {
+
+        public void handle(final List<T> page);
+
+    }
+
+    /**
+     * Gets pages until one comes with fewer elements than requested.
+     * @param source Gets each page.
+     * @param pageSize Number of elements requested on each page.
+     * @param handler Receives the pages.
+     * @return The number of elements of all the pages.
+     * @throws ServiceUnavailableException If a page wasn't returned, since counting it as empty would cut the list.
+     * @throws InterruptedException If the thread is interrupted between two pages.
+     */
+    public static <T> long forEachPage(final Source<T> source, final int pageSize, final Handler<T> handler)
+            throws OpenpayServiceException, ServiceUnavailableException, InterruptedException {
+        long count = 0;
+        List<T> page;
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            page = source.getPage(PaginationParams.pagination().offset((int) count).limit(pageSize));
+            if (page == null) {
+                throw new ServiceUnavailableException("No page was returned at offset " + count);
+            }
+            handler.handle(page);
+            count += page.size();
+        } while (page.size() == pageSize);
+        return count;
+    }
+
+}
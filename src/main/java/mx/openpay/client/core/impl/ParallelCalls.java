@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mx.openpay.client.core.Deadline;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Runs calls to Openpay in a pool of threads that lives only while the calls run. The deadline of the calling thread,
+ * if any, is attached to the threads of the pool, and the first error cancels the calls that are still pending.
+ */
+public class ParallelCalls {
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism Maximum number of calls running at the same time.
+     */
+    public ParallelCalls(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs the calls and waits for all of them to finish, or for the first one to fail.
+     * @return The results, in the same order as the calls.
+     */
+    public <T> List<T> invokeAll(final List<? extends Callable<T>> calls) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        List<T> results = new ArrayList<T>(Collections.<T> nCopies(calls.size(), null));
+        if (calls.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, calls.size()),
+                new DaemonThreadFactory());
+        CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+        Map<Future<T>, Integer> indexes = new IdentityHashMap<Future<T>, Integer>(calls.size());
+        try {
+            Deadline deadline = Deadline.current();
+            for (Callable<T> call : calls) {
+                indexes.put(completion.submit(new DeadlineCall<T>(call, deadline)), indexes.size());
+            }
+            // Calls are awaited as they finish, so a failure is seen without waiting for the calls before it
+            for (int i = 0; i < calls.size(); i++) {
+                Future<T> future = this.take(completion);
+                results.set(indexes.get(future), this.await(future));
+            }
+            return results;
+        } finally {
+            for (Future<T> future : indexes.keySet()) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> Future<T> take(final CompletionService<T> completion) throws ServiceUnavailableException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(e);
+        }
+    }
+
+    private <T> T await(final Future<T> future) throws OpenpayServiceException, ServiceUnavailableException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OpenpayServiceException) {
+                throw (OpenpayServiceException) cause;
+            } else if (cause instanceof ServiceUnavailableException) {
+                throw (ServiceUnavailableException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ServiceUnavailableException(cause);
+        }
+    }
+
+    private static class DeadlineCall<T> implements Callable<T> {
+
+        private final Callable<T> call;
+
+        private final Deadline deadline;
+
+        DeadlineCall(final Callable<T> call, final Deadline deadline) {
+            this.call = call;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (this.deadline == null) {
+                return this.call.call();
+            }
+            Deadline previous = this.deadline.attach();
+            try {
+                return this.call.call();
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final int pool = POOL_NUMBER.incrementAndGet();
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            String name = "openpay-calls-" + this.pool + "-" + this.threadNumber.incrementAndGet();
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import mx.openpay.client.serialization.Projection;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Serializer that reads only some fields of the given classes, for applications that list or get many transactions
+ * but only use a few of their fields. For example, to read only the id, status, amount and order of charges:
+ *
+ * <pre>
+ * new ProjectingSerializer(new Projection(Charge.class, &quot;id&quot;, &quot;status&quot;, &quot;amount&quot;,
+ *         &quot;order_id&quot;));
+ * </pre>
+ * <p>
+ * The other fields of those classes are left null, so the serializer is usually given to a separate JsonServiceClient
+ * that shares the HTTP client of the main one. Objects are written whole. Each instance builds its own Gson objects,
+ * so it should be created once and reused. Other classes are read as {@link FastSerializer} reads them.
+ * </p>
+ */
+public class ProjectingSerializer extends DefaultSerializer {
+
+    public ProjectingSerializer(final Projection... projections) {
+        super(builder(projections).create());
+    }
+
+    /**
+     * Each projected class is read by the adapter of a Gson object that skips the fields that are not projected, so
+     * the projection costs nothing while parsing.
+     */
+    private static GsonBuilder builder(final Projection... projections) {
+        GsonBuilder builder = FastSerializer.builder();
+        for (Projection projection : projections) {
+            Class<?> clazz = projection.getProjectedClass();
+            builder.registerTypeAdapter(clazz, FastSerializer.builder().addDeserializationExclusionStrategy(projection)
+                    .create().getAdapter(clazz));
+        }
+        return builder;
+    }
+
+}
@@ -28,6 +28,8 @@ import mx.openpay.client.Address;
 import mx.openpay.client.Card;
 import mx.openpay.client.PointsBalance;
 import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.validation.CardValidator;
+import mx.openpay.client.exceptions.CardValidationException;
 import mx.openpay.client.exceptions.OpenpayServiceException;
 import mx.openpay.client.exceptions.ServiceUnavailableException;
 import mx.openpay.client.utils.SearchParams;
@@ -54,16 +56,25 @@ public class CardOperations extends ServiceOperations {
     }
 
     public Card create(final Card card) throws OpenpayServiceException, ServiceUnavailableException {
+        this.validate(card);
         String path = String.format(MERCHANT_CARDS_PATH, this.getMerchantId());
         return this.getJsonClient().post(path, card, Card.class);
     }
 
     public Card create(final String customerId, final Card card) throws OpenpayServiceException,
             ServiceUnavailableException {
+        this.validate(card);
         String path = String.format(CUSTOMER_CARDS_PATH, this.getMerchantId(), customerId);
         return this.getJsonClient().post(path, card, Card.class);
     }
 
+    private void validate(final Card card) throws CardValidationException {
+        CardValidator validator = this.getJsonClient().getCardValidator();
+        if (validator != null) {
+            validator.validate(card, false);
+        }
+    }
+
     public List<Card> list(final SearchParams params) throws ServiceUnavailableException, OpenpayServiceException {
         String path = String.format(MERCHANT_CARDS_PATH, this.getMerchantId());
         Map<String, String> map = params == null ? null : params.asMap();
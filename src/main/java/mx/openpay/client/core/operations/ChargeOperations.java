@@ -30,7 +30,9 @@ import java.util.Map;
 
 import mx.openpay.client.Card;
 import mx.openpay.client.Charge;
+import mx.openpay.client.core.ElementHandler;
 import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.ResponseBodyReader;
 import mx.openpay.client.core.requests.RequestBuilder;
 import mx.openpay.client.core.requests.transactions.CancelParams;
 import mx.openpay.client.core.requests.transactions.ConfirmCaptureParams;
@@ -41,6 +43,8 @@ import mx.openpay.client.core.requests.transactions.CreateCardChargeParams;
 import mx.openpay.client.core.requests.transactions.CreateStoreChargeParams;
 import mx.openpay.client.core.requests.transactions.RefundParams;
 import mx.openpay.client.core.requests.transactions.UpdateTransactionParams;
+import mx.openpay.client.core.validation.CardValidator;
+import mx.openpay.client.exceptions.CardValidationException;
 import mx.openpay.client.exceptions.OpenpayServiceException;
 import mx.openpay.client.exceptions.ServiceUnavailableException;
 import mx.openpay.client.utils.SearchParams;
@@ -88,6 +92,7 @@ public class ChargeOperations extends ServiceOperations {
      * @since 1.0.10
      */
     public Charge createCharge(RequestBuilder request) throws OpenpayServiceException, ServiceUnavailableException {
+        this.validateCard(request);
         String path = String.format(FOR_MERCHANT_PATH, this.getMerchantId());
         return this.getJsonClient().post(path, request.asMap(), Charge.class);
     }
@@ -103,10 +108,18 @@ public class ChargeOperations extends ServiceOperations {
      */
     public Charge createCharge(final String customerId, RequestBuilder request)
             throws OpenpayServiceException, ServiceUnavailableException {
+        this.validateCard(request);
         String path = String.format(FOR_CUSTOMER_PATH, this.getMerchantId(), customerId);
         return this.getJsonClient().post(path, request.asMap(), Charge.class);
     }
 
+    private void validateCard(final RequestBuilder request) throws CardValidationException {
+        CardValidator validator = this.getJsonClient().getCardValidator();
+        if (validator != null) {
+            validator.validateCharge(request);
+        }
+    }
+
     public Charge update(final UpdateTransactionParams request) throws OpenpayServiceException,
             ServiceUnavailableException {
         String path = String.format(GET_FOR_MERCHANT_PATH, this.getMerchantId(), request.getChargeId());
@@ -126,6 +139,31 @@ public class ChargeOperations extends ServiceOperations {
         return this.getJsonClient().list(path, map, Charge.class);
     }
 
+    /**
+     * Searches charges like {@link #list(SearchParams)}, but gives each charge to the handler as soon as it is parsed,
+     * so large pages don't have to be kept in memory.
+     * @return The number of charges found.
+     */
+    public int list(final SearchParams params, final ElementHandler<? super Charge> handler)
+            throws OpenpayServiceException, ServiceUnavailableException {
+        String path = String.format(FOR_MERCHANT_PATH, this.getMerchantId());
+        Map<String, String> map = params == null ? null : params.asMap();
+        return this.getJsonClient().list(path, map, Charge.class, handler);
+    }
+
+    /**
+     * Searches charges like {@link #list(SearchParams)}, but gives the JSON of the list to the reader instead of
+     * creating the charges.
+     * @param params Search parameters.
+     * @param reader Receives the JSON array of charges.
+     */
+    public void stream(final SearchParams params, final ResponseBodyReader reader) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        String path = String.format(FOR_MERCHANT_PATH, this.getMerchantId());
+        Map<String, String> map = params == null ? null : params.asMap();
+        this.getJsonClient().read(path, map, reader);
+    }
+
     public List<Charge> list(final String customerId, final SearchParams params) throws OpenpayServiceException,
             ServiceUnavailableException {
         String path = String.format(FOR_CUSTOMER_PATH, this.getMerchantId(), customerId);
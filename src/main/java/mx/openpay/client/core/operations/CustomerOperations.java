@@ -25,6 +25,7 @@ import java.util.Map;
 import mx.openpay.client.Address;
 import mx.openpay.client.Customer;
 import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.ResponseBodyReader;
 import mx.openpay.client.exceptions.OpenpayServiceException;
 import mx.openpay.client.exceptions.ServiceUnavailableException;
 import mx.openpay.client.utils.SearchParams;
@@ -56,6 +57,19 @@ public class CustomerOperations extends ServiceOperations {
         return this.getJsonClient().list(path, map, Customer.class);
     }
 
+    /**
+     * Searches customers like {@link #list(SearchParams)}, but gives the JSON of the list to the reader instead of
+     * creating the customers.
+     * @param params Search parameters.
+     * @param reader Receives the JSON array of customers.
+     */
+    public void stream(final SearchParams params, final ResponseBodyReader reader) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        String path = String.format(CUSTOMERS_PATH, this.getMerchantId());
+        Map<String, String> map = params == null ? null : params.asMap();
+        this.getJsonClient().read(path, map, reader);
+    }
+
     public Customer get(final String customerId) throws OpenpayServiceException, ServiceUnavailableException {
         String path = String.format(GET_CUSTOMER_PATH, this.getMerchantId(), customerId);
         return this.getJsonClient().get(path, Customer.class);
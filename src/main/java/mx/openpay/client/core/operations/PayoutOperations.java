@@ -29,6 +29,7 @@ import mx.openpay.client.BankAccount;
 import mx.openpay.client.Card;
 import mx.openpay.client.Payout;
 import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.ResponseBodyReader;
 import mx.openpay.client.core.requests.transactions.CreateBankPayoutParams;
 import mx.openpay.client.core.requests.transactions.CreateCardPayoutParams;
 import mx.openpay.client.enums.PayoutMethod;
@@ -111,6 +112,19 @@ public class PayoutOperations extends ServiceOperations {
         return this.getJsonClient().list(path, map, Payout.class);
     }
 
+    /**
+     * Searches payouts like {@link #list(SearchParams)}, but gives the JSON of the list to the reader instead of
+     * creating the payouts.
+     * @param params Search parameters.
+     * @param reader Receives the JSON array of payouts.
+     */
+    public void stream(final SearchParams params, final ResponseBodyReader reader) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        String path = String.format(FOR_MERCHANT_PATH, this.getMerchantId());
+        Map<String, String> map = params == null ? null : params.asMap();
+        this.getJsonClient().read(path, map, reader);
+    }
+
     public List<Payout> list(final String customerId, final SearchParams params)
             throws OpenpayServiceException, ServiceUnavailableException {
         String path = String.format(FOR_CUSTOMER_PATH, this.getMerchantId(), customerId);
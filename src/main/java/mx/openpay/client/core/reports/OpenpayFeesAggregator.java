@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import mx.openpay.client.GenericTransaction;
+import mx.openpay.client.core.impl.Paging;
+import mx.openpay.client.core.impl.ParallelCalls;
+import mx.openpay.client.core.operations.OpenpayFeesOperations;
+import mx.openpay.client.enums.FeeDetailsType;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.reports.OpenpayFeesSummary;
+import mx.openpay.client.utils.PaginationParams;
+
+/**
+ * Gets the fees charged by Openpay on a range of months, making the calls for different months and types of details
+ * concurrently.
+ * <p>
+ * The summaries fetched are kept for the life of the aggregator, so asking again for an overlapping range only fetches
+ * the missing months. Create a new aggregator, or call {@link #clearCache()}, to see the changes in the current month.
+ * </p>
+ *
+ * <pre>
+ * OpenpayFeesAggregator fees = new OpenpayFeesAggregator(api.openpayFees(), 4);
+ * OpenpayFeesRangeSummary lastTwoYears = fees.getSummary(2013, 1, 2014, 12);
+ * </pre>
+ */
+public class OpenpayFeesAggregator {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final OpenpayFeesOperations fees;
+
+    private final ParallelCalls calls;
+
+    private final int pageSize;
+
+    private final ConcurrentMap<Integer, OpenpayFeesSummary> summaries =
+            new ConcurrentHashMap<Integer, OpenpayFeesSummary>();
+
+    /**
+     * @param fees Operations used to get the reports.
+     * @param parallelism Maximum number of concurrent calls to Openpay.
+     */
+    public OpenpayFeesAggregator(final OpenpayFeesOperations fees, final int parallelism) {
+        this(fees, parallelism, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param fees Operations used to get the reports.
+     * @param parallelism Maximum number of concurrent calls to Openpay.
+     * @param pageSize Number of transactions requested on each page of details.
+     */
+    public OpenpayFeesAggregator(final OpenpayFeesOperations fees, final int parallelism, final int pageSize) {
+        if (fees == null) {
+            throw new IllegalArgumentException("Fees operations are required");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.fees = fees;
+        this.calls = new ParallelCalls(parallelism);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Gets the summary of the fees of every month in the range, and their sum.
+     * @param fromYear Year of the first month.
+     * @param fromMonth First month, from 1 to 12.
+     * @param toYear Year of the last month.
+     * @param toMonth Last month, inclusive.
+     * @return The summary of each month and the total.
+     * @throws OpenpayServiceException If the service returns an error for any month.
+     * @throws ServiceUnavailableException If the service is not available.
+     */
+    public OpenpayFeesRangeSummary getSummary(final int fromYear, final int fromMonth, final int toYear,
+            final int toMonth) throws OpenpayServiceException, ServiceUnavailableException {
+        List<Integer> months = this.months(fromYear, fromMonth, toYear, toMonth);
+        List<SummaryCall> missing = new ArrayList<SummaryCall>();
+        for (Integer month : months) {
+            if (!this.summaries.containsKey(month)) {
+                missing.add(new SummaryCall(month));
+            }
+        }
+        List<OpenpayFeesSummary> fetched = this.calls.invokeAll(missing);
+        for (int i = 0; i < missing.size(); i++) {
+            // A month without summary is not kept, so it is asked for again next time
+            if (fetched.get(i) != null) {
+                this.summaries.put(missing.get(i).month, fetched.get(i));
+            }
+        }
+
+        OpenpayFeesSummary total = new OpenpayFeesSummary();
+        Map<String, OpenpayFeesSummary> byMonth = new LinkedHashMap<String, OpenpayFeesSummary>();
+        for (Integer month : months) {
+            OpenpayFeesSummary summary = this.summaries.get(month);
+            add(total, summary);
+            byMonth.put(String.format("%04d-%02d", year(month), month(month)), summary);
+        }
+        return new OpenpayFeesRangeSummary(total, byMonth);
+    }
+
+    /**
+     * Pages through the details of every month in the range and gives each transaction to the consumer. The pages
+     * are not kept in memory once given to the consumer.
+     * @param fromYear Year of the first month.
+     * @param fromMonth First month, from 1 to 12.
+     * @param toYear Year of the last month.
+     * @param toMonth Last month, inclusive.
+     * @param feeTypes Types of details to get. All of them if null.
+     * @param consumer Receives the transactions.
+     * @return The number of transactions given to the consumer.
+     * @throws OpenpayServiceException If the service returns an error for any page.
+     * @throws ServiceUnavailableException If the service is not available.
+     */
+    public long getDetails(final int fromYear, final int fromMonth, final int toYear, final int toMonth,
+            final Set<FeeDetailsType> feeTypes, final FeeDetailsConsumer consumer) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer is required");
+        }
+        Set<FeeDetailsType> types = feeTypes == null ? EnumSet.allOf(FeeDetailsType.class) : feeTypes;
+        List<DetailsCall> details = new ArrayList<DetailsCall>();
+        for (Integer month : this.months(fromYear, fromMonth, toYear, toMonth)) {
+            for (FeeDetailsType type : types) {
+                details.add(new DetailsCall(month, type, consumer));
+            }
+        }
+        long count = 0;
+        for (Long transactions : this.calls.invokeAll(details)) {
+            count += transactions;
+        }
+        return count;
+    }
+
+    /**
+     * Forgets the summaries fetched so far.
+     */
+    public void clearCache() {
+        this.summaries.clear();
+    }
+
+    /**
+     * Adds every amount of the summary to the total. Amounts missing in either of them, or a missing summary, count
+     * as zero.
+     */
+    static void add(final OpenpayFeesSummary total, final OpenpayFeesSummary summary) {
+        if (summary == null) {
+            return;
+        }
+        total.setCharged(sum(total.getCharged(), summary.getCharged()));
+        total.setChargedTax(sum(total.getChargedTax(), summary.getChargedTax()));
+        total.setChargedAdjustments(sum(total.getChargedAdjustments(), summary.getChargedAdjustments()));
+        total.setChargedAdjustmentsTax(sum(total.getChargedAdjustmentsTax(), summary.getChargedAdjustmentsTax()));
+        total.setRefunded(sum(total.getRefunded(), summary.getRefunded()));
+        total.setRefundedTax(sum(total.getRefundedTax(), summary.getRefundedTax()));
+        total.setRefundedAdjustments(sum(total.getRefundedAdjustments(), summary.getRefundedAdjustments()));
+        total.setRefundedAdjustmentsTax(sum(total.getRefundedAdjustmentsTax(),
+                summary.getRefundedAdjustmentsTax()));
+        total.setTotal(sum(total.getTotal(), summary.getTotal()));
+    }
+
+    private static BigDecimal sum(final BigDecimal total, final BigDecimal value) {
+        if (value == null) {
+            return total == null ? BigDecimal.ZERO : total;
+        }
+        return total == null ? value : total.add(value);
+    }
+
+    /**
+     * Months are numbered as year * 12 + month - 1, so a range is just a range of integers.
+     */
+    private List<Integer> months(final int fromYear, final int fromMonth, final int toYear, final int toMonth) {
+        if (fromMonth < 1 || fromMonth > 12 || toMonth < 1 || toMonth > 12) {
+            throw new IllegalArgumentException("Months must be between 1 and 12");
+        }
+        int from = fromYear * 12 + fromMonth - 1;
+        int to = toYear * 12 + toMonth - 1;
+        if (to < from) {
+            throw new IllegalArgumentException("The range ends before it starts");
+        }
+        List<Integer> months = new ArrayList<Integer>(to - from + 1);
+        for (int month = from; month <= to; month++) {
+            months.add(month);
+        }
+        return months;
+    }
+
+    private static int year(final int month) {
+        return month / 12;
+    }
+
+    private static int month(final int month) {
+        return month % 12 + 1;
+    }
+
+    private class SummaryCall implements Callable<OpenpayFeesSummary> {
+
+        private final int month;
+
+        SummaryCall(final int month) {
+            this.month = month;
+        }
+
+        @Override
+        public OpenpayFeesSummary call() throws Exception {
+            return OpenpayFeesAggregator.this.fees.getSummary(year(this.month), month(this.month));
+        }
+
+    }
+
+    private class DetailsCall implements Callable<Long>, Paging.Source<GenericTransaction> {
+
+        private final int month;
+
+        private final FeeDetailsType type;
+
+        private final FeeDetailsConsumer consumer;
+
+        DetailsCall(final int month, final FeeDetailsType type, final FeeDetailsConsumer consumer) {
+            this.month = month;
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            final int year = year(this.month);
+            final int month = month(this.month);
+            return Paging.forEachPage(this, OpenpayFeesAggregator.this.pageSize,
+                    new Paging.Handler<GenericTransaction>() {
+
+                        @Override
+                        public void handle(final List<GenericTransaction> page) {
+                            synchronized (DetailsCall.this.consumer) {
+                                for (GenericTransaction transaction : page) {
+                                    DetailsCall.this.consumer.accept(year, month, DetailsCall.this.type,
+                                            transaction);
+                                }
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public List<GenericTransaction> getPage(final PaginationParams pagination) throws OpenpayServiceException,
+                ServiceUnavailableException {
+            return OpenpayFeesAggregator.this.fees.getDetails(year(this.month), month(this.month), this.type,
+                    pagination);
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.ToString;
+import mx.openpay.client.reports.OpenpayFeesSummary;
+
+/**
+ * Fees charged by Openpay on a range of months.
+ */
+@Getter
+@ToString
+public class OpenpayFeesRangeSummary {
+
+    /**
+     * Sum of the summaries of every month.
+     */
+    private final OpenpayFeesSummary total;
+
+    /**
+     * Summary of each month, with keys in the format yyyy-MM, sorted by date. Null for months Openpay returned no
+     * summary for.
+     */
+    private final Map<String, OpenpayFeesSummary> months;
+
+    OpenpayFeesRangeSummary(final OpenpayFeesSummary total, final Map<String, OpenpayFeesSummary> months) {
+        this.total = total;
+        this.months = Collections.unmodifiableMap(months);
+    }
+
+}
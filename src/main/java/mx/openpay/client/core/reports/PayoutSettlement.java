@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.ToString;
+import mx.openpay.client.TransactionsPayoutResume;
+import mx.openpay.client.enums.TransactionsPayoutType;
+
+/**
+ * Result of reconciling a payout: the totals computed from its transactions and the differences with the resume
+ * reported by Openpay.
+ */
+@Getter
+@ToString
+public class PayoutSettlement {
+
+    private final String payoutId;
+
+    /**
+     * The resume reported by Openpay.
+     */
+    private final TransactionsPayoutResume resume;
+
+    /**
+     * Totals computed from the transactions of each type of details.
+     */
+    private final Map<TransactionsPayoutType, Total> totals;
+
+    /**
+     * Types whose computed total doesn't match the resume. Empty if the payout is balanced.
+     */
+    private final List<Discrepancy> discrepancies;
+
+    PayoutSettlement(final String payoutId, final TransactionsPayoutResume resume,
+            final Map<TransactionsPayoutType, Total> totals, final List<Discrepancy> discrepancies) {
+        this.payoutId = payoutId;
+        this.resume = resume;
+        this.totals = Collections.unmodifiableMap(totals);
+        this.discrepancies = Collections.unmodifiableList(discrepancies);
+    }
+
+    public boolean isBalanced() {
+        return this.discrepancies.isEmpty();
+    }
+
+    /**
+     * Running totals of one type of details.
+     */
+    @Getter
+    @ToString
+    public static class Total {
+
+        private final TransactionsPayoutType type;
+
+        private long count;
+
+        /** Sum of the amounts of the transactions. */
+        private BigDecimal amount = BigDecimal.ZERO;
+
+        /** Sum of the fees and their taxes charged on the transactions. */
+        private BigDecimal fees = BigDecimal.ZERO;
+
+        Total(final TransactionsPayoutType type) {
+            this.type = type;
+        }
+
+        void add(final BigDecimal transactionAmount, final BigDecimal fee, final BigDecimal tax) {
+            this.count++;
+            if (transactionAmount != null) {
+                this.amount = this.amount.add(transactionAmount);
+            }
+            if (fee != null) {
+                this.fees = this.fees.add(fee);
+            }
+            if (tax != null) {
+                this.fees = this.fees.add(tax);
+            }
+        }
+
+    }
+
+    /**
+     * Difference between the amount reported in the resume and the one computed from the transactions.
+     */
+    @Getter
+    @ToString
+    public static class Discrepancy {
+
+        private final TransactionsPayoutType type;
+
+        private final BigDecimal expected;
+
+        private final BigDecimal actual;
+
+        Discrepancy(final TransactionsPayoutType type, final BigDecimal expected, final BigDecimal actual) {
+            this.type = type;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public BigDecimal getDifference() {
+            return this.actual.subtract(this.expected);
+        }
+
+    }
+
+}
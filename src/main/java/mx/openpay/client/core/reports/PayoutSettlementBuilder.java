@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import mx.openpay.client.GenericTransaction;
+import mx.openpay.client.TransactionsPayoutResume;
+import mx.openpay.client.core.impl.Paging;
+import mx.openpay.client.core.impl.ParallelCalls;
+import mx.openpay.client.core.operations.TransactionsPayoutOperations;
+import mx.openpay.client.enums.TransactionsPayoutType;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.PaginationParams;
+
+/**
+ * Reconciles a payout against its transactions. The details of every type are paged concurrently and added to running
+ * totals as each page arrives, so only one page per type is in memory at any time. The totals are then compared with
+ * the resume of the payout.
+ *
+ * <pre>
+ * PayoutSettlement settlement = new PayoutSettlementBuilder(api.transactionsPayout(), 4).build(payoutId);
+ * if (!settlement.isBalanced()) {
+ *     log.warn(&quot;Payout {} doesn't match: {}&quot;, payoutId, settlement.getDiscrepancies());
+ * }
+ * </pre>
+ */
+public class PayoutSettlementBuilder {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final TransactionsPayoutOperations payouts;
+
+    private final ParallelCalls calls;
+
+    private final int pageSize;
+
+    /**
+     * @param payouts Operations used to get the payout reports.
+     * @param parallelism Maximum number of concurrent calls to Openpay.
+     */
+    public PayoutSettlementBuilder(final TransactionsPayoutOperations payouts, final int parallelism) {
+        this(payouts, parallelism, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param payouts Operations used to get the payout reports.
+     * @param parallelism Maximum number of concurrent calls to Openpay.
+     * @param pageSize Number of transactions requested on each page of details.
+     */
+    public PayoutSettlementBuilder(final TransactionsPayoutOperations payouts, final int parallelism,
+            final int pageSize) {
+        if (payouts == null) {
+            throw new IllegalArgumentException("Payout operations are required");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.payouts = payouts;
+        this.calls = new ParallelCalls(parallelism);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Reconciles the payout.
+     * @param payoutId Id of the payout.
+     * @return The totals and discrepancies of the payout.
+     * @throws OpenpayServiceException If the service returns an error.
+     * @throws ServiceUnavailableException If the service is not available.
+     */
+    public PayoutSettlement build(final String payoutId) throws OpenpayServiceException,
+            ServiceUnavailableException {
+        return this.build(payoutId, null);
+    }
+
+    /**
+     * Reconciles the payout, giving every transaction to the consumer as it is added to the totals.
+     * @param payoutId Id of the payout.
+     * @param consumer Receives the transactions. Optional.
+     * @return The totals and discrepancies of the payout.
+     * @throws OpenpayServiceException If the service returns an error.
+     * @throws ServiceUnavailableException If the service is not available.
+     */
+    public PayoutSettlement build(final String payoutId, final PayoutTransactionConsumer consumer)
+            throws OpenpayServiceException, ServiceUnavailableException {
+        if (payoutId == null) {
+            throw new IllegalArgumentException("Payout ID can't be null");
+        }
+        TransactionsPayoutResume resume = this.payouts.getResume(payoutId);
+        if (resume == null) {
+            throw new ServiceUnavailableException("No resume was returned for payout " + payoutId);
+        }
+        List<DetailsCall> details = new ArrayList<DetailsCall>();
+        for (TransactionsPayoutType type : TransactionsPayoutType.values()) {
+            details.add(new DetailsCall(payoutId, type, consumer));
+        }
+        Map<TransactionsPayoutType, PayoutSettlement.Total> totals =
+                new EnumMap<TransactionsPayoutType, PayoutSettlement.Total>(TransactionsPayoutType.class);
+        for (PayoutSettlement.Total total : this.calls.invokeAll(details)) {
+            totals.put(total.getType(), total);
+        }
+
+        List<PayoutSettlement.Discrepancy> discrepancies = new ArrayList<PayoutSettlement.Discrepancy>();
+        for (PayoutSettlement.Total total : totals.values()) {
+            BigDecimal expected = this.getExpected(resume, total.getType());
+            if (expected == null) {
+                expected = BigDecimal.ZERO;
+            }
+            if (expected.compareTo(total.getAmount()) != 0) {
+                discrepancies.add(new PayoutSettlement.Discrepancy(total.getType(), expected, total.getAmount()));
+            }
+        }
+        return new PayoutSettlement(payoutId, resume, totals, discrepancies);
+    }
+
+    private BigDecimal getExpected(final TransactionsPayoutResume resume, final TransactionsPayoutType type) {
+        switch (type) {
+        case IN:
+            return resume.getIn();
+        case OUT:
+            return resume.getOut();
+        case CHARGED_ADJUSTMENTS:
+            return resume.getChargedAdjustments();
+        case REFUNDED_ADJUSTMENTS:
+            return resume.getRefundedAdjustments();
+        default:
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    private class DetailsCall implements Callable<PayoutSettlement.Total>, Paging.Source<GenericTransaction> {
+
+        private final String payoutId;
+
+        private final TransactionsPayoutType type;
+
+        private final PayoutTransactionConsumer consumer;
+
+        DetailsCall(final String payoutId, final TransactionsPayoutType type,
+                final PayoutTransactionConsumer consumer) {
+            this.payoutId = payoutId;
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public PayoutSettlement.Total call() throws Exception {
+            final PayoutSettlement.Total total = new PayoutSettlement.Total(this.type);
+            Paging.forEachPage(this, PayoutSettlementBuilder.this.pageSize, new Paging.Handler<GenericTransaction>() {
+
+                @Override
+                public void handle(final List<GenericTransaction> page) {
+                    DetailsCall.this.add(total, page);
+                }
+            });
+            return total;
+        }
+
+        @Override
+        public List<GenericTransaction> getPage(final PaginationParams pagination) throws OpenpayServiceException,
+                ServiceUnavailableException {
+            return PayoutSettlementBuilder.this.payouts.getDetails(this.payoutId, this.type, pagination);
+        }
+
+        private void add(final PayoutSettlement.Total total, final List<GenericTransaction> page) {
+            for (GenericTransaction transaction : page) {
+                if (transaction.getFee() == null) {
+                    total.add(transaction.getAmount(), null, null);
+                } else {
+                    total.add(transaction.getAmount(), transaction.getFee().getAmount(),
+                            transaction.getFee().getTax());
+                }
+            }
+            if (this.consumer != null) {
+                synchronized (this.consumer) {
+                    for (GenericTransaction transaction : page) {
+                        this.consumer.accept(this.type, transaction);
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import mx.openpay.client.GenericTransaction;
+import mx.openpay.client.enums.TransactionsPayoutType;
+
+/**
+ * Receives the transactions of a payout as they are fetched by {@link PayoutSettlementBuilder}. The calls are never
+ * concurrent, but they may come from different threads and the types of details are mixed.
+ */
+public interface PayoutTransactionConsumer {
+
+    /**
+     * @param type Type of the details that contains the transaction.
+     * @param transaction The transaction.
+     */
+    void accept(TransactionsPayoutType type, GenericTransaction transaction);
+
+}
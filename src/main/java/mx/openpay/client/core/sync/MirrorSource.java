@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import java.util.List;
+
+import mx.openpay.client.Transaction;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Kind of transaction kept by a {@link TransactionMirror}. See {@link MirrorSources} for the sources of charges,
+ * payouts, transfers and fees.
+ */
+public interface MirrorSource<T extends Transaction> {
+
+    /**
+     * @return The class of the transactions, used to read them back from the store.
+     */
+    Class<T> getType();
+
+    /**
+     * Searches the transactions created in the period given in the parameters.
+     */
+    List<T> list(SearchParams params) throws OpenpayServiceException, ServiceUnavailableException;
+
+    /**
+     * Gets the current state of a transaction.
+     */
+    T get(String id) throws OpenpayServiceException, ServiceUnavailableException;
+
+}
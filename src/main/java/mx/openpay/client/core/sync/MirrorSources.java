@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import java.util.List;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.Fee;
+import mx.openpay.client.Payout;
+import mx.openpay.client.Transfer;
+import mx.openpay.client.core.operations.ChargeOperations;
+import mx.openpay.client.core.operations.FeeOperations;
+import mx.openpay.client.core.operations.PayoutOperations;
+import mx.openpay.client.core.operations.TransferOperations;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Sources for the transactions that can be mirrored.
+ */
+public final class MirrorSources {
+
+    private MirrorSources() {
+    }
+
+    /**
+     * Charges made to the merchant.
+     */
+    public static MirrorSource<Charge> charges(final ChargeOperations charges) {
+        return new MirrorSource<Charge>() {
+
+            @Override
+            public Class<Charge> getType() {
+                return Charge.class;
+            }
+
+            @Override
+            public List<Charge> list(final SearchParams params) throws OpenpayServiceException,
+                    ServiceUnavailableException {
+                return charges.list(params);
+            }
+
+            @Override
+            public Charge get(final String id) throws OpenpayServiceException, ServiceUnavailableException {
+                return charges.get(id);
+            }
+        };
+    }
+
+    /**
+     * Payouts made from the merchant.
+     */
+    public static MirrorSource<Payout> payouts(final PayoutOperations payouts) {
+        return new MirrorSource<Payout>() {
+
+            @Override
+            public Class<Payout> getType() {
+                return Payout.class;
+            }
+
+            @Override
+            public List<Payout> list(final SearchParams params) throws OpenpayServiceException,
+                    ServiceUnavailableException {
+                return payouts.list(params);
+            }
+
+            @Override
+            public Payout get(final String id) throws OpenpayServiceException, ServiceUnavailableException {
+                return payouts.get(id);
+            }
+        };
+    }
+
+    /**
+     * Fees charged to customers.
+     */
+    public static MirrorSource<Fee> fees(final FeeOperations fees) {
+        return new MirrorSource<Fee>() {
+
+            @Override
+            public Class<Fee> getType() {
+                return Fee.class;
+            }
+
+            @Override
+            public List<Fee> list(final SearchParams params) throws OpenpayServiceException,
+                    ServiceUnavailableException {
+                return fees.list(params);
+            }
+
+            @Override
+            public Fee get(final String id) throws OpenpayServiceException, ServiceUnavailableException {
+                return fees.get(id);
+            }
+        };
+    }
+
+    /**
+     * Transfers made from a customer. Openpay only lists transfers by customer, so each customer needs its own mirror.
+     */
+    public static MirrorSource<Transfer> transfers(final TransferOperations transfers, final String customerId) {
+        return new MirrorSource<Transfer>() {
+
+            @Override
+            public Class<Transfer> getType() {
+                return Transfer.class;
+            }
+
+            @Override
+            public List<Transfer> list(final SearchParams params) throws OpenpayServiceException,
+                    ServiceUnavailableException {
+                return transfers.list(customerId, params);
+            }
+
+            @Override
+            public Transfer get(final String id) throws OpenpayServiceException, ServiceUnavailableException {
+                return transfers.get(customerId, id);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.openpay.client.Transaction;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Polls the status of pending transactions, like store, bank or Bitcoin charges waiting for the customer to pay, and
+ * tells a listener when it changes. A transaction stops being tracked once its status is no longer pending.
+ * <p>
+ * Each transaction is polled less often as it gets older, with an interval of half its age between the minimum and
+ * maximum intervals, and more often as its due date approaches. The polls are scheduled in a timing wheel run by a
+ * single thread, which hands the due transactions to a pool of threads. When many due transactions were created on the
+ * same day they are found by searching that day instead of getting each one.
+ * </p>
+ *
+ * <pre>
+ * PendingTransactionPoller&lt;Charge&gt; poller = new PendingTransactionPoller&lt;Charge&gt;(
+ *         MirrorSources.charges(api.charges()), listener).parallelism(4);
+ * poller.start();
+ * poller.track(storeCharge);
+ * </pre>
+ */
+@Slf4j
+public class PendingTransactionPoller<T extends Transaction> {
+
+    /** Statuses of the transactions that may still change. The tracked status is always one of these instances. */
+    private static final String[] PENDING_STATUSES = { "in_progress", "charge_pending" };
+
+    private static final int WHEEL_SIZE = 512;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final AtomicInteger POLLER_NUMBER = new AtomicInteger();
+
+    private final MirrorSource<T> source;
+
+    private final StatusListener<T> listener;
+
+    private final Map<String, Entry> tracked = new ConcurrentHashMap<String, Entry>();
+
+    /** Entries to place in the wheel, added by any thread and taken by the wheel thread. */
+    private final Queue<Entry> scheduled = new ConcurrentLinkedQueue<Entry>();
+
+    private long tickMillis = 1000;
+
+    private long minInterval = TimeUnit.SECONDS.toMillis(30);
+
+    private long maxInterval = TimeUnit.HOURS.toMillis(1);
+
+    private int batchThreshold = 20;
+
+    private int parallelism = 4;
+
+    private volatile Wheel wheel;
+
+    private ExecutorService pollers;
+
+    /**
+     * @param source Source of the transactions.
+     * @param listener Listener of the changes of status.
+     */
+    public PendingTransactionPoller(final MirrorSource<T> source, final StatusListener<T> listener) {
+        if (source == null || listener == null) {
+            throw new IllegalArgumentException("Source and listener are required");
+        }
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /**
+     * Resolution of the schedule, in milliseconds. By default, one second.
+     */
+    public PendingTransactionPoller<T> tickMillis(final long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms");
+        }
+        this.tickMillis = tickMillis;
+        return this;
+    }
+
+    /**
+     * Shortest and longest time between two polls of a transaction, in milliseconds. By default, 30 seconds and 1
+     * hour.
+     */
+    public PendingTransactionPoller<T> intervals(final long minInterval, final long maxInterval) {
+        if (minInterval < 1 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Invalid intervals: " + minInterval + ", " + maxInterval);
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        return this;
+    }
+
+    /**
+     * Number of transactions created on the same day that have to be due at the same time for them to be polled with
+     * a search of that day instead of one call each.
+     */
+    public PendingTransactionPoller<T> batchThreshold(final int batchThreshold) {
+        this.batchThreshold = batchThreshold;
+        return this;
+    }
+
+    /**
+     * Maximum number of polls running at the same time.
+     */
+    public PendingTransactionPoller<T> parallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Starts polling the tracked transactions.
+     */
+    public synchronized void start() {
+        if (this.pollers != null) {
+            throw new IllegalStateException("Poller already started");
+        }
+        final int number = POLLER_NUMBER.incrementAndGet();
+        this.pollers = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "openpay-poller-" + number + "-"
+                        + this.threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.wheel = new Wheel();
+        Thread thread = new Thread(this.wheel, "openpay-poller-" + number + "-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops polling. Polls already running are interrupted. A stopped poller can't be started again.
+     */
+    public synchronized void stop() {
+        if (this.wheel != null) {
+            this.wheel.running = false;
+            this.wheel = null;
+            this.pollers.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts tracking a transaction, if its status is pending.
+     * @return true if the transaction is now tracked.
+     */
+    public boolean track(final T transaction) {
+        String status = pendingStatus(transaction.getStatus());
+        if (status == null) {
+            return false;
+        }
+        Date creation = transaction.getCreationDate();
+        Entry entry = new Entry(transaction.getId(), status, creation == null ? System.currentTimeMillis()
+                : creation.getTime(), transaction.getDueDate());
+        // An entry replaced for the same id is dropped by the wheel or after its poll
+        this.tracked.put(entry.id, entry);
+        this.schedule(entry, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stops tracking a transaction.
+     * @return true if the transaction was tracked.
+     */
+    public boolean untrack(final String id) {
+        return this.tracked.remove(id) != null;
+    }
+
+    /**
+     * @return Number of transactions tracked.
+     */
+    public int size() {
+        return this.tracked.size();
+    }
+
+    /**
+     * Time until the next poll: half the age of the transaction, but no later than halfway to its due date, and
+     * growing again from the due date once it has passed.
+     */
+    long nextDelay(final long creation, final long dueDate, final long now) {
+        long delay = Math.min(this.maxInterval, Math.max(0, now - creation) / 2);
+        if (dueDate > 0) {
+            long untilDue = dueDate - now;
+            delay = Math.min(delay, untilDue > 0 ? untilDue / 2 : -untilDue);
+        }
+        return Math.max(this.minInterval, delay);
+    }
+
+    private void schedule(final Entry entry, final long now) {
+        entry.pollAt = now + this.nextDelay(entry.creation, entry.dueDate, now);
+        this.scheduled.add(entry);
+    }
+
+    private static String pendingStatus(final String status) {
+        for (String pending : PENDING_STATUSES) {
+            if (pending.equals(status)) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands the due entries to the pollers, searching the days that have enough of them.
+     */
+    private void poll(final List<Entry> due) {
+        Map<String, List<Entry>> byDay = new HashMap<String, List<Entry>>();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        for (Entry entry : due) {
+            String day = format.format(new Date(entry.creation));
+            List<Entry> entries = byDay.get(day);
+            if (entries == null) {
+                entries = new ArrayList<Entry>();
+                byDay.put(day, entries);
+            }
+            entries.add(entry);
+        }
+        for (List<Entry> entries : byDay.values()) {
+            if (entries.size() >= this.batchThreshold) {
+                this.pollers.execute(new SearchPoll(entries));
+            } else {
+                for (Entry entry : entries) {
+                    this.pollers.execute(new SearchPoll(entry));
+                }
+            }
+        }
+    }
+
+    private void update(final Entry entry, final T transaction) {
+        if (this.tracked.get(entry.id) != entry) {
+            return;
+        }
+        String status = pendingStatus(transaction.getStatus());
+        if (status == null) {
+            this.tracked.remove(entry.id);
+        } else if (transaction.getDueDate() != null) {
+            entry.dueDate = transaction.getDueDate().getTime();
+        }
+        if (status != entry.status) {
+            String previous = entry.status;
+            entry.status = status;
+            try {
+                this.listener.statusChanged(transaction, previous);
+            } catch (RuntimeException e) {
+                log.error("Status listener failed for " + entry.id, e);
+            }
+        }
+        if (status != null) {
+            this.schedule(entry, System.currentTimeMillis());
+        }
+    }
+
+    private void retry(final Entry entry, final String reason) {
+        log.warn("Couldn't poll {}: {}", entry.id, reason);
+        if (this.tracked.get(entry.id) == entry) {
+            this.schedule(entry, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * A tracked transaction. Only one poll of each entry is scheduled or running at any time.
+     */
+    private static class Entry {
+
+        final String id;
+
+        final long creation;
+
+        volatile long dueDate;
+
+        volatile String status;
+
+        volatile long pollAt;
+
+        /** Turns of the wheel left before it is due, and next entry in the same slot; used only by the wheel. */
+        long rounds;
+
+        Entry next;
+
+        Entry(final String id, final String status, final long creation, final Date dueDate) {
+            this.id = id;
+            this.status = status;
+            this.creation = creation;
+            this.dueDate = dueDate == null ? 0 : dueDate.getTime();
+        }
+
+    }
+
+    /**
+     * Hashed timing wheel. Each slot is a linked list of the entries due on its ticks; entries further than a turn
+     * away stay in their slot for the number of turns left.
+     */
+    private class Wheel implements Runnable {
+
+        private final Entry[] slots = new Entry[WHEEL_SIZE];
+
+        private final long start = System.currentTimeMillis();
+
+        private long tick;
+
+        volatile boolean running = true;
+
+        @Override
+        public void run() {
+            while (this.running) {
+                long sleep = this.start + (this.tick + 1) * PendingTransactionPoller.this.tickMillis
+                        - System.currentTimeMillis();
+                if (sleep > 0) {
+                    try {
+                        Thread.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                this.placeScheduled();
+                List<Entry> due = this.expire(this.slots[(int) (this.tick & (WHEEL_SIZE - 1))]);
+                if (!due.isEmpty() && this.running) {
+                    try {
+                        PendingTransactionPoller.this.poll(due);
+                    } catch (RuntimeException e) {
+                        log.error("Couldn't hand polls to the pollers", e);
+                    }
+                }
+                this.tick++;
+            }
+        }
+
+        private void placeScheduled() {
+            long tickMillis = PendingTransactionPoller.this.tickMillis;
+            Entry entry;
+            while ((entry = PendingTransactionPoller.this.scheduled.poll()) != null) {
+                long dueTick = Math.max(this.tick, (entry.pollAt - this.start + tickMillis - 1) / tickMillis);
+                entry.rounds = (dueTick - this.tick) / WHEEL_SIZE;
+                int slot = (int) (dueTick & (WHEEL_SIZE - 1));
+                entry.next = this.slots[slot];
+                this.slots[slot] = entry;
+            }
+        }
+
+        private List<Entry> expire(final Entry head) {
+            int slot = (int) (this.tick & (WHEEL_SIZE - 1));
+            List<Entry> due = new ArrayList<Entry>();
+            Entry kept = null;
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.next = null;
+                if (PendingTransactionPoller.this.tracked.get(entry.id) != entry) {
+                    // Untracked, or replaced by a newer entry
+                } else if (entry.rounds > 0) {
+                    entry.rounds--;
+                    entry.next = kept;
+                    kept = entry;
+                } else {
+                    due.add(entry);
+                }
+                entry = next;
+            }
+            this.slots[slot] = kept;
+            return due;
+        }
+
+    }
+
+    /**
+     * Gets the current state of the entries, searching their day when there are several and getting the rest one by
+     * one.
+     */
+    private class SearchPoll implements Runnable {
+
+        private final List<Entry> entries;
+
+        SearchPoll(final Entry entry) {
+            this.entries = new ArrayList<Entry>(1);
+            this.entries.add(entry);
+        }
+
+        SearchPoll(final List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public void run() {
+            Map<String, Entry> remaining = new HashMap<String, Entry>();
+            for (Entry entry : this.entries) {
+                remaining.put(entry.id, entry);
+            }
+            if (this.entries.size() > 1) {
+                this.search(remaining);
+            }
+            for (Entry entry : remaining.values()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    T transaction = PendingTransactionPoller.this.source.get(entry.id);
+                    if (transaction == null) {
+                        PendingTransactionPoller.this.retry(entry, "no transaction returned");
+                    } else {
+                        PendingTransactionPoller.this.update(entry, transaction);
+                    }
+                } catch (Exception e) {
+                    // Also unchecked errors of bad responses, so the entry is never left unscheduled
+                    PendingTransactionPoller.this.retry(entry, e.toString());
+                }
+            }
+        }
+
+        /**
+         * Searches the day of the entries until all of them are found, removing the ones found from the map. If the
+         * search fails the remaining entries are polled one by one.
+         */
+        private void search(final Map<String, Entry> remaining) {
+            Date day = new Date(this.entries.get(0).creation);
+            int offset = 0;
+            List<T> page;
+            try {
+                do {
+                    page = PendingTransactionPoller.this.source.list(new SearchParams().creation(day).offset(offset)
+                            .limit(PAGE_SIZE));
+                    if (page == null) {
+                        log.warn("Couldn't search transactions of {}: no page returned", day);
+                        return;
+                    }
+                    for (T transaction : page) {
+                        Entry entry = transaction == null ? null : remaining.get(transaction.getId());
+                        if (entry != null) {
+                            PendingTransactionPoller.this.update(entry, transaction);
+                            remaining.remove(entry.id);
+                        }
+                    }
+                    offset += page.size();
+                } while (page.size() == PAGE_SIZE && !remaining.isEmpty());
+            } catch (Exception e) {
+                // Also unchecked errors of bad responses; the remaining entries are polled one by one
+                log.warn("Couldn't search transactions of {}: {}", day, e.toString());
+            }
+        }
+
+    }
+
+}
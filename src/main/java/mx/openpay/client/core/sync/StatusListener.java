@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import mx.openpay.client.Transaction;
+
+/**
+ * Receives the changes of status found by a {@link PendingTransactionPoller}.
+ */
+public interface StatusListener<T extends Transaction> {
+
+    /**
+     * Called from the threads of the poller when the status of a tracked transaction changes.
+     * @param transaction The transaction, as returned by Openpay.
+     * @param previousStatus The status the transaction had before.
+     */
+    void statusChanged(T transaction, String previousStatus);
+
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.openpay.client.Transaction;
+import mx.openpay.client.core.JsonSerializer;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+/**
+ * Local copy of the transactions of one kind, kept up to date by calling {@link #sync()}. Lookups by id and order id
+ * are answered from memory, without calling Openpay.
+ * <p>
+ * Each sync only searches the transactions created since the day of the newest transaction already mirrored, and gets
+ * again the ones that were still in progress, since their status may have changed. New and changed transactions are
+ * appended to the store file, one JSON object per line; the newest line of a transaction wins when the file is loaded.
+ * {@link #compact()} rewrites the file with just the current version of each transaction.
+ * </p>
+ *
+ * <pre>
+ * TransactionMirror&lt;Charge&gt; charges = new TransactionMirror&lt;Charge&gt;(new File(&quot;charges.json&quot;),
+ *         MirrorSources.charges(api.charges()));
+ * charges.sync();
+ * Charge charge = charges.getByOrderId(&quot;oid-00051&quot;);
+ * </pre>
+ */
+@Slf4j
+public class TransactionMirror<T extends Transaction> {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final int NOT_FOUND = 404;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Statuses of the transactions that may still change. */
+    private static final Set<String> PENDING_STATUSES = new HashSet<String>(Arrays.asList("in_progress",
+            "charge_pending"));
+
+    private final File store;
+
+    private final MirrorSource<T> source;
+
+    private final JsonSerializer serializer;
+
+    private final Map<String, T> byId = new ConcurrentHashMap<String, T>();
+
+    private final Map<String, String> byOrderId = new ConcurrentHashMap<String, String>();
+
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile Date highWaterMark;
+
+    /**
+     * Creates the mirror, loading the transactions already in the store if it exists.
+     * @param store File where the transactions are kept.
+     * @param source Source of the transactions.
+     * @throws IOException If the store can't be read.
+     */
+    public TransactionMirror(final File store, final MirrorSource<T> source) throws IOException {
+        this(store, source, new DefaultSerializer());
+    }
+
+    /**
+     * Creates the mirror, loading the transactions already in the store if it exists.
+     * @param store File where the transactions are kept.
+     * @param source Source of the transactions.
+     * @param serializer Serializer used to read and write the transactions in the store.
+     * @throws IOException If the store can't be read.
+     */
+    public TransactionMirror(final File store, final MirrorSource<T> source, final JsonSerializer serializer)
+            throws IOException {
+        if (store == null || source == null || serializer == null) {
+            throw new IllegalArgumentException("Store, source and serializer are required");
+        }
+        this.store = store;
+        this.source = source;
+        this.serializer = serializer;
+        this.load();
+    }
+
+    /**
+     * @return The mirrored transaction with the given id, or null if it is not in the mirror.
+     */
+    public T get(final String id) {
+        return this.byId.get(id);
+    }
+
+    /**
+     * @return The mirrored transaction with the given order id, or null if it is not in the mirror. If more than one
+     *         transaction has the order id, the one that didn't fail is returned.
+     */
+    public T getByOrderId(final String orderId) {
+        String id = this.byOrderId.get(orderId);
+        return id == null ? null : this.byId.get(id);
+    }
+
+    /**
+     * @return The number of transactions in the mirror.
+     */
+    public int size() {
+        return this.byId.size();
+    }
+
+    /**
+     * @return Creation date of the newest transaction in the mirror, or null if it is empty.
+     */
+    public Date getHighWaterMark() {
+        return this.highWaterMark == null ? null : new Date(this.highWaterMark.getTime());
+    }
+
+    /**
+     * Brings the mirror up to date.
+     * @return The number of transactions that were added or changed.
+     * @throws OpenpayServiceException If the service returns an error.
+     * @throws ServiceUnavailableException If the service is not available.
+     * @throws IOException If the changes can't be written to the store.
+     */
+    public synchronized int sync() throws OpenpayServiceException, ServiceUnavailableException, IOException {
+        List<T> changed = new ArrayList<T>();
+        // Pending transactions may also come in the delta, so they are checked after it
+        Set<String> recheck = new HashSet<String>(this.pending);
+        int offset = 0;
+        List<T> page;
+        do {
+            SearchParams params = new SearchParams().offset(offset).limit(PAGE_SIZE);
+            if (this.highWaterMark != null) {
+                // The search only filters by day, so the day of the mark is searched again. The day is formatted in
+                // the time zone of the JVM, which may be ahead of the one of Openpay, so the day before goes too
+                params.creationGte(new Date(this.highWaterMark.getTime() - DAY_MILLIS));
+            }
+            page = this.source.list(params);
+            if (page == null) {
+                throw new ServiceUnavailableException("No page of transactions was returned at offset " + offset);
+            }
+            for (T transaction : page) {
+                recheck.remove(transaction.getId());
+                if (this.isChanged(transaction)) {
+                    changed.add(transaction);
+                }
+            }
+            offset += page.size();
+        } while (page.size() == PAGE_SIZE);
+
+        for (String id : recheck) {
+            T transaction;
+            try {
+                transaction = this.source.get(id);
+            } catch (OpenpayServiceException e) {
+                if (!Integer.valueOf(NOT_FOUND).equals(e.getHttpCode())) {
+                    throw e;
+                }
+                // Otherwise it would fail every sync from now on
+                log.warn("Pending transaction {} no longer exists, it won't be checked again", id);
+                this.pending.remove(id);
+                continue;
+            }
+            if (transaction == null) {
+                log.warn("No transaction was returned for pending {}, it will be checked again", id);
+            } else if (this.isChanged(transaction)) {
+                changed.add(transaction);
+            }
+        }
+        this.append(changed);
+        for (T transaction : changed) {
+            this.index(transaction);
+        }
+        return changed.size();
+    }
+
+    /**
+     * Rewrites the store with only the current version of each transaction.
+     * @throws IOException If the store can't be written.
+     */
+    public synchronized void compact() throws IOException {
+        File temp = new File(this.store.getPath() + ".tmp");
+        this.write(temp, this.byId.values(), false);
+        if (!temp.renameTo(this.store)) {
+            // Some platforms can't rename over an existing file
+            if (!this.store.delete() || !temp.renameTo(this.store)) {
+                throw new IOException("Couldn't replace " + this.store + " with " + temp);
+            }
+        }
+    }
+
+    /**
+     * Transactions change through their status, operation date and refunds, so they are compared first, and the
+     * whole objects only when there is no operation date.
+     */
+    private boolean isChanged(final T transaction) {
+        T current = this.byId.get(transaction.getId());
+        if (current == null || !equal(current.getStatus(), transaction.getStatus())
+                || !equal(current.getOperationDate(), transaction.getOperationDate())
+                || refunds(current) != refunds(transaction)) {
+            return true;
+        }
+        if (transaction.getOperationDate() != null) {
+            return false;
+        }
+        return !this.serializer.serialize(current).equals(this.serializer.serialize(transaction));
+    }
+
+    private static int refunds(final Transaction transaction) {
+        return transaction.getRefunds() == null ? 0 : transaction.getRefunds().size();
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void index(final T transaction) {
+        String id = transaction.getId();
+        this.byId.put(id, transaction);
+        if (transaction.getOrderId() != null) {
+            T other = this.getByOrderId(transaction.getOrderId());
+            boolean failed = "failed".equals(transaction.getStatus());
+            if (other == null || other.getId().equals(id) || !failed || "failed".equals(other.getStatus())) {
+                this.byOrderId.put(transaction.getOrderId(), id);
+            }
+        }
+        if (PENDING_STATUSES.contains(transaction.getStatus())) {
+            this.pending.add(id);
+        } else {
+            this.pending.remove(id);
+        }
+        Date creation = transaction.getCreationDate();
+        if (creation != null && (this.highWaterMark == null || creation.after(this.highWaterMark))) {
+            this.highWaterMark = creation;
+        }
+    }
+
+    private void load() throws IOException {
+        if (!this.store.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.store), CHARSET));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.length() == 0) {
+                    continue;
+                }
+                T transaction;
+                try {
+                    transaction = this.serializer.deserialize(line, this.source.getType());
+                } catch (RuntimeException e) {
+                    // A line cut by a crash while appending; the transaction will come again in the next sync
+                    log.warn("Ignoring unreadable line {} of {}", number, this.store);
+                    continue;
+                }
+                this.index(transaction);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void append(final Collection<T> transactions) throws IOException {
+        if (!transactions.isEmpty()) {
+            this.write(this.store, transactions, true);
+        }
+    }
+
+    private void write(final File file, final Collection<T> transactions, final boolean append) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), CHARSET));
+        try {
+            for (T transaction : transactions) {
+                // The line break goes first, so a line cut by a crash never joins the next one
+                writer.write('\n');
+                writer.write(this.serializer.serialize(transaction));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+}
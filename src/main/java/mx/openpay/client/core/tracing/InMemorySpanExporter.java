@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.tracing;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps the last exported spans in memory, to check them in tests or show them in a debug page.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private static final int DEFAULT_CAPACITY = 1000;
+
+    private final int capacity;
+
+    private final LinkedList<Span> spans = new LinkedList<Span>();
+
+    public InMemorySpanExporter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of spans kept. The oldest ones are dropped first.
+     */
+    public InMemorySpanExporter(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void export(final Span span) {
+        if (this.spans.size() == this.capacity) {
+            this.spans.removeFirst();
+        }
+        this.spans.addLast(span);
+    }
+
+    /**
+     * @return The spans kept, oldest first.
+     */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<Span>(this.spans);
+    }
+
+    public synchronized void clear() {
+        this.spans.clear();
+    }
+
+}
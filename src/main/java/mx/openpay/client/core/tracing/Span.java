@@ -0,0 +1,344 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.tracing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing of one call to Openpay, identified with the W3C Trace Context ids so it can be correlated with the trace of
+ * the request that made it. Spans are created by a {@link Tracer} and attached to the calling thread while the call is
+ * made, so the HTTP client can send the {@code traceparent} header and record the time of each phase.
+ * <p>
+ * The trace of an incoming request is continued by attaching its context before calling Openpay:
+ * </p>
+ *
+ * <pre>
+ * Span previous = Span.fromTraceparent(request.getHeader(&quot;traceparent&quot;)).attach();
+ * try {
+ *     api.charges().createCharge(params);
+ * } finally {
+ *     Span.restore(previous);
+ * }
+ * </pre>
+ * <p>
+ * A span is only modified by the thread making the call, and must not be read by others until it is exported.
+ * </p>
+ */
+public final class Span {
+
+    /**
+     * Phases of a call whose time is recorded.
+     */
+    public enum Phase {
+        /** Writing the request body as JSON. */
+        SERIALIZATION,
+        /** Waiting for a pooled connection. */
+        POOL_LEASE,
+        /** Opening a new connection, including the TLS handshake. */
+        CONNECT,
+        /** From the request being sent until the response headers are received. */
+        SERVER,
+        /** Parsing the response body. For streamed responses it includes receiving the body. */
+        DESERIALIZATION
+    }
+
+    private static final int PHASES = Phase.values().length;
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+
+    private static final String VERSION = "00";
+
+    private static final int TRACEPARENT_LENGTH = 55;
+
+    private final String traceId;
+
+    private final String spanId;
+
+    private final String parentSpanId;
+
+    private final boolean sampled;
+
+    /** Whether the times of this span are recorded. False for the context of a remote parent. */
+    private final boolean recording;
+
+    private final long startMillis;
+
+    private final long startNanos;
+
+    private final long[] phaseNanos;
+
+    private long durationNanos = -1;
+
+    private String name;
+
+    private int statusCode;
+
+    private String requestId;
+
+    private Throwable error;
+
+    private String traceparent;
+
+    /** Span attached to the thread before this one, restored when it ends. */
+    Span previous;
+
+    Span(final String traceId, final String spanId, final String parentSpanId, final boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.sampled = sampled;
+        this.recording = true;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.phaseNanos = new long[PHASES];
+    }
+
+    private Span(final String traceId, final String spanId, final boolean sampled, final String traceparent) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = null;
+        this.sampled = sampled;
+        this.recording = false;
+        this.startMillis = 0;
+        this.startNanos = 0;
+        this.phaseNanos = null;
+        this.traceparent = traceparent;
+    }
+
+    /**
+     * Reads the context of a remote span from a {@code traceparent} header, so the spans of the calls made while it is
+     * attached belong to the same trace. Its times are not recorded.
+     * @param traceparent The header value, like 00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01.
+     * @return The remote span, or null if the header is missing or not valid.
+     */
+    public static Span fromTraceparent(final String traceparent) {
+        if (traceparent == null) {
+            return null;
+        }
+        String value = traceparent.trim();
+        if (value.length() < TRACEPARENT_LENGTH || value.charAt(2) != '-' || value.charAt(35) != '-'
+                || value.charAt(52) != '-' || (value.length() > TRACEPARENT_LENGTH && value.charAt(55) != '-')) {
+            return null;
+        }
+        String version = value.substring(0, 2);
+        String traceId = value.substring(3, 35);
+        String spanId = value.substring(36, 52);
+        String flags = value.substring(53, 55);
+        if (!isHex(version) || "ff".equals(version) || !isHex(traceId) || isZero(traceId) || !isHex(spanId)
+                || isZero(spanId) || !isHex(flags)) {
+            return null;
+        }
+        boolean sampled = (Character.digit(flags.charAt(1), 16) & 1) != 0;
+        return new Span(traceId, spanId, sampled, VERSION + value.substring(2, TRACEPARENT_LENGTH));
+    }
+
+    private static boolean isHex(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The span attached to the current thread, or null if there is none.
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Restores the span that was attached before calling {@link #attach()}.
+     * @param previous The span returned by attach. May be null.
+     */
+    public static void restore(final Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Attaches this span to the current thread.
+     * @return The span that was attached before, to be given to {@link #restore(Span)}.
+     */
+    public Span attach() {
+        Span before = CURRENT.get();
+        CURRENT.set(this);
+        return before;
+    }
+
+    /**
+     * Adds time to a phase of the span. Does nothing if the span is not recording.
+     */
+    public void addTime(final Phase phase, final long nanos) {
+        if (this.recording) {
+            this.phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * Adds the time since the given {@link System#nanoTime()} to a phase of the span attached to the current thread,
+     * if any.
+     */
+    public static void addTimeSince(final Phase phase, final long startNanos) {
+        Span span = CURRENT.get();
+        if (span != null) {
+            span.addTime(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @return Nanoseconds spent in the phase.
+     */
+    public long getNanos(final Phase phase) {
+        return this.recording ? this.phaseNanos[phase.ordinal()] : 0;
+    }
+
+    void end() {
+        if (this.recording && this.durationNanos < 0) {
+            this.durationNanos = System.nanoTime() - this.startNanos;
+        }
+    }
+
+    /**
+     * @return The value of the {@code traceparent} header that identifies this span as the parent of the request.
+     */
+    public String getTraceparent() {
+        if (this.traceparent == null) {
+            this.traceparent = new StringBuilder(TRACEPARENT_LENGTH).append(VERSION).append('-').append(this.traceId)
+                    .append('-').append(this.spanId).append(this.sampled ? "-01" : "-00").toString();
+        }
+        return this.traceparent;
+    }
+
+    /**
+     * @return The id of the trace, 32 lowercase hex digits.
+     */
+    public String getTraceId() {
+        return this.traceId;
+    }
+
+    /**
+     * @return The id of the span, 16 lowercase hex digits.
+     */
+    public String getSpanId() {
+        return this.spanId;
+    }
+
+    /**
+     * @return The id of the parent span, or null if the span started its trace.
+     */
+    public String getParentSpanId() {
+        return this.parentSpanId;
+    }
+
+    public boolean isSampled() {
+        return this.sampled;
+    }
+
+    /**
+     * @return False if the span is only the context of a remote parent, whose times are not recorded.
+     */
+    public boolean isRecording() {
+        return this.recording;
+    }
+
+    /**
+     * @return Milliseconds since the epoch when the span started.
+     */
+    public long getStartTimeMillis() {
+        return this.startMillis;
+    }
+
+    /**
+     * @return Nanoseconds from the start to the end of the span, or -1 if it has not ended.
+     */
+    public long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+    /**
+     * @return The operation of the call, like GET /{merchantId}/charges/{id}.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The HTTP status of the last response, or zero if none was received.
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    public void setStatusCode(final int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return The id Openpay gave to the request, or null if it didn't send one.
+     */
+    public String getRequestId() {
+        return this.requestId;
+    }
+
+    public void setRequestId(final String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return The error that ended the call, or null if it ended with a response.
+     */
+    public Throwable getError() {
+        return this.error;
+    }
+
+    public void setError(final Throwable error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Span[").append(this.name).append(' ').append(this.getTraceparent());
+        if (this.recording) {
+            sb.append(" status=").append(this.statusCode).append(" total=")
+                    .append(TimeUnit.NANOSECONDS.toMicros(this.durationNanos)).append("us");
+            for (Phase phase : Phase.values()) {
+                sb.append(' ').append(phase.name().toLowerCase()).append('=')
+                        .append(TimeUnit.NANOSECONDS.toMicros(this.phaseNanos[phase.ordinal()])).append("us");
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.tracing;
+
+/**
+ * Receives the spans of the calls to Openpay when they end, to send them to a tracing system. Called by the thread
+ * that made the call, so it should only queue the span if sending it is slow.
+ */
+public interface SpanExporter {
+
+    /**
+     * @param span The ended span. It is not modified afterwards.
+     */
+    public void export(final Span span);
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.tracing;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates a {@link Span} for each call to Openpay and gives it to a {@link SpanExporter} when the call ends. The span
+ * of a call is a child of the span attached to the thread when the call is made, if any; otherwise it starts a new
+ * trace.
+ * <p>
+ * {@link #NOOP} creates no spans, so calls made without tracing only pay for checking it.
+ * </p>
+ */
+@Slf4j
+public class Tracer {
+
+    /** Tracer that creates no spans. */
+    public static final Tracer NOOP = new Tracer();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SpanExporter exporter;
+
+    private final Random random;
+
+    private Tracer() {
+        this.exporter = null;
+        this.random = null;
+    }
+
+    /**
+     * @param exporter Receives the spans when they end.
+     */
+    public Tracer(final SpanExporter exporter) {
+        if (exporter == null) {
+            throw new IllegalArgumentException("Exporter can't be null");
+        }
+        this.exporter = exporter;
+        this.random = new Random(new SecureRandom().nextLong());
+    }
+
+    public boolean isEnabled() {
+        return this.exporter != null;
+    }
+
+    /**
+     * Starts a span and attaches it to the current thread.
+     * @return The span, or null if the tracer is disabled.
+     */
+    public Span start() {
+        if (this.exporter == null) {
+            return null;
+        }
+        Span parent = Span.current();
+        Span span;
+        if (parent == null) {
+            span = new Span(this.newId(2), this.newId(1), null, true);
+        } else {
+            span = new Span(parent.getTraceId(), this.newId(1), parent.getSpanId(), parent.isSampled());
+        }
+        span.previous = span.attach();
+        return span;
+    }
+
+    /**
+     * Ends the span, restores the span attached before it and exports it if its trace is sampled. Errors of the
+     * exporter are logged, so they never fail the call.
+     * @param span The span returned by {@link #start()}. May be null.
+     */
+    public void end(final Span span) {
+        if (span == null) {
+            return;
+        }
+        span.end();
+        Span.restore(span.previous);
+        span.previous = null;
+        if (!span.isSampled()) {
+            return;
+        }
+        try {
+            this.exporter.export(span);
+        } catch (RuntimeException e) {
+            log.warn("Could not export span {}: {}", span, e.getMessage());
+        }
+    }
+
+    /**
+     * @return A random id of the given number of longs, in hex, never all zeros.
+     */
+    private String newId(final int longs) {
+        char[] chars = new char[longs * 16];
+        for (int i = 0; i < longs; i++) {
+            long value;
+            do {
+                value = this.random.nextLong();
+            } while (value == 0);
+            for (int j = 15; j >= 0; j--) {
+                chars[i * 16 + j] = HEX[(int) (value & 0xf)];
+                value >>>= 4;
+            }
+        }
+        return new String(chars);
+    }
+
+}
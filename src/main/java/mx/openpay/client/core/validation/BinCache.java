@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.validation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mx.openpay.client.Bin;
+import mx.openpay.client.core.operations.BinesOperations;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * Keeps the most recently used BINs in memory. {@link #find(String)} only answers from memory; the BINs are added by
+ * {@link #fetch(String)}, for example when a card is registered, or with {@link #put(Bin)}.
+ */
+public class BinCache implements BinLookup {
+
+    private final BinesOperations bines;
+
+    private final Map<String, Bin> cache;
+
+    /**
+     * @param bines Operations used to fetch unknown BINs. May be null if the BINs are only added with put.
+     * @param maxSize Maximum number of BINs kept.
+     */
+    public BinCache(final BinesOperations bines, final int maxSize) {
+        this.bines = bines;
+        this.cache = new LinkedHashMap<String, Bin>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Bin> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Bin find(final String bin) {
+        return this.cache.get(bin);
+    }
+
+    public synchronized void put(final Bin bin) {
+        this.cache.put(bin.getBin(), bin);
+    }
+
+    /**
+     * Returns the BIN from memory, or gets it from Openpay if it is not known.
+     */
+    public Bin fetch(final String bin) throws OpenpayServiceException, ServiceUnavailableException {
+        Bin found = this.find(bin);
+        if (found == null && this.bines != null) {
+            found = this.bines.get(bin);
+            if (found != null) {
+                synchronized (this) {
+                    this.cache.put(bin, found);
+                }
+            }
+        }
+        return found;
+    }
+
+}
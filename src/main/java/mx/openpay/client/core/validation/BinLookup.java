@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.validation;
+
+import mx.openpay.client.Bin;
+
+/**
+ * Source of BIN information already known locally, consulted by {@link CardValidator}. Implementations must not call
+ * Openpay, since validation runs before every charge.
+ */
+public interface BinLookup {
+
+    /**
+     * @param bin First six digits of the card number.
+     * @return The known information of the BIN, or null if it is not known.
+     */
+    Bin find(String bin);
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.validation;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import mx.openpay.client.Bin;
+import mx.openpay.client.Card;
+import mx.openpay.client.core.requests.RequestBuilder;
+import mx.openpay.client.exceptions.CardValidationException;
+
+/**
+ * Rejects cards that Openpay would reject anyway, before making the request: numbers that fail the Luhn check,
+ * expired cards, charges without security code, and cards whose BIN is known to be not allowed online or of an
+ * unsupported brand. The checks read the fields in place and allocate nothing unless the card is rejected or a
+ * {@link BinLookup} is used.
+ * <p>
+ * Set it with {@link mx.openpay.client.core.OpenpayAPI#setCardValidator(CardValidator)} to validate every card charge
+ * and card registration.
+ * </p>
+ */
+public class CardValidator {
+
+    private static final long MONTH_CACHE_MILLIS = 60000;
+
+    private BinLookup binLookup;
+
+    private Set<String> allowedBrands;
+
+    private volatile int currentMonth;
+
+    private volatile long currentMonthExpiration;
+
+    /**
+     * Consults the BIN of the cards, rejecting the ones not allowed online or of a brand not allowed.
+     */
+    public CardValidator binLookup(final BinLookup binLookup) {
+        this.binLookup = binLookup;
+        return this;
+    }
+
+    /**
+     * Brands accepted by the merchant, as returned by Openpay (visa, mastercard, american_express, carnet). Only
+     * checked for cards whose BIN is known.
+     */
+    public CardValidator allowedBrands(final String... brands) {
+        Set<String> set = new HashSet<String>();
+        for (String brand : brands) {
+            set.add(brand.toLowerCase());
+        }
+        this.allowedBrands = set;
+        return this;
+    }
+
+    /**
+     * Validates the card of a charge request, if it has a new card. Charges with a stored card or token are not
+     * validated.
+     * @param request The parameters of the charge.
+     * @throws CardValidationException If the card would be rejected.
+     */
+    public void validateCharge(final RequestBuilder request) throws CardValidationException {
+        Map<String, Object> params = request.asMap();
+        Object card = params.get("card");
+        if (card instanceof Card) {
+            this.validate((Card) card, true);
+        }
+    }
+
+    /**
+     * Validates a card.
+     * @param card The card.
+     * @param charge If true, the expiration date and security code are required, as for charges.
+     * @throws CardValidationException If the card would be rejected.
+     */
+    public void validate(final Card card, final boolean charge) throws CardValidationException {
+        if (card.getTokenId() != null && card.getCardNumber() == null) {
+            return;
+        }
+        String number = card.getCardNumber();
+        this.validateNumber(number);
+        this.validateExpiration(card.getExpirationMonth(), card.getExpirationYear(), charge);
+        this.validateCvv2(card.getCvv2(), charge);
+        if (this.binLookup != null) {
+            this.validateBin(number);
+        }
+    }
+
+    private void validateNumber(final String number) throws CardValidationException {
+        if (number == null) {
+            throw new CardValidationException(CardValidationException.INVALID_FIELD, 400, "card_number",
+                    "card_number is required");
+        }
+        int length = number.length();
+        if (length < 13 || length > 19) {
+            throw new CardValidationException(CardValidationException.INVALID_CARD_NUMBER, 422, "card_number",
+                    "The card number must have between 13 and 19 digits");
+        }
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = length - 1; i >= 0; i--) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new CardValidationException(CardValidationException.INVALID_FIELD, 400, "card_number",
+                        "The card number must have only digits");
+            }
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        if (sum % 10 != 0) {
+            throw new CardValidationException(CardValidationException.INVALID_CARD_NUMBER, 422, "card_number",
+                    "The card number verification digit is invalid");
+        }
+    }
+
+    private void validateExpiration(final String monthValue, final String yearValue, final boolean required)
+            throws CardValidationException {
+        if (monthValue == null || yearValue == null) {
+            if (required) {
+                throw new CardValidationException(CardValidationException.INVALID_FIELD, 400,
+                        monthValue == null ? "expiration_month" : "expiration_year",
+                        "The expiration date is required");
+            }
+            return;
+        }
+        int month = parseDigits(monthValue);
+        if (month < 1 || month > 12) {
+            throw new CardValidationException(CardValidationException.INVALID_FIELD, 400, "expiration_month",
+                    "The expiration month must be between 01 and 12");
+        }
+        int year = parseDigits(yearValue);
+        if (year < 0 || (yearValue.length() != 2 && yearValue.length() != 4)) {
+            throw new CardValidationException(CardValidationException.INVALID_FIELD, 400, "expiration_year",
+                    "The expiration year must have two or four digits");
+        }
+        if (year < 100) {
+            year += 2000;
+        }
+        // Cards expire at the end of their expiration month
+        if (year * 12 + month - 1 < this.currentMonth()) {
+            throw new CardValidationException(CardValidationException.CARD_EXPIRED, 400, "expiration_year",
+                    "The card has expired");
+        }
+    }
+
+    private void validateCvv2(final String cvv2, final boolean required) throws CardValidationException {
+        if (cvv2 == null || cvv2.length() == 0) {
+            if (required) {
+                throw new CardValidationException(CardValidationException.CVV2_REQUIRED, 400, "cvv2",
+                        "The security code is required");
+            }
+            return;
+        }
+        if (cvv2.length() < 3 || cvv2.length() > 4 || parseDigits(cvv2) < 0) {
+            throw new CardValidationException(CardValidationException.INVALID_FIELD, 400, "cvv2",
+                    "The security code must have three or four digits");
+        }
+    }
+
+    private void validateBin(final String number) throws CardValidationException {
+        Bin bin = this.binLookup.find(number.substring(0, 6));
+        if (bin == null) {
+            return;
+        }
+        if (Boolean.FALSE.equals(bin.getAllowedOnline())) {
+            throw new CardValidationException(CardValidationException.CARD_NOT_SUPPORTED, 412, "card_number",
+                    "The card is not supported for online transactions");
+        }
+        Set<String> brands = this.allowedBrands;
+        if (brands != null && bin.getBrand() != null && !brands.contains(bin.getBrand().toLowerCase())) {
+            throw new CardValidationException(CardValidationException.CARD_NOT_SUPPORTED, 412, "card_number",
+                    "The card brand is not supported: " + bin.getBrand());
+        }
+    }
+
+    /**
+     * @return The digits as a number, or -1 if there are other characters.
+     */
+    private static int parseDigits(final String value) {
+        if (value.length() == 0 || value.length() > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            number = number * 10 + digit;
+        }
+        return number;
+    }
+
+    /**
+     * @return The current month as year * 12 + month - 1, recomputed once a minute.
+     */
+    private int currentMonth() {
+        long now = System.currentTimeMillis();
+        if (now >= this.currentMonthExpiration) {
+            Calendar calendar = Calendar.getInstance();
+            this.currentMonth = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+            this.currentMonthExpiration = now + MONTH_CACHE_MILLIS;
+        }
+        return this.currentMonth;
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.views;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Charge;
+import mx.openpay.client.Money;
+import mx.openpay.client.enums.Currency;
+import mx.openpay.client.serialization.DateTypeAdapter;
+
+/**
+ * Mutable view of a charge in a list, refilled with the next charge while the list is parsed, see
+ * {@link ChargeViewReader}. Only the fields used to follow and reconcile charges are kept, with the card flattened into
+ * the view. The values are kept as characters in a buffer reused for every charge: strings are created only when a
+ * getter is called, and {@link #getUnscaledAmount()} and the millisecond dates are computed without allocating.
+ * <p>
+ * The view is only valid inside the handler that receives it. Values that must outlive it are copied, for example with
+ * {@link #toCharge()}.
+ * </p>
+ */
+public class ChargeView {
+
+    /** Value of a missing date. */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int SCALE = 2;
+
+    private static final DateTypeAdapter DATES = new DateTypeAdapter();
+
+    private final ValueBuffer values = new ValueBuffer();
+
+    private final int[] starts = new int[Field.COUNT];
+
+    /** Number of characters of each value, or -1 if the charge has no value for the field. */
+    private final int[] lengths = new int[Field.COUNT];
+
+    public String getId() {
+        return this.get(Field.ID);
+    }
+
+    public String getStatus() {
+        return this.get(Field.STATUS);
+    }
+
+    public String getMethod() {
+        return this.get(Field.METHOD);
+    }
+
+    public String getCurrency() {
+        return this.get(Field.CURRENCY);
+    }
+
+    public String getOrderId() {
+        return this.get(Field.ORDER_ID);
+    }
+
+    public String getCustomerId() {
+        return this.get(Field.CUSTOMER_ID);
+    }
+
+    public String getAuthorization() {
+        return this.get(Field.AUTHORIZATION);
+    }
+
+    public String getTransactionType() {
+        return this.get(Field.TRANSACTION_TYPE);
+    }
+
+    public String getOperationType() {
+        return this.get(Field.OPERATION_TYPE);
+    }
+
+    public String getDescription() {
+        return this.get(Field.DESCRIPTION);
+    }
+
+    public String getErrorMessage() {
+        return this.get(Field.ERROR_MESSAGE);
+    }
+
+    public String getCardBrand() {
+        return this.get(Field.CARD_BRAND);
+    }
+
+    public String getCardType() {
+        return this.get(Field.CARD_TYPE);
+    }
+
+    public String getCardNumber() {
+        return this.get(Field.CARD_NUMBER);
+    }
+
+    public String getCardHolderName() {
+        return this.get(Field.CARD_HOLDER_NAME);
+    }
+
+    public String getCardBankName() {
+        return this.get(Field.CARD_BANK_NAME);
+    }
+
+    /**
+     * @return true if the status of the charge is the given one. Doesn't create a string.
+     */
+    public boolean hasStatus(final String status) {
+        return this.is(Field.STATUS, status);
+    }
+
+    /**
+     * @return The amount, or null if the charge has none.
+     */
+    public BigDecimal getAmount() {
+        String amount = this.get(Field.AMOUNT);
+        return amount == null ? null : new BigDecimal(amount);
+    }
+
+    /**
+     * @return The amount in cents, or zero if the charge has none.
+     * @throws ArithmeticException If the amount has more than two decimals or doesn't fit in a long.
+     */
+    public long getUnscaledAmount() {
+        int length = this.lengths[Field.AMOUNT.ordinal()];
+        if (length < 0) {
+            return 0;
+        }
+        return Money.parseMinorUnits(this.values.slice(this.starts[Field.AMOUNT.ordinal()], length), SCALE);
+    }
+
+    /**
+     * @return The amount in the currency of the charge, or null if the charge has no amount or its currency is not
+     *         one of {@link Currency}.
+     * @throws ArithmeticException If the amount has more decimals than the currency or doesn't fit in a long.
+     */
+    public Money getMoney() {
+        int length = this.lengths[Field.AMOUNT.ordinal()];
+        Currency currency = this.currency();
+        if (length < 0 || currency == null) {
+            return null;
+        }
+        return Money.parse(this.values.slice(this.starts[Field.AMOUNT.ordinal()], length), currency);
+    }
+
+    public Date getCreationDate() {
+        return this.date(Field.CREATION_DATE);
+    }
+
+    /**
+     * @return The creation date in epoch milliseconds, or {@link #NO_DATE}.
+     */
+    public long getCreationMillis() {
+        return this.millis(Field.CREATION_DATE);
+    }
+
+    public Date getOperationDate() {
+        return this.date(Field.OPERATION_DATE);
+    }
+
+    /**
+     * @return The operation date in epoch milliseconds, or {@link #NO_DATE}.
+     */
+    public long getOperationMillis() {
+        return this.millis(Field.OPERATION_DATE);
+    }
+
+    /**
+     * @return A new charge with the values of this view, which can be kept after the view is refilled.
+     */
+    public Charge toCharge() {
+        Charge charge = new Charge();
+        charge.setId(this.getId());
+        charge.setAmount(this.getAmount());
+        charge.setStatus(this.getStatus());
+        charge.setMethod(this.getMethod());
+        charge.setCurrency(this.getCurrency());
+        charge.setOrderId(this.getOrderId());
+        charge.setCustomerId(this.getCustomerId());
+        charge.setAuthorization(this.getAuthorization());
+        charge.setTransactionType(this.getTransactionType());
+        charge.setOperationType(this.getOperationType());
+        charge.setDescription(this.getDescription());
+        charge.setErrorMessage(this.getErrorMessage());
+        charge.setCreationDate(this.getCreationDate());
+        charge.setOperationDate(this.getOperationDate());
+        if (this.lengths[Field.CARD.ordinal()] >= 0) {
+            Card card = new Card();
+            card.setBrand(this.getCardBrand());
+            card.setType(this.getCardType());
+            card.setCardNumber(this.getCardNumber());
+            card.setHolderName(this.getCardHolderName());
+            card.setBankName(this.getCardBankName());
+            charge.setCard(card);
+        }
+        return charge;
+    }
+
+    @Override
+    public String toString() {
+        return "ChargeView(id=" + this.getId() + ", status=" + this.getStatus() + ", amount=" + this.get(Field.AMOUNT)
+                + ")";
+    }
+
+    /**
+     * Replaces the values of the view with the next charge of the scanner.
+     */
+    void read(final JsonScanner scanner) throws IOException {
+        this.values.clear();
+        Arrays.fill(this.lengths, -1);
+        this.readObject(scanner, Field.CHARGE_FIELDS);
+    }
+
+    private void readObject(final JsonScanner scanner, final Field[] fields) throws IOException {
+        scanner.expect('{');
+        boolean first = true;
+        while (scanner.next('}', first)) {
+            first = false;
+            scanner.readName();
+            Field field = null;
+            for (Field candidate : fields) {
+                if (scanner.nameIs(candidate.jsonName)) {
+                    field = candidate;
+                    break;
+                }
+            }
+            if (scanner.nextNull()) {
+                continue;
+            }
+            int c = scanner.peek();
+            if (field == Field.CARD && c == '{') {
+                this.lengths[Field.CARD.ordinal()] = 0;
+                this.readObject(scanner, Field.CARD_FIELDS);
+            } else if (field == null || field == Field.CARD || c == '{' || c == '[') {
+                scanner.skipValue();
+            } else {
+                int start = this.values.length();
+                scanner.readValue(this.values);
+                this.starts[field.ordinal()] = start;
+                this.lengths[field.ordinal()] = this.values.length() - start;
+            }
+        }
+    }
+
+    private Currency currency() {
+        int length = this.lengths[Field.CURRENCY.ordinal()];
+        if (length < 0) {
+            return null;
+        }
+        return Currency.fromCode(this.values.slice(this.starts[Field.CURRENCY.ordinal()], length));
+    }
+
+    private boolean is(final Field field, final String value) {
+        int length = this.lengths[field.ordinal()];
+        if (length != value.length()) {
+            return false;
+        }
+        int start = this.starts[field.ordinal()];
+        for (int i = 0; i < length; i++) {
+            if (this.values.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String get(final Field field) {
+        int length = this.lengths[field.ordinal()];
+        return length < 0 ? null : this.values.string(this.starts[field.ordinal()], length);
+    }
+
+    private Date date(final Field field) {
+        String date = this.get(field);
+        return date == null ? null : DATES.parse(date);
+    }
+
+    private long millis(final Field field) {
+        int length = this.lengths[field.ordinal()];
+        if (length < 0) {
+            return NO_DATE;
+        }
+        long millis = DateTypeAdapter.parseMillis(this.values.slice(this.starts[field.ordinal()], length));
+        if (millis == Long.MIN_VALUE) {
+            Date date = this.date(field);
+            return date == null ? NO_DATE : date.getTime();
+        }
+        return millis;
+    }
+
+    /**
+     * Fields kept by the view, with their names in the JSON of the charge or of its card.
+     */
+    private enum Field {
+        ID("id"),
+        STATUS("status"),
+        METHOD("method"),
+        CURRENCY("currency"),
+        ORDER_ID("order_id"),
+        CUSTOMER_ID("customer_id"),
+        AUTHORIZATION("authorization"),
+        TRANSACTION_TYPE("transaction_type"),
+        OPERATION_TYPE("operation_type"),
+        DESCRIPTION("description"),
+        ERROR_MESSAGE("error_message"),
+        AMOUNT("amount"),
+        CREATION_DATE("creation_date"),
+        OPERATION_DATE("operation_date"),
+        CARD("card"),
+        CARD_BRAND("brand"),
+        CARD_TYPE("type"),
+        CARD_NUMBER("card_number"),
+        CARD_HOLDER_NAME("holder_name"),
+        CARD_BANK_NAME("bank_name");
+
+        static final int COUNT = values().length;
+
+        static final Field[] CHARGE_FIELDS = Arrays.copyOfRange(values(), 0, CARD.ordinal() + 1);
+
+        static final Field[] CARD_FIELDS = Arrays.copyOfRange(values(), CARD.ordinal() + 1, COUNT);
+
+        private final String jsonName;
+
+        private Field(final String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+    }
+
+}
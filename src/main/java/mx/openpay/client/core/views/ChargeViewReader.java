@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.views;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import mx.openpay.client.core.ElementHandler;
+import mx.openpay.client.core.ResponseBodyReader;
+
+/**
+ * Reads pages of charges into a single {@link ChargeView}, refilled for each charge and given to the handler, so
+ * polling and exports don't create a list, charges, cards, dates, amounts or strings for every page. The reader keeps
+ * its buffers between pages, so once they have grown to the size of the largest charge, reading allocates nothing. The
+ * same reader can be used for any number of pages:
+ *
+ * <pre>
+ * ChargeViewReader reader = new ChargeViewReader(handler);
+ * for (int offset = 0; ...; offset += 1000) {
+ *     api.charges().stream(search().between(start, end).offset(offset).limit(1000), reader);
+ * }
+ * </pre>
+ * <p>
+ * Not thread-safe: each thread needs its own reader.
+ * </p>
+ */
+public class ChargeViewReader implements ResponseBodyReader {
+
+    private final JsonScanner scanner = new JsonScanner();
+
+    private final ChargeView view = new ChargeView();
+
+    private final ElementHandler<? super ChargeView> handler;
+
+    private int lastCount;
+
+    private long totalCount;
+
+    /**
+     * @param handler Receives the view once for each charge. It must not keep the view.
+     */
+    public ChargeViewReader(final ElementHandler<? super ChargeView> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void read(final Reader body) throws IOException {
+        this.scanner.reset(body);
+        this.lastCount = 0;
+        this.scanner.expect('[');
+        boolean first = true;
+        while (this.scanner.next(']', first)) {
+            first = false;
+            this.view.read(this.scanner);
+            this.handler.handle(this.view);
+            this.lastCount++;
+            this.totalCount++;
+        }
+    }
+
+    /**
+     * @return The number of charges in the last page read, to know when there are no more pages.
+     */
+    public int getLastCount() {
+        return this.lastCount;
+    }
+
+    /**
+     * @return The number of charges read in all the pages.
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+}
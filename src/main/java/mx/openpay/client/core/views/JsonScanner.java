@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.views;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal JSON scanner that copies names and values into reusable character buffers instead of creating strings, so
+ * views can be refilled without allocating. Only the operations needed to walk arrays of flat objects are supported.
+ */
+final class JsonScanner {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private Reader in;
+
+    private int pos;
+
+    private int limit;
+
+    /** Characters of the last name read. */
+    private char[] name = new char[64];
+
+    private int nameLength;
+
+    /**
+     * Starts scanning a new document. The buffers are kept.
+     */
+    void reset(final Reader reader) {
+        this.in = reader;
+        this.pos = 0;
+        this.limit = 0;
+        this.nameLength = 0;
+    }
+
+    /**
+     * Consumes the given character, after any whitespace.
+     */
+    void expect(final char c) throws IOException {
+        if (this.peek() != c) {
+            throw this.syntaxError("Expected '" + c + "'");
+        }
+        this.pos++;
+    }
+
+    /**
+     * Moves to the next element of an array or the next field of an object.
+     * @param close The character that ends the array or object.
+     * @param first Whether no element was read yet.
+     * @return false if the array or object ended, and its closing character was consumed.
+     */
+    boolean next(final char close, final boolean first) throws IOException {
+        int c = this.peek();
+        if (c == close) {
+            this.pos++;
+            return false;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw this.syntaxError("Expected ',' or '" + close + "'");
+            }
+            this.pos++;
+        }
+        return true;
+    }
+
+    /**
+     * @return The next character after any whitespace, without consuming it.
+     */
+    int peek() throws IOException {
+        while (true) {
+            if (this.pos == this.limit && !this.fill()) {
+                throw this.syntaxError("Unexpected end of input");
+            }
+            char c = this.buffer[this.pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            this.pos++;
+        }
+    }
+
+    /**
+     * Reads the name of a field and the colon after it.
+     */
+    void readName() throws IOException {
+        this.expect('"');
+        this.nameLength = 0;
+        while (true) {
+            char c = this.read();
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                c = this.readEscape();
+            }
+            if (this.nameLength == this.name.length) {
+                char[] larger = new char[this.name.length * 2];
+                System.arraycopy(this.name, 0, larger, 0, this.nameLength);
+                this.name = larger;
+            }
+            this.name[this.nameLength++] = c;
+        }
+        this.expect(':');
+    }
+
+    /**
+     * @return true if the last name read is the given one.
+     */
+    boolean nameIs(final String expected) {
+        if (expected.length() != this.nameLength) {
+            return false;
+        }
+        for (int i = 0; i < this.nameLength; i++) {
+            if (this.name[i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a null value, if the next value is null.
+     */
+    boolean nextNull() throws IOException {
+        if (this.peek() != 'n') {
+            return false;
+        }
+        this.literal("null");
+        return true;
+    }
+
+    /**
+     * Copies a string, number or boolean value into the buffer, without the quotes and escapes of strings.
+     */
+    void readValue(final ValueBuffer values) throws IOException {
+        int c = this.peek();
+        if (c == '"') {
+            this.pos++;
+            while (true) {
+                char next = this.read();
+                if (next == '"') {
+                    return;
+                }
+                values.append(next == '\\' ? this.readEscape() : next);
+            }
+        }
+        if (c == '{' || c == '[' || c == ',' || c == '}' || c == ']' || c == ':') {
+            throw this.syntaxError("Expected a value");
+        }
+        while (true) {
+            if (this.pos == this.limit && !this.fill()) {
+                return;
+            }
+            char next = this.buffer[this.pos];
+            if (next == ',' || next == '}' || next == ']' || next == ' ' || next == '\n' || next == '\r'
+                    || next == '\t') {
+                return;
+            }
+            values.append(next);
+            this.pos++;
+        }
+    }
+
+    /**
+     * Skips any value, including objects and arrays.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = this.peek();
+            if (c == '"') {
+                this.pos++;
+                this.skipString();
+            } else if (c == '{' || c == '[') {
+                this.pos++;
+                depth++;
+            } else if (c == '}' || c == ']') {
+                this.pos++;
+                depth--;
+            } else if (c == ',' || c == ':') {
+                if (depth == 0) {
+                    throw this.syntaxError("Expected a value");
+                }
+                this.pos++;
+            } else {
+                this.skipLiteral();
+            }
+        } while (depth > 0);
+        if (depth < 0) {
+            throw this.syntaxError("Unexpected end of object");
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            char c = this.read();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                this.readEscape();
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while (true) {
+            if (this.pos == this.limit && !this.fill()) {
+                return;
+            }
+            char c = this.buffer[this.pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                return;
+            }
+            this.pos++;
+        }
+    }
+
+    private void literal(final String expected) throws IOException {
+        for (int i = 0; i < expected.length(); i++) {
+            if (this.read() != expected.charAt(i)) {
+                throw this.syntaxError("Expected " + expected);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = this.read();
+        switch (c) {
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(this.read(), 16);
+                if (digit < 0) {
+                    throw this.syntaxError("Invalid unicode escape");
+                }
+                value = value * 16 + digit;
+            }
+            return (char) value;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        default:
+            return c;
+        }
+    }
+
+    private char read() throws IOException {
+        if (this.pos == this.limit && !this.fill()) {
+            throw this.syntaxError("Unexpected end of input");
+        }
+        return this.buffer[this.pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = this.in.read(this.buffer, 0, this.buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        this.pos = 0;
+        this.limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(final String message) {
+        return new IOException(message + " in JSON");
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.views;
+
+/**
+ * Growable character buffer that keeps the values of a view, each one as a range of characters.
+ */
+final class ValueBuffer {
+
+    private char[] chars = new char[1024];
+
+    private int length;
+
+    private final Slice slice = new Slice();
+
+    void clear() {
+        this.length = 0;
+    }
+
+    /**
+     * @return The position where the next value starts.
+     */
+    int length() {
+        return this.length;
+    }
+
+    void append(final char c) {
+        if (this.length == this.chars.length) {
+            char[] larger = new char[this.chars.length * 2];
+            System.arraycopy(this.chars, 0, larger, 0, this.length);
+            this.chars = larger;
+        }
+        this.chars[this.length++] = c;
+    }
+
+    char charAt(final int index) {
+        return this.chars[index];
+    }
+
+    String string(final int start, final int count) {
+        return new String(this.chars, start, count);
+    }
+
+    /**
+     * @return The given range of characters. The same object is returned by every call, so it must not be kept.
+     */
+    CharSequence slice(final int start, final int count) {
+        this.slice.start = start;
+        this.slice.count = count;
+        return this.slice;
+    }
+
+    private final class Slice implements CharSequence {
+
+        private int start;
+
+        private int count;
+
+        @Override
+        public int length() {
+            return this.count;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return ValueBuffer.this.chars[this.start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int from, final int to) {
+            return this.toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return ValueBuffer.this.string(this.start, this.count);
+        }
+
+    }
+
+}
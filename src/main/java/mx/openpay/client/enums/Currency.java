@@ -13,10 +13,51 @@ public enum Currency {
 	/**
 	 * Mexican peso
 	 */
-	MXN,
+	MXN(2),
 	/**
 	 * US Dollar.
 	 */
-	USD;
+	USD(2);
+
+	/** Copied once, since values() copies the array on every call. */
+	private static final Currency[] VALUES = values();
+
+	private final int fractionDigits;
+
+	private Currency(final int fractionDigits) {
+		this.fractionDigits = fractionDigits;
+	}
+
+	/**
+	 * @return Number of decimals of the amounts in this currency, so 100 minor units are 1.00 for two digits.
+	 */
+	public int getFractionDigits() {
+		return this.fractionDigits;
+	}
+
+	/**
+	 * Looks up a currency by its code without allocating, so it can be used on every parsed transaction.
+	 * @param code The ISO code, in any case. May be a range of a larger buffer.
+	 * @return The currency, or null if the code is null or not supported.
+	 */
+	public static Currency fromCode(final CharSequence code) {
+		if (code == null) {
+			return null;
+		}
+		for (Currency currency : VALUES) {
+			String name = currency.name();
+			if (name.length() != code.length()) {
+				continue;
+			}
+			int i = 0;
+			while (i < name.length() && Character.toUpperCase(code.charAt(i)) == name.charAt(i)) {
+				i++;
+			}
+			if (i == name.length()) {
+				return currency;
+			}
+		}
+		return null;
+	}
 
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Error found in a card before sending it to Openpay. It has the same category, error code and HTTP code that Openpay
+ * would have returned for the card, so it can be handled like any other {@link OpenpayServiceException}.
+ */
+@Getter
+public class CardValidationException extends OpenpayServiceException {
+
+    private static final long serialVersionUID = 3126543298470919261L;
+
+    /** Error code of an invalid field. */
+    public static final int INVALID_FIELD = 1001;
+
+    /** Error code of a card number that fails the Luhn check. */
+    public static final int INVALID_CARD_NUMBER = 2004;
+
+    /** Error code of an expired card. */
+    public static final int CARD_EXPIRED = 2005;
+
+    /** Error code of a missing security code. */
+    public static final int CVV2_REQUIRED = 2006;
+
+    /** Error code of a card not allowed for online transactions. */
+    public static final int CARD_NOT_SUPPORTED = 3008;
+
+    /**
+     * JSON name of the field with the error.
+     */
+    private final String field;
+
+    public CardValidationException(final int errorCode, final int httpCode, final String field,
+            final String description) {
+        super(description);
+        this.field = field;
+        this.setCategory("request");
+        this.setErrorCode(errorCode);
+        this.setHttpCode(httpCode);
+        this.setDescription(description);
+    }
+
+}
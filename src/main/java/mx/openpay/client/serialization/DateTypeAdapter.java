@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes dates like {@link DateFormatDeserializer}, but directly on the JSON stream and without locks. Dates
+ * in the usual form, like 2014-01-06T13:14:09-06:00 or 2014-01-06T19:14:09Z, are converted with plain arithmetic; any
+ * other form is given to the same parsers used by DateFormatDeserializer, so both always give the same result.
+ */
+public class DateTypeAdapter extends TypeAdapter<Date> {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    /** Years outside this range are left to the calendar, which knows about the Julian calendar and other rules. */
+    private static final int MIN_YEAR = 1600;
+
+    private static final int MAX_YEAR = 9999;
+
+    private final DateFormatDeserializer fallback = new DateFormatDeserializer();
+
+    @Override
+    public Date read(final JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return null;
+        }
+        return this.parse(in.nextString());
+    }
+
+    @Override
+    public void write(final JsonWriter out, final Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(format(value));
+        }
+    }
+
+    /**
+     * Parses the date, or returns null if it can't be parsed.
+     */
+    public Date parse(final String data) {
+        long millis = parseMillis(data);
+        if (millis != Long.MIN_VALUE) {
+            return new Date(millis);
+        }
+        return this.fallback.deserialize(new JsonPrimitive(data), Date.class, null);
+    }
+
+    /**
+     * Parses yyyy-MM-ddTHH:mm:ss followed by Z or an offset like -06:00.
+     * @return The time in milliseconds, or Long.MIN_VALUE if the date is not in that form.
+     */
+    public static long parseMillis(final CharSequence data) {
+        int length = data.length();
+        if (length != 20 && length != 25 || data.charAt(4) != '-' || data.charAt(7) != '-'
+                || data.charAt(10) != 'T' || data.charAt(13) != ':' || data.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(data, 0, 4);
+        int month = digits(data, 5, 2);
+        int day = digits(data, 8, 2);
+        int hour = digits(data, 11, 2);
+        int minute = digits(data, 14, 2);
+        int second = digits(data, 17, 2);
+        if (year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        int offsetMinutes;
+        char zone = data.charAt(19);
+        if (length == 20 && zone == 'Z') {
+            offsetMinutes = 0;
+        } else if (length == 25 && (zone == '+' || zone == '-') && data.charAt(22) == ':') {
+            int offsetHours = digits(data, 20, 2);
+            int offsetMins = digits(data, 23, 2);
+            if (offsetHours < 0 || offsetHours > 23 || offsetMins < 0 || offsetMins > 59) {
+                return Long.MIN_VALUE;
+            }
+            offsetMinutes = offsetHours * 60 + offsetMins;
+            if (zone == '-') {
+                offsetMinutes = -offsetMinutes;
+            }
+        } else {
+            return Long.MIN_VALUE;
+        }
+        // Days past the end of the month roll over to the next one, like a lenient calendar
+        long days = daysFromCivil(year, month, 1) + day - 1;
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000;
+    }
+
+    /**
+     * Formats the date like {@link ISO8601DateParser#format(Date)}, in GMT.
+     */
+    static String format(final Date date) {
+        long millis = date.getTime();
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        long rest = millis - days * MILLIS_PER_DAY;
+        // Shift the epoch to 0000-03-01, so leap days are the last day of each year
+        long shifted = days + 719468;
+        long era = floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return ISO8601DateParser.format(date);
+        }
+        int seconds = (int) (rest / 1000);
+        char[] chars = new char[20];
+        pad(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        pad(chars, 5, month, 2);
+        chars[7] = '-';
+        pad(chars, 8, day, 2);
+        chars[10] = 'T';
+        pad(chars, 11, seconds / 3600, 2);
+        chars[13] = ':';
+        pad(chars, 14, seconds / 60 % 60, 2);
+        chars[16] = ':';
+        pad(chars, 17, seconds % 60, 2);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    /**
+     * Days from 1970-01-01 to the given date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(final long value, final long divisor) {
+        long quotient = value / divisor;
+        return value % divisor < 0 ? quotient - 1 : quotient;
+    }
+
+    /**
+     * @return The number in the given characters, or -1 if they aren't all digits.
+     */
+    private static int digits(final CharSequence data, final int start, final int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = data.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static void pad(final char[] chars, final int start, final int value, final int count) {
+        int rest = value;
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+    }
+
+}
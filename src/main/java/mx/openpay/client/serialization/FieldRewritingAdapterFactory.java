@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Rewrites some fields of a class while Gson writes it, without building a JSON tree. Unlike
+ * {@link OpenpayTypeAdapterFactory}, the rest of the object is written directly on the stream by the usual adapter, so
+ * the rewrite costs nothing more than the rewritten values. Reading is left to the usual adapter.
+ * <p>
+ * Only fields of the object itself can be rewritten, not fields of nested objects. Null values are never rewritten.
+ * </p>
+ */
+public abstract class FieldRewritingAdapterFactory<C> implements TypeAdapterFactory {
+
+    private final Class<C> clazz;
+
+    private final Set<String> writtenFields;
+
+    /**
+     * @param clazz Class whose fields are rewritten.
+     * @param writtenFields JSON names of the fields written by {@link #writeField(Object, String, JsonWriter)}.
+     */
+    protected FieldRewritingAdapterFactory(final Class<C> clazz, final String... writtenFields) {
+        this.clazz = clazz;
+        this.writtenFields = new HashSet<String>(Arrays.asList(writtenFields));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        if (this.clazz.equals(type.getRawType())) {
+            return (TypeAdapter<T>) new RewritingAdapter(gson.getDelegateAdapter(this, (TypeToken<C>) type));
+        }
+        return null;
+    }
+
+    /**
+     * Writes the value of one of the written fields, instead of the value Gson would write.
+     * @param value The object being written.
+     * @param name The JSON name of the field, already written.
+     * @param out The writer where the value must be written.
+     */
+    protected abstract void writeField(final C value, final String name, final JsonWriter out) throws IOException;
+
+    private class RewritingAdapter extends TypeAdapter<C> {
+
+        private final TypeAdapter<C> delegate;
+
+        RewritingAdapter(final TypeAdapter<C> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(final JsonWriter out, final C value) throws IOException {
+            if (value == null || FieldRewritingAdapterFactory.this.writtenFields.isEmpty()) {
+                this.delegate.write(out, value);
+            } else {
+                this.delegate.write(new RewritingWriter(out, value), value);
+            }
+        }
+
+        @Override
+        public C read(final JsonReader in) throws IOException {
+            return this.delegate.read(in);
+        }
+
+    }
+
+    /**
+     * Forwards everything to the real writer, except the values of the written fields.
+     */
+    private class RewritingWriter extends JsonWriter {
+
+        private final JsonWriter out;
+
+        private final C value;
+
+        private int depth;
+
+        /** Name of the written field whose value comes next. */
+        private String pending;
+
+        /** Depth inside a replaced array or object, which is dropped. */
+        private int skipping;
+
+        RewritingWriter(final JsonWriter out, final C value) {
+            super(UNWRITABLE);
+            this.out = out;
+            this.value = value;
+            this.setLenient(out.isLenient());
+            this.setHtmlSafe(out.isHtmlSafe());
+            this.setSerializeNulls(out.getSerializeNulls());
+        }
+
+        /**
+         * Writes the replacement if the value about to be written belongs to a written field.
+         * @return true if the original value must be dropped.
+         */
+        private boolean replace() throws IOException {
+            if (this.skipping > 0) {
+                return true;
+            }
+            if (this.pending == null) {
+                return false;
+            }
+            String name = this.pending;
+            this.pending = null;
+            FieldRewritingAdapterFactory.this.writeField(this.value, name, this.out);
+            return true;
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            if (this.replace()) {
+                this.skipping++;
+            } else {
+                this.depth++;
+                this.out.beginArray();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            if (this.skipping > 0) {
+                this.skipping--;
+            } else {
+                this.depth--;
+                this.out.endArray();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            if (this.replace()) {
+                this.skipping++;
+            } else {
+                this.depth++;
+                this.out.beginObject();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            if (this.skipping > 0) {
+                this.skipping--;
+            } else {
+                this.depth--;
+                this.out.endObject();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(final String name) throws IOException {
+            if (this.skipping == 0) {
+                this.out.name(name);
+                if (this.depth == 1 && FieldRewritingAdapterFactory.this.writtenFields.contains(name)) {
+                    this.pending = name;
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(final String value) throws IOException {
+            if (value == null) {
+                return this.nullValue();
+            }
+            if (!this.replace()) {
+                this.out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (this.skipping == 0) {
+                this.pending = null;
+                this.out.nullValue();
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(final boolean value) throws IOException {
+            if (!this.replace()) {
+                this.out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(final double value) throws IOException {
+            if (!this.replace()) {
+                this.out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(final long value) throws IOException {
+            if (!this.replace()) {
+                this.out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(final Number value) throws IOException {
+            if (value == null) {
+                return this.nullValue();
+            }
+            if (!this.replace()) {
+                this.out.value(value);
+            }
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+
+    }
+
+    private static final Writer UNWRITABLE = new Writer() {
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import java.io.IOException;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Transaction;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Replaces the fields of transactions and cards that take a handful of distinct values (status, method, types,
+ * currency, brand and bank) with canonical instances, so thousands of deserialized objects share the same strings.
+ */
+public class InterningAdapterFactory implements TypeAdapterFactory {
+
+    private final StringInterner interner;
+
+    public InterningAdapterFactory(final StringInterner interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        Class<? super T> clazz = type.getRawType();
+        if (!Transaction.class.isAssignableFrom(clazz) && !Card.class.isAssignableFrom(clazz)) {
+            return null;
+        }
+        final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        return new TypeAdapter<T>() {
+
+            @Override
+            public void write(final JsonWriter out, final T value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(final JsonReader in) throws IOException {
+                T value = delegate.read(in);
+                if (value instanceof Transaction) {
+                    InterningAdapterFactory.this.intern((Transaction) value);
+                } else if (value instanceof Card) {
+                    InterningAdapterFactory.this.intern((Card) value);
+                }
+                return value;
+            }
+        };
+    }
+
+    private void intern(final Transaction transaction) {
+        transaction.setStatus(this.interner.intern(transaction.getStatus()));
+        transaction.setMethod(this.interner.intern(transaction.getMethod()));
+        transaction.setTransactionType(this.interner.intern(transaction.getTransactionType()));
+        transaction.setOperationType(this.interner.intern(transaction.getOperationType()));
+        transaction.setCurrency(this.interner.intern(transaction.getCurrency()));
+    }
+
+    private void intern(final Card card) {
+        card.setBrand(this.interner.intern(card.getBrand()));
+        card.setType(this.interner.intern(card.getType()));
+        card.setBankName(this.interner.intern(card.getBankName()));
+        card.setBankCode(this.interner.intern(card.getBankCode()));
+    }
+
+}
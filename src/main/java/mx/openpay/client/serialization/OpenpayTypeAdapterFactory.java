@@ -26,7 +26,8 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 /**
- * Allows modifying the generated JSON Element before serialization and after deserialization.
+ * Allows modifying the generated JSON Element before serialization and after deserialization. The whole object is
+ * copied into a tree, so {@link FieldRewritingAdapterFactory} is cheaper when only some fields need changes.
  * @author elopez
  */
 public abstract class OpenpayTypeAdapterFactory<C> implements TypeAdapterFactory {
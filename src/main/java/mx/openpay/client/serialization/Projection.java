@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Makes Gson read only some fields of a class. The other fields are skipped in the JSON without creating objects for
+ * them and are left null, so nested objects like cards or metadata that the application doesn't use cost little time
+ * and no memory.
+ * <p>
+ * Fields inherited from superclasses are skipped too, so the projection also applies to nested objects that inherit
+ * the same fields, like the refunds of a charge.
+ * </p>
+ */
+public class Projection implements ExclusionStrategy {
+
+    private final Class<?> projectedClass;
+
+    private final Set<String> fields;
+
+    /**
+     * @param projectedClass Class whose fields are projected.
+     * @param fields JSON names of the fields that are read, like "id", "status", "amount" or "order_id".
+     */
+    public Projection(final Class<?> projectedClass, final String... fields) {
+        this.projectedClass = projectedClass;
+        this.fields = new HashSet<String>(Arrays.asList(fields));
+    }
+
+    public Class<?> getProjectedClass() {
+        return this.projectedClass;
+    }
+
+    @Override
+    public boolean shouldSkipField(final FieldAttributes field) {
+        Class<?> declaringClass = field.getDeclaringClass();
+        if (declaringClass == Object.class || !declaringClass.isAssignableFrom(this.projectedClass)) {
+            return false;
+        }
+        SerializedName serializedName = field.getAnnotation(SerializedName.class);
+        String name = serializedName == null ? field.getName() : serializedName.value();
+        return !this.fields.contains(name);
+    }
+
+    @Override
+    public boolean shouldSkipClass(final Class<?> clazz) {
+        return false;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded table of canonical instances for strings with few distinct values, like statuses and currencies. The table
+ * never grows and never locks: each string goes to a slot given by its hash, and a new value simply replaces the one
+ * in its slot. A collision only costs a duplicate string, never a wrong one.
+ */
+public class StringInterner {
+
+    private static final int DEFAULT_SIZE = 1024;
+
+    private static final int DEFAULT_MAX_LENGTH = 32;
+
+    private final AtomicReferenceArray<String> table;
+
+    private final int mask;
+
+    private final int maxLength;
+
+    public StringInterner() {
+        this(DEFAULT_SIZE, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param size Number of slots of the table. Rounded up to a power of two.
+     * @param maxLength Strings longer than this are returned as they are, since they are unlikely to repeat.
+     */
+    public StringInterner(final int size, final int maxLength) {
+        int slots = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        this.table = new AtomicReferenceArray<String>(slots);
+        this.mask = slots - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return The canonical instance equal to the value, or the value itself if it becomes the canonical one.
+     */
+    public String intern(final String value) {
+        if (value == null || value.length() > this.maxLength) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        String current = this.table.get(slot);
+        if (value.equals(current)) {
+            return current;
+        }
+        // Lazy set is enough: another thread seeing the old value only creates a duplicate
+        this.table.lazySet(slot, value);
+        return value;
+    }
+
+}
@@ -15,32 +15,45 @@
  */
 package mx.openpay.client.serialization;
 
+import java.io.IOException;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.TimeZone;
 
 import mx.openpay.client.Subscription;
 
-import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 
 /**
- * Makes changes to the Subscription's generated JSON. The trialEndDate is formatted different from other dates.
+ * Makes changes to the Subscription's generated JSON. The trialEndDate is formatted different from other dates. The
+ * date is written on the stream, so the rest of the subscription is not copied into a JSON tree.
  * @author elopez
  */
-public class SubscriptionAdapterFactory extends OpenpayTypeAdapterFactory<Subscription> {
+public class SubscriptionAdapterFactory extends FieldRewritingAdapterFactory<Subscription> {
+
+    private static final String TRIAL_END_DATE = "trial_end_date";
+
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd");
+        }
+    };
 
     public SubscriptionAdapterFactory() {
-        super(Subscription.class);
+        super(Subscription.class, TRIAL_END_DATE);
     }
 
     /**
-     * @see mx.openpay.client.serialization.OpenpayTypeAdapterFactory#beforeWrite(java.lang.Object,
-     *      com.google.gson.JsonElement)
+     * @see mx.openpay.client.serialization.FieldRewritingAdapterFactory#writeField(java.lang.Object,
+     *      java.lang.String, com.google.gson.stream.JsonWriter)
      */
     @Override
-    protected void beforeWrite(final Subscription value, final JsonElement tree) {
-        if (tree.isJsonObject() && tree.getAsJsonObject().has("trial_end_date") && value.getTrialEndDate() != null) {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            tree.getAsJsonObject().addProperty("trial_end_date", dateFormat.format(value.getTrialEndDate()));
-        }
+    protected void writeField(final Subscription value, final String name, final JsonWriter out) throws IOException {
+        DateFormat dateFormat = DATE_FORMAT.get();
+        dateFormat.setTimeZone(TimeZone.getDefault());
+        out.value(dateFormat.format(value.getTrialEndDate()));
     }
 
 }
@@ -30,6 +30,7 @@ import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import mx.openpay.client.Money;
 import mx.openpay.client.enums.OrderStatusFilter;
 
 /**
@@ -116,6 +117,30 @@ public class SearchParams extends PaginationParams {
         return this;
     }
     
+    /**
+     * Search by amount, like {@link #amount(BigDecimal)}.
+     */
+    public SearchParams amount(final Money amount) {
+        this.params.put("amount", amount.toPlainString());
+        return this;
+    }
+
+    /**
+     * Search by amounts less than or equal to the given one, like {@link #amountLte(BigDecimal)}.
+     */
+    public SearchParams amountLte(final Money amountLte) {
+        this.params.put("amount[lte]", amountLte.toPlainString());
+        return this;
+    }
+
+    /**
+     * Search by amounts greater than or equal to the given one, like {@link #amountGte(BigDecimal)}.
+     */
+    public SearchParams amountGte(final Money amountGte) {
+        this.params.put("amount[gte]", amountGte.toPlainString());
+        return this;
+    }
+
     /**
      * Search transactions by Order ID.
      * @param orderId The Order ID. Unique among successful transactions (Failed transactions may repeat).
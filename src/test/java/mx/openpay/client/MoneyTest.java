@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import mx.openpay.client.enums.Currency;
+import mx.openpay.client.utils.SearchParams;
+
+import org.junit.Test;
+
+public class MoneyTest {
+
+    @Test
+    public void testParse() throws Exception {
+        String[] amounts = { "100", "100.5", "-0.05", "1e2", "2.900", "0.1", "12345678901234.56", ".5", "-12.34" };
+        long[] expected = { 10000, 10050, -5, 10000, 290, 10, 1234567890123456L, 50, -1234 };
+        for (int i = 0; i < amounts.length; i++) {
+            Money money = Money.parse(amounts[i], Currency.MXN);
+            assertEquals(amounts[i], expected[i], money.getMinorUnits());
+            assertEquals(amounts[i], new BigDecimal(amounts[i]).setScale(2), money.toBigDecimal());
+        }
+        assertEquals(Money.of(250, Currency.USD), Money.valueOf(new BigDecimal("2.5"), Currency.USD));
+    }
+
+    @Test
+    public void testParse_Invalid() throws Exception {
+        String[] amounts = { "1.234", "92233720368547758.08", "1e30", "12345678901234567890" };
+        for (String amount : amounts) {
+            try {
+                Money.parse(amount, Currency.MXN);
+                fail(amount);
+            } catch (ArithmeticException e) {
+                // Expected
+            }
+        }
+        try {
+            Money.parse("12a", Currency.MXN);
+            fail();
+        } catch (NumberFormatException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        Money a = Money.of(10050, Currency.MXN);
+        Money b = Money.parse("0.55", Currency.MXN);
+        assertEquals(Money.of(10105, Currency.MXN), a.plus(b));
+        assertEquals(Money.of(9995, Currency.MXN), a.minus(b));
+        assertEquals(Money.of(-30150, Currency.MXN), a.times(-3));
+        assertEquals(1, a.compareTo(b));
+        assertEquals(-1, b.negate().signum());
+        try {
+            Money.of(Long.MAX_VALUE, Currency.MXN).plus(Money.of(1, Currency.MXN));
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected
+        }
+        try {
+            Money.of(Long.MAX_VALUE / 2 + 1, Currency.MXN).times(2);
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected
+        }
+        try {
+            a.plus(Money.of(1, Currency.USD));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testToPlainString() throws Exception {
+        long[] units = { 0, 5, -5, 10050, -123456, Long.MIN_VALUE };
+        for (long unit : units) {
+            Money money = Money.of(unit, Currency.MXN);
+            assertEquals(money.toBigDecimal().toPlainString(), money.toPlainString());
+        }
+        Money money = Money.of(150, Currency.MXN);
+        assertSame(money.toBigDecimal(), money.toBigDecimal());
+        assertEquals("1.50", new SearchParams().amountGte(money).asMap().get("amount[gte]"));
+    }
+
+    @Test
+    public void testTransactionMoney() throws Exception {
+        Charge charge = new Charge();
+        assertNull(charge.getMoney());
+        charge.setAmount(new BigDecimal("12.3"));
+        charge.setCurrency("usd");
+        assertEquals(Money.of(1230, Currency.USD), charge.getMoney());
+        charge.setCurrency("XXX");
+        assertNull(charge.getMoney());
+    }
+
+    @Test
+    public void testCurrency_FromCode() throws Exception {
+        assertSame(Currency.MXN, Currency.fromCode("MXN"));
+        assertSame(Currency.USD, Currency.fromCode(new StringBuilder("Usd")));
+        assertNull(Currency.fromCode("MX"));
+        assertNull(Currency.fromCode("EUR"));
+        assertNull(Currency.fromCode(null));
+    }
+
+}
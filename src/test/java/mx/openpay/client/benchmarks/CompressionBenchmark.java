@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.test.SampleResponses;
+
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Compares the size on the wire of gzip-compressed charge lists, and the CPU time and memory needed to parse them by
+ * buffering the whole decompressed body (as before) or by streaming it into the parser.
+ */
+public class CompressionBenchmark {
+
+    private static final int ITERATIONS = 50;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    public static void main(final String[] args) throws Exception {
+        DefaultSerializer serializer = new DefaultSerializer();
+        for (int size : new int[] { 10, 100, 1000 }) {
+            byte[] raw = SampleResponses.chargeList(size).getBytes("UTF-8");
+            long start = System.nanoTime();
+            byte[] gzipped = null;
+            for (int i = 0; i < ITERATIONS; i++) {
+                gzipped = gzip(raw);
+            }
+            long compressNanos = (System.nanoTime() - start) / ITERATIONS;
+
+            // Warm up both paths
+            buffered(serializer, gzipped);
+            streamed(serializer, gzipped);
+
+            long bufferedBytes = allocated();
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                buffered(serializer, gzipped);
+            }
+            long bufferedNanos = (System.nanoTime() - start) / ITERATIONS;
+            bufferedBytes = (allocated() - bufferedBytes) / ITERATIONS;
+
+            long streamedBytes = allocated();
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                streamed(serializer, gzipped);
+            }
+            long streamedNanos = (System.nanoTime() - start) / ITERATIONS;
+            streamedBytes = (allocated() - streamedBytes) / ITERATIONS;
+
+            System.out.printf("%5d charges: %9d bytes raw, %8d gzip (%4.1f%%), compress %7.2f ms%n", size,
+                    raw.length, gzipped.length, 100.0 * gzipped.length / raw.length, compressNanos / 1e6);
+            System.out.printf("    buffered parse %7.2f ms %11d bytes allocated%n", bufferedNanos / 1e6,
+                    bufferedBytes);
+            System.out.printf("    streamed parse %7.2f ms %11d bytes allocated%n", streamedNanos / 1e6,
+                    streamedBytes);
+        }
+    }
+
+    private static List<Charge> buffered(final DefaultSerializer serializer, final byte[] gzipped) throws Exception {
+        String body = EntityUtils.toString(new InputStreamEntity(new GZIPInputStream(new ByteArrayInputStream(
+                gzipped))), "UTF-8");
+        return serializer.deserializeList(body, Charge.class);
+    }
+
+    private static List<Charge> streamed(final DefaultSerializer serializer, final byte[] gzipped) throws Exception {
+        InputStreamReader body = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzipped)),
+                "UTF-8");
+        try {
+            return serializer.deserializeList(body, Charge.class);
+        } finally {
+            body.close();
+        }
+    }
+
+    private static byte[] gzip(final byte[] raw) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(raw);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.core.impl.FastSerializer;
+import mx.openpay.client.core.impl.ProjectingSerializer;
+import mx.openpay.client.serialization.Projection;
+import mx.openpay.client.test.SampleResponses;
+
+/**
+ * Compares the time and memory needed by {@link DefaultSerializer}, {@link FastSerializer} and a
+ * {@link ProjectingSerializer} that reads four fields to parse and write lists of charges, from one thread and from
+ * several threads at once.
+ */
+public class SerializerBenchmark {
+
+    private static final int ITERATIONS = 200;
+
+    private static final int THREADS = 8;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+
+    public static void main(final String[] args) throws Exception {
+        String json = SampleResponses.chargeList(1000);
+        DefaultSerializer[] serializers = { new DefaultSerializer(), new FastSerializer(),
+                new ProjectingSerializer(new Projection(Charge.class, "id", "status", "amount", "order_id")) };
+        for (DefaultSerializer serializer : serializers) {
+            run(serializer, json, ITERATIONS);
+        }
+        for (DefaultSerializer serializer : serializers) {
+            String name = serializer.getClass().getSimpleName();
+            long bytes = allocated();
+            long start = System.nanoTime();
+            List<Charge> charges = run(serializer, json, ITERATIONS);
+            long parseNanos = (System.nanoTime() - start) / ITERATIONS;
+            long parseBytes = (allocated() - bytes) / ITERATIONS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                serializer.serializeToBytes(charges);
+            }
+            long writeNanos = (System.nanoTime() - start) / ITERATIONS;
+            long parallelNanos = parallel(serializer, json) / ITERATIONS;
+            System.out.printf("%-20s parse %7.2f ms %11d bytes, write %7.2f ms, %d threads parse %7.2f ms%n", name,
+                    parseNanos / 1e6, parseBytes, writeNanos / 1e6, THREADS, parallelNanos / 1e6);
+        }
+    }
+
+    private static List<Charge> run(final DefaultSerializer serializer, final String json, final int iterations) {
+        List<Charge> charges = null;
+        for (int i = 0; i < iterations; i++) {
+            charges = serializer.deserializeList(json, Charge.class);
+        }
+        return charges;
+    }
+
+    /**
+     * @return Wall time for all the threads to parse the list the given number of times each.
+     */
+    private static long parallel(final DefaultSerializer serializer, final String json) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<Charge>>> futures = new ArrayList<Future<List<Charge>>>();
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(new Callable<List<Charge>>() {
+
+                    @Override
+                    public List<Charge> call() {
+                        return run(serializer, json, ITERATIONS);
+                    }
+                }));
+            }
+            for (Future<List<Charge>> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long allocated() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.HttpServiceResponse;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.OpenpayAPI;
+import mx.openpay.client.core.impl.DefaultHttpServiceClient;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.core.requests.transactions.CreateCardChargeParams;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Measures the time and memory allocated from the creation of the API until the first charge is returned. The HTTP
+ * call is replaced by a canned response, but the SSL context and connection manager are still built. Run it in a new
+ * JVM to get cold-start numbers.
+ */
+public class StartupBenchmark {
+
+    private static final String CHARGE = "{\"id\":\"trzjaozcik8msyqshka4\",\"amount\":100.00,"
+            + "\"authorization\":\"801585\",\"method\":\"card\",\"operation_type\":\"in\","
+            + "\"transaction_type\":\"charge\",\"status\":\"completed\",\"currency\":\"MXN\","
+            + "\"creation_date\":\"2014-05-26T11:56:25-05:00\",\"operation_date\":\"2014-05-26T11:56:25-05:00\","
+            + "\"description\":\"Cargo inicial a mi cuenta\",\"order_id\":\"oid-00051\","
+            + "\"card\":{\"type\":\"debit\",\"brand\":\"mastercard\",\"card_number\":\"411111XXXXXX1111\","
+            + "\"holder_name\":\"Juan Perez Ramirez\",\"expiration_year\":\"20\",\"expiration_month\":\"12\","
+            + "\"bank_name\":\"Banamex\",\"bank_code\":\"002\"}}";
+
+    public static void main(final String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        OpenpayAPI api = new OpenpayAPI(new JsonServiceClient("https://sandbox-api.openpay.mx", "m", "sk",
+                new DefaultSerializer(), new CannedHttpServiceClient()));
+        long createdBytes = threads.getThreadAllocatedBytes(threadId);
+        long created = System.nanoTime();
+
+        Charge charge = api.charges().createCharge(new CreateCardChargeParams()
+                .amount(new BigDecimal("100.00"))
+                .description("Cargo inicial a mi cuenta")
+                .card(new Card().cardNumber("4111111111111111").holderName("Juan Perez Ramirez")
+                        .cvv2("110").expirationMonth(12).expirationYear(20)));
+        long charged = System.nanoTime();
+        long chargedBytes = threads.getThreadAllocatedBytes(threadId);
+
+        System.out.println("Charge: " + charge.getId());
+        System.out.printf("API creation:  %8.2f ms %10d bytes%n", (created - start) / 1e6, createdBytes - startBytes);
+        System.out.printf("First charge:  %8.2f ms %10d bytes%n", (charged - created) / 1e6,
+                chargedBytes - createdBytes);
+        System.out.printf("Total:         %8.2f ms %10d bytes%n", (charged - start) / 1e6, chargedBytes - startBytes);
+    }
+
+    private static class CannedHttpServiceClient extends DefaultHttpServiceClient {
+
+        CannedHttpServiceClient() {
+            super(true);
+        }
+
+        @Override
+        protected HttpServiceResponse executeOperation(final HttpRequestBase request)
+                throws ServiceUnavailableException {
+            this.getHttpClient();
+            HttpServiceResponse response = new HttpServiceResponse();
+            response.setStatusCode(200);
+            response.setContentType("application/json");
+            response.setBody(CHARGE);
+            return response;
+        }
+
+    }
+
+}
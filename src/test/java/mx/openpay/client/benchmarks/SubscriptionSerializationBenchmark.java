@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Subscription;
+import mx.openpay.client.serialization.DateFormatDeserializer;
+import mx.openpay.client.serialization.OpenpayTypeAdapterFactory;
+import mx.openpay.client.serialization.SubscriptionAdapterFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Compares the time and memory needed to write and read lists of subscriptions when the trial end date is rewritten
+ * on a JSON tree, as {@link OpenpayTypeAdapterFactory} does, and on the stream, as {@link SubscriptionAdapterFactory}
+ * does.
+ */
+public class SubscriptionSerializationBenchmark {
+
+    private static final int ITERATIONS = 500;
+
+    private static final Type LIST_TYPE = new TypeToken<List<Subscription>>() {
+    }.getType();
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+
+    public static void main(final String[] args) throws Exception {
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (int i = 0; i < 1000; i++) {
+            Subscription subscription = new Subscription().planId("pbi4kb8hpb64x0uud2eb").trialEndDate(
+                    new Date(1400000000000L + i * 86400000L)).card(new Card().cardNumber("4111111111111111"));
+            subscription.setId("s" + i);
+            subscription.setStatus("active");
+            subscription.setCreationDate(new Date(1390000000000L + i * 1000L));
+            subscription.setChargeDate(new Date(1400000000000L));
+            subscription.setCurrentPeriodNumber(i % 12);
+            subscriptions.add(subscription);
+        }
+        Gson tree = new GsonBuilder().registerTypeAdapter(Date.class, new DateFormatDeserializer())
+                .registerTypeAdapterFactory(new TreeSubscriptionAdapterFactory()).create();
+        Gson streaming = new GsonBuilder().registerTypeAdapter(Date.class, new DateFormatDeserializer())
+                .registerTypeAdapterFactory(new SubscriptionAdapterFactory()).create();
+        String json = streaming.toJson(subscriptions);
+        if (!json.equals(tree.toJson(subscriptions))) {
+            throw new IllegalStateException("Different JSON");
+        }
+        for (int i = 0; i < 2; i++) {
+            run("tree", tree, subscriptions, json, i == 1);
+            run("streaming", streaming, subscriptions, json, i == 1);
+        }
+    }
+
+    private static void run(final String name, final Gson gson, final List<Subscription> subscriptions,
+            final String json, final boolean print) {
+        long bytes = allocated();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            gson.toJson(subscriptions);
+        }
+        long writeNanos = (System.nanoTime() - start) / ITERATIONS;
+        long writeBytes = (allocated() - bytes) / ITERATIONS;
+
+        bytes = allocated();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            gson.fromJson(json, LIST_TYPE);
+        }
+        long readNanos = (System.nanoTime() - start) / ITERATIONS;
+        long readBytes = (allocated() - bytes) / ITERATIONS;
+        if (print) {
+            System.out.printf("%-10s write %6.2f ms %10d bytes, read %6.2f ms %10d bytes%n", name, writeNanos / 1e6,
+                    writeBytes, readNanos / 1e6, readBytes);
+        }
+    }
+
+    private static long allocated() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The tree-based rewrite used before {@link SubscriptionAdapterFactory} moved to the stream.
+     */
+    private static class TreeSubscriptionAdapterFactory extends OpenpayTypeAdapterFactory<Subscription> {
+
+        TreeSubscriptionAdapterFactory() {
+            super(Subscription.class);
+        }
+
+        @Override
+        protected void beforeWrite(final Subscription value, final JsonElement tree) {
+            if (tree.getAsJsonObject().has("trial_end_date") && value.getTrialEndDate() != null) {
+                tree.getAsJsonObject().addProperty("trial_end_date",
+                        new SimpleDateFormat("yyyy-MM-dd").format(value.getTrialEndDate()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OpenpayTenantRegistryTest {
+
+    private OpenpayTenantRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        this.registry = new OpenpayTenantRegistry("https://sandbox-api.openpay.mx", 60000);
+        this.registry.register("m1", "sk_1");
+        this.registry.register("m2", "sk_2");
+    }
+
+    @Test
+    public void testGet_ReusesApi() throws Exception {
+        OpenpayAPI api = this.registry.get("m1");
+        assertSame(api, this.registry.get("m1"));
+        assertNotSame(api, this.registry.get("m2"));
+        assertEquals(2, this.registry.getActiveCount());
+    }
+
+    @Test
+    public void testRegister_NewKeyDiscardsApi() throws Exception {
+        OpenpayAPI api = this.registry.get("m1");
+        this.registry.register("m1", "sk_other");
+        assertNotSame(api, this.registry.get("m1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGet_NotRegistered() throws Exception {
+        this.registry.get("unknown");
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        OpenpayTenantRegistry shortLived = new OpenpayTenantRegistry("https://sandbox-api.openpay.mx", -1);
+        shortLived.register("m1", "sk_1");
+        shortLived.get("m1");
+        assertEquals(1, shortLived.evictIdle());
+        assertEquals(0, shortLived.getActiveCount());
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBucket_Burst() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(10, 5);
+        long now = System.nanoTime() + SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(now, 1));
+        }
+        assertEquals(SECOND / 10, bucket.tryAcquire(now, 1));
+        assertEquals(0, bucket.tryAcquire(now + SECOND / 10, 1));
+    }
+
+    @Test
+    public void testBucket_BulkLeavesRoomForInteractive() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(10, 11);
+        long now = System.nanoTime() + SECOND;
+        int bulk = 0;
+        while (bucket.tryAcquire(now, 0.5) == 0) {
+            bulk++;
+        }
+        assertEquals(6, bulk);
+        int interactive = 0;
+        while (bucket.tryAcquire(now, 1) == 0) {
+            interactive++;
+        }
+        assertEquals(5, interactive);
+    }
+
+    @Test
+    public void testBucket_SlowDownAndRecover() {
+        RateLimiter limiter = new RateLimiter(10, 5).limit(OperationClass.CHARGES, 4, 2);
+        limiter.completed(OperationClass.CHARGES, RateLimiter.TOO_MANY_REQUESTS);
+        assertEquals(5, limiter.getCurrentRate(), 0.01);
+        assertEquals(2, limiter.getCurrentRate(OperationClass.CHARGES), 0.01);
+        assertEquals(Double.POSITIVE_INFINITY, limiter.getCurrentRate(OperationClass.READS), 0);
+        for (int i = 0; i < 16; i++) {
+            limiter.completed(OperationClass.CHARGES, 200);
+        }
+        assertEquals(10, limiter.getCurrentRate(), 0.01);
+        assertEquals(4, limiter.getCurrentRate(OperationClass.CHARGES), 0.01);
+    }
+
+    @Test
+    public void testAcquire_Deadline() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        limiter.acquire(OperationClass.READS, true);
+        Deadline previous = Deadline.after(100, TimeUnit.MILLISECONDS).attach();
+        try {
+            limiter.acquire(OperationClass.CHARGES, false);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertTrue(e.getMessage().contains("CHARGES"));
+        } finally {
+            Deadline.restore(previous);
+        }
+    }
+
+    @Test
+    public void testAcquire_RefundsOperationTokenOnDeadline() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1).limit(OperationClass.CHARGES, 0.001, 2);
+        limiter.acquire(OperationClass.READS, false);
+        Deadline previous = Deadline.after(10, TimeUnit.MILLISECONDS).attach();
+        try {
+            for (int i = 0; i < 3; i++) {
+                try {
+                    limiter.acquire(OperationClass.CHARGES, false);
+                    fail();
+                } catch (ServiceUnavailableException e) {
+                    // The total limit is exhausted
+                }
+            }
+        } finally {
+            Deadline.restore(previous);
+        }
+        Thread.sleep(60);
+        previous = Deadline.after(10, TimeUnit.MILLISECONDS).attach();
+        try {
+            // Would wait for hours if the failed attempts had kept their charge tokens
+            limiter.acquire(OperationClass.CHARGES, false);
+        } finally {
+            Deadline.restore(previous);
+        }
+    }
+
+    @Test
+    public void testOperationClass() {
+        assertEquals(OperationClass.CHARGES, OperationClass.of("POST", "/m/customers/c/charges/tr/refund"));
+        assertEquals(OperationClass.PAYOUTS, OperationClass.of("POST", "/m/payouts"));
+        assertEquals(OperationClass.READS, OperationClass.of("GET", "/m/charges"));
+        assertEquals(OperationClass.OTHER, OperationClass.of("DELETE", "/m/customers/c"));
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mx.openpay.client.Customer;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.test.CannedHttpServiceClient;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceInterceptorTest {
+
+    private static final String CUSTOMER = "{\"id\":\"c1\",\"name\":\"Juan\"}";
+
+    private CannedHttpServiceClient http;
+
+    private JsonServiceClient client;
+
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        this.events = new ArrayList<String>();
+        this.http = new CannedHttpServiceClient() {
+
+            @Override
+            protected HttpServiceResponse respond(final String method, final String url, final String json)
+                    throws ServiceUnavailableException {
+                ServiceInterceptorTest.this.events.add("http");
+                return super.respond(method, url, json);
+            }
+        }.answer("GET", "/customers/c1", CUSTOMER);
+        this.client = new JsonServiceClient("https://localhost", "m1", "sk", new DefaultSerializer(), this.http);
+    }
+
+    @Test
+    public void testIntercept_InOrder() throws Exception {
+        this.client.addInterceptor(new RecordingInterceptor("a"));
+        this.client.addInterceptor(new RecordingInterceptor("b"));
+        Customer customer = this.client.get("/m1/customers/c1", Customer.class);
+        assertEquals("Juan", customer.getName());
+        assertEquals("[a GET /{merchantId}/customers/{id}, b GET /{merchantId}/customers/{id}, http, b 200, a 200]",
+                this.events.toString());
+    }
+
+    @Test
+    public void testRemoveInterceptor() throws Exception {
+        RecordingInterceptor interceptor = new RecordingInterceptor("a");
+        this.client.addInterceptor(interceptor);
+        assertTrue(this.client.removeInterceptor(interceptor));
+        assertFalse(this.client.removeInterceptor(interceptor));
+        this.client.get("/m1/customers/c1", Customer.class);
+        assertEquals("[http]", this.events.toString());
+    }
+
+    @Test
+    public void testIntercept_ShortCircuit() throws Exception {
+        this.client.addInterceptor(new ServiceInterceptor() {
+
+            @Override
+            public HttpServiceResponse intercept(final ServiceCall call) {
+                return response(200, "{\"id\":\"c1\",\"name\":\"Cached\"}");
+            }
+        });
+        assertEquals("Cached", this.client.get("/m1/customers/c1", Customer.class).getName());
+        assertEquals(0, this.http.getRequests().size());
+    }
+
+    @Test
+    public void testIntercept_Retry() throws Exception {
+        this.http.failNext(2);
+        this.client.addInterceptor(new ServiceInterceptor() {
+
+            @Override
+            public HttpServiceResponse intercept(final ServiceCall call) throws ServiceUnavailableException {
+                HttpServiceResponse response = call.proceed();
+                for (int i = 0; i < 3 && response.getStatusCode() >= 500; i++) {
+                    response = call.proceed();
+                }
+                return response;
+            }
+        });
+        this.client.addInterceptor(new RecordingInterceptor("a"));
+        assertEquals("Juan", this.client.get("/m1/customers/c1", Customer.class).getName());
+        assertEquals(3, this.http.getRequests().size());
+        assertEquals("a 503", this.events.get(2));
+        assertEquals("a 200", this.events.get(this.events.size() - 1));
+    }
+
+    @Test
+    public void testIntercept_Streaming() throws Exception {
+        CannedHttpServiceClient.Streaming streaming = new CannedHttpServiceClient.Streaming();
+        streaming.answer("GET", "/customers/c1", CUSTOMER);
+        this.client = new JsonServiceClient("https://localhost", "m1", "sk", new DefaultSerializer(), streaming);
+        final List<String> bodies = new ArrayList<String>();
+        this.client.addInterceptor(new ServiceInterceptor() {
+
+            @Override
+            public HttpServiceResponse intercept(final ServiceCall call) throws ServiceUnavailableException {
+                HttpServiceResponse response = call.proceed();
+                bodies.add(response.getBody());
+                return response;
+            }
+        });
+        assertEquals("Juan", this.client.get("/m1/customers/c1", Customer.class).getName());
+        assertEquals(1, streaming.getStreamed());
+        assertNull(bodies.get(0));
+    }
+
+    @Test
+    public void testIntercept_CacheStreamedBody() throws Exception {
+        CannedHttpServiceClient.Streaming streaming = new CannedHttpServiceClient.Streaming();
+        streaming.answer("GET", "/customers/c1", CUSTOMER);
+        this.client = new JsonServiceClient("https://localhost", "m1", "sk", new DefaultSerializer(), streaming);
+        final Map<String, String> cache = new HashMap<String, String>();
+        this.client.addInterceptor(new ServiceInterceptor() {
+
+            @Override
+            public HttpServiceResponse intercept(final ServiceCall call) throws ServiceUnavailableException {
+                String body = cache.get(call.getPath());
+                if (body != null) {
+                    return response(200, body);
+                }
+                call.bufferBody();
+                HttpServiceResponse response = call.proceed();
+                if (response.getStatusCode() == 200) {
+                    cache.put(call.getPath(), response.getBody());
+                }
+                return response;
+            }
+        });
+        assertEquals("Juan", this.client.get("/m1/customers/c1", Customer.class).getName());
+        assertEquals("Juan", this.client.get("/m1/customers/c1", Customer.class).getName());
+        assertEquals(CUSTOMER, cache.get("/m1/customers/c1"));
+        assertEquals(1, streaming.getRequests().size());
+        assertEquals(0, streaming.getStreamed());
+    }
+
+    @Test
+    public void testPathTemplate() {
+        assertEquals("/{merchantId}/customers/{id}/cards", ServiceCall.template("/m1/customers/c1/cards"));
+        assertEquals("/{merchantId}/charges/{id}/refund", ServiceCall.template("/m1/charges/tr1/refund"));
+        assertEquals("/groups/{id}/customers/{id}/cards", ServiceCall.template("/groups/g1/customers/c1/cards"));
+        assertEquals("/{merchantId}", ServiceCall.template("/m1/"));
+    }
+
+    private static HttpServiceResponse response(final int status, final String body) {
+        HttpServiceResponse response = new HttpServiceResponse();
+        response.setStatusCode(status);
+        response.setContentType("application/json");
+        response.setBody(body);
+        return response;
+    }
+
+    private class RecordingInterceptor implements ServiceInterceptor {
+
+        private final String name;
+
+        RecordingInterceptor(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public HttpServiceResponse intercept(final ServiceCall call) throws ServiceUnavailableException {
+            ServiceInterceptorTest.this.events.add(this.name + " " + call.getOperationName());
+            HttpServiceResponse response = call.proceed();
+            ServiceInterceptorTest.this.events.add(this.name + " " + response.getStatusCode());
+            return response;
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionColumnsTest {
+
+    private TransactionColumns columns;
+
+    @Before
+    public void setUp() throws Exception {
+        this.columns = new TransactionColumns();
+        assertEquals(2000, this.columns.read(new StringReader(SampleResponses.chargeList(2000))));
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        assertEquals(2000, this.columns.size());
+        assertEquals("visa", this.columns.get(0, TransactionColumn.CARD_BRAND));
+        assertEquals("completed", this.columns.get(0, TransactionColumn.STATUS));
+        assertEquals(new BigDecimal("100.00"), this.columns.getAmount(0));
+    }
+
+    @Test
+    public void testSumAndGroup() throws Exception {
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int row = 0; row < this.columns.size(); row++) {
+            expected = expected.add(this.columns.getAmount(row));
+        }
+        assertEquals(expected, this.columns.all().sum());
+        assertEquals(expected, this.columns.where(TransactionColumn.CURRENCY, "MXN").sum()
+                .add(this.columns.where(TransactionColumn.CURRENCY, "USD").sum()));
+        assertEquals(BigDecimal.ZERO.setScale(2), this.columns.where(TransactionColumn.CURRENCY, "EUR").sum());
+
+        Map<String, Integer> counts = this.columns.all().countBy(TransactionColumn.STATUS);
+        int total = 0;
+        for (Integer count : counts.values()) {
+            total += count;
+        }
+        assertEquals(2000, total);
+        assertEquals(counts.get("completed").intValue(), this.columns.where(TransactionColumn.STATUS, "completed")
+                .count());
+    }
+
+    @Test
+    public void testBetween() throws Exception {
+        long first = this.columns.getCreationDate(0);
+        int expected = 0;
+        for (int row = 0; row < this.columns.size(); row++) {
+            if (this.columns.getCreationDate(row) == first
+                    && "completed".equals(this.columns.get(row, TransactionColumn.STATUS))) {
+                expected++;
+            }
+        }
+        assertEquals(43, expected);
+        assertEquals(expected, this.columns.between(new Date(first), new Date(first)).and(TransactionColumn.STATUS,
+                "completed").count());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testAdd_TooManyDecimals() throws Exception {
+        this.columns.add("tr1", TransactionColumns.NO_DATE, new BigDecimal("1.005"), null);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Customer;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.OpenpayAPI;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.test.CannedHttpServiceClient;
+import mx.openpay.client.utils.SearchParams;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CustomerCacheTest {
+
+    private static final String CUSTOMER = "{\"id\":\"c1\",\"name\":\"Juan\",\"email\":\"juan@example.com\"}";
+
+    private static final String CARD = "{\"id\":\"k1\",\"brand\":\"visa\",\"card_number\":\"411111XXXXXX1111\"}";
+
+    private CannedHttpServiceClient http;
+
+    private JsonServiceClient client;
+
+    private CustomerCache cache;
+
+    private CachingCustomerOperations customers;
+
+    private CachingCardOperations cards;
+
+    @Before
+    public void setUp() {
+        this.http = new CannedHttpServiceClient().answer("GET", "/customers/c1", CUSTOMER)
+                .answer("GET", "/cards", "[" + CARD + "]").answer("GET", "/cards/k1", CARD)
+                .answer("POST", "/cards", CARD);
+        this.client = new JsonServiceClient("https://localhost", "m", "sk", new DefaultSerializer(), this.http);
+        this.cache = new CustomerCache(100, 1, TimeUnit.MINUTES);
+        this.customers = new CachingCustomerOperations(this.client, this.cache);
+        this.cards = new CachingCardOperations(this.client, this.cache);
+    }
+
+    @Test
+    public void testGet_ReadThrough() throws Exception {
+        Customer first = this.customers.get("c1");
+        Customer second = this.customers.get("c1");
+        assertEquals("Juan", second.getName());
+        assertNotSame(first, second);
+        assertEquals(1, this.http.getRequests("GET").size());
+        assertEquals(0.5, this.cache.getHitRatio(), 0);
+        assertTrue(this.cache.getMaxServedAgeMillis() < this.cache.getTtlMillis());
+
+        this.customers.update(first);
+        this.customers.get("c1");
+        assertEquals(2, this.http.getRequests("GET").size());
+    }
+
+    @Test
+    public void testList_EvictedByCreateAndWebhook() throws Exception {
+        this.cards.list("c1", new SearchParams().limit(10));
+        this.cards.list("c1", new SearchParams().limit(10));
+        this.cards.list("c1", new SearchParams().limit(20));
+        this.cards.get("c1", "k1");
+        this.cards.get("c1", "k1");
+        assertEquals(3, this.http.getRequests("GET").size());
+
+        this.cards.create("c1", new Card().tokenId("tok"));
+        this.cards.list("c1", new SearchParams().limit(10));
+        this.cards.get("c1", "k1");
+        assertEquals(5, this.http.getRequests("GET").size());
+
+        this.customers.get("c1");
+        this.cache.evict("c1");
+        assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void testGet_Expires() throws Exception {
+        CachingCustomerOperations expiring = new CachingCustomerOperations(this.client, new CustomerCache(100, 1,
+                TimeUnit.MILLISECONDS));
+        expiring.get("c1");
+        Thread.sleep(5);
+        expiring.get("c1");
+        assertEquals(2, this.http.getRequests("GET").size());
+        assertEquals(0, expiring.getCache().getHits());
+    }
+
+    @Test
+    public void testOpenpayAPI_KeepsCache() throws Exception {
+        OpenpayAPI api = new OpenpayAPI(this.client);
+        api.setCustomerCache(this.cache);
+        assertSame(this.cache, ((CachingCustomerOperations) api.customers()).getCache());
+        assertTrue(api.cards() instanceof CachingCardOperations);
+        assertSame(api.customers(), api.customers());
+        api.setCustomerCache(null);
+        assertFalse(api.customers() instanceof CachingCustomerOperations);
+        assertFalse(api.cards() instanceof CachingCardOperations);
+    }
+
+}
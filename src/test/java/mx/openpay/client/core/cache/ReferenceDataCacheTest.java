@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.OpenpayAPI;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.test.CannedHttpServiceClient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceDataCacheTest {
+
+    private CannedHttpServiceClient http;
+
+    private ReferenceDataCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        this.http = new CannedHttpServiceClient().answer("GET", "/m", "{\"id\":\"m\",\"name\":\"Comercio\"}")
+                .answer("GET", "/m/plans", "[{\"id\":\"p1\",\"name\":\"Plan 1\",\"amount\":150.00}]")
+                .answer("GET", "/m/plans/p2", "{\"id\":\"p2\",\"name\":\"Plan 2\"}")
+                .answer("GET", "/m/payments-plans", "[]")
+                .answer("GET", "/m/webhooks", "[{\"id\":\"w1\",\"url\":\"https://example.com/hook\"}]");
+        this.cache = new ReferenceDataCache(new OpenpayAPI(new JsonServiceClient("https://localhost", "m", "sk",
+                new DefaultSerializer(), this.http)));
+        this.cache.load();
+    }
+
+    @After
+    public void tearDown() {
+        this.cache.stop();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        assertEquals(4, this.http.getRequests("GET").size());
+        assertEquals("Plan 1", this.cache.getPlan("p1").getName());
+        assertSame(this.cache.getPlan("p1"), this.cache.getPlans().get(0));
+        assertEquals("Comercio", this.cache.getMerchant().getName());
+        assertEquals(1, this.cache.getWebhooks().size());
+        assertEquals(0, this.cache.getPaymentPlans().size());
+        assertEquals(4, this.http.getRequests("GET").size());
+    }
+
+    @Test
+    public void testGetPlan_AddsMissingPlan() throws Exception {
+        assertEquals("p2", this.cache.getPlan("p2").getId());
+        assertEquals("p2", this.cache.getPlan("p2").getId());
+        assertEquals(5, this.http.getRequests("GET").size());
+        assertEquals(2, this.cache.getPlans().size());
+    }
+
+    @Test
+    public void testRefresh_KeepsSnapshotOnFailure() throws Exception {
+        this.http.setStatus(503);
+        this.cache.start(10, TimeUnit.MILLISECONDS);
+        while (this.cache.getFailures() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals("Plan 1", this.cache.getPlan("p1").getName());
+        assertEquals(1, this.cache.getRefreshes());
+
+        this.http.setStatus(200);
+        while (this.cache.getRefreshes() == 1) {
+            Thread.sleep(5);
+        }
+        assertTrue(this.cache.getAgeMillis() < 1000);
+    }
+
+}
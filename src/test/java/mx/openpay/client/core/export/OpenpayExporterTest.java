@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.test.SampleResponses;
+import mx.openpay.client.utils.SearchParams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OpenpayExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExport_Partitions() throws Exception {
+        CannedSource source = new CannedSource(25);
+        long rows = new OpenpayExporter(source, this.folder.getRoot()).gzip(true).parallelism(3).pageSize(10)
+                .export(this.day(1), this.day(10), 4);
+        assertEquals(75, rows);
+        File file = new File(this.folder.getRoot(), "charges-20140501-20140504.ndjson.gz");
+        List<String> lines = this.readLines(new GZIPInputStream(new FileInputStream(file)));
+        assertEquals(25, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"id\":\"tr"));
+        assertTrue(new File(this.folder.getRoot(), "charges-20140509-20140510.ndjson.gz").exists());
+
+        // Completed partitions are not exported again
+        assertEquals(0, new OpenpayExporter(source, this.folder.getRoot()).gzip(true).pageSize(10)
+                .export(this.day(1), this.day(10), 4));
+    }
+
+    @Test
+    public void testExport_ResumesFromCheckpoint() throws Exception {
+        CannedSource source = new CannedSource(25);
+        source.failAtOffset = 20;
+        OpenpayExporter exporter = new OpenpayExporter(source, this.folder.getRoot()).format(ExportFormat.CSV)
+                .columns("id", "amount", "card.brand").pageSize(10);
+        try {
+            exporter.export(this.day(1), this.day(1), 1);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            // The third page fails after writing part of it
+        }
+        source.failAtOffset = -1;
+        assertEquals(5, exporter.export(this.day(1), this.day(1), 1));
+        List<String> lines = this.readLines(new FileInputStream(new File(this.folder.getRoot(),
+                "charges-20140501-20140501.csv")));
+        assertEquals(26, lines.size());
+        assertEquals("id,amount,card.brand", lines.get(0));
+        assertEquals("tr000000000000000000,100.00,visa", lines.get(1));
+        assertEquals("tr000000000000000002,102.02,", lines.get(3));
+        assertEquals("tr000000000000000024,124.24,visa", lines.get(25));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageSize_AboveApiLimit() throws Exception {
+        new OpenpayExporter(new CannedSource(25), this.folder.getRoot()).pageSize(101);
+    }
+
+    @Test
+    public void testExport_FailsWithoutJsonPage() throws Exception {
+        CannedSource source = new CannedSource(25);
+        source.skipAtOffset = 10;
+        OpenpayExporter exporter = new OpenpayExporter(source, this.folder.getRoot()).pageSize(10);
+        try {
+            exporter.export(this.day(1), this.day(1), 1);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            // The second page wasn't JSON, so the partition is not complete
+        }
+        source.skipAtOffset = -1;
+        assertEquals(15, exporter.export(this.day(1), this.day(1), 1));
+    }
+
+    private Date day(final int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2014, Calendar.MAY, day);
+        return calendar.getTime();
+    }
+
+    private List<String> readLines(final InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static class CannedSource implements ExportSource {
+
+        private final int perPartition;
+
+        private volatile int failAtOffset = -1;
+
+        /** Offset of a page that isn't given to the reader, like a response that isn't JSON. */
+        private volatile int skipAtOffset = -1;
+
+        CannedSource(final int perPartition) {
+            this.perPartition = perPartition;
+        }
+
+        @Override
+        public String getName() {
+            return "charges";
+        }
+
+        @Override
+        public void read(final SearchParams params, final ResponseBodyReader reader)
+                throws ServiceUnavailableException {
+            int offset = Integer.parseInt(params.asMap().get("offset"));
+            int limit = Integer.parseInt(params.asMap().get("limit"));
+            int size = Math.max(0, Math.min(limit, this.perPartition - offset));
+            if (offset == this.skipAtOffset) {
+                return;
+            }
+            try {
+                if (offset == this.failAtOffset) {
+                    // Gives half a page, then fails like a dropped connection
+                    reader.read(new StringReader(SampleResponses.chargeList(offset, size).substring(0, 2000)));
+                } else {
+                    reader.read(new StringReader(SampleResponses.chargeList(offset, size)));
+                }
+            } catch (IOException e) {
+                throw new ServiceUnavailableException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import mx.openpay.client.Customer;
+import mx.openpay.client.core.Deadline;
+import mx.openpay.client.core.RequestProfile;
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.core.tracing.Span;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ssl.SSLContextBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonParseException;
+
+public class DefaultHttpServiceClientTest {
+
+    private ServerSocket server;
+
+    private Socket accepted;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new ServerSocket(0);
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    // Accepts the connection but never answers
+                    DefaultHttpServiceClientTest.this.accepted = DefaultHttpServiceClientTest.this.server.accept();
+                } catch (Exception e) {
+                    // Closed by the test
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.accepted != null) {
+            this.accepted.close();
+        }
+        this.server.close();
+    }
+
+    @Test
+    public void testGet_DeadlineLimitsSocketTimeout() throws Exception {
+        DefaultHttpServiceClient client = new DefaultHttpServiceClient(false);
+        long start = System.currentTimeMillis();
+        Deadline previous = Deadline.after(300, TimeUnit.MILLISECONDS).attach();
+        try {
+            client.get("http://localhost:" + this.server.getLocalPort() + "/v1/m/charges/tr1", null);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Deadline exceeded"));
+        } finally {
+            Deadline.restore(previous);
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testGet_DeadlineExpired() throws Exception {
+        DefaultHttpServiceClient client = new DefaultHttpServiceClient(false);
+        Deadline previous = Deadline.after(-1, TimeUnit.MILLISECONDS).attach();
+        try {
+            client.get("http://localhost:" + this.server.getLocalPort() + "/v1/m/charges/tr1", null);
+        } finally {
+            Deadline.restore(previous);
+        }
+    }
+
+    @Test
+    public void testGet_BulkheadRejectsWhenFull() throws Exception {
+        final DefaultHttpServiceClient client = new DefaultHttpServiceClient(true);
+        client.setTimeouts(RequestProfile.REPORT, 1000, 5000);
+        client.setBulkhead(RequestProfile.REPORT, 1, 100);
+        final String report = "https://localhost:" + this.server.getLocalPort() + "/v1/m/reports/fees/2014/1";
+        Thread slowReport = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    client.get(report, null);
+                } catch (ServiceUnavailableException e) {
+                    // Closed by the test
+                }
+            }
+        });
+        slowReport.setDaemon(true);
+        slowReport.start();
+        Bulkhead bulkhead = client.getBulkhead(RequestProfile.REPORT);
+        while (bulkhead.getInFlight() == 0) {
+            Thread.sleep(10);
+        }
+        assertSame(bulkhead, client.withKey("other").getBulkhead(RequestProfile.REPORT));
+        assertNull(client.getBulkhead(RequestProfile.WRITE));
+        try {
+            client.withKey("other").get(report, null);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Too many REPORT"));
+        }
+        assertEquals(1, bulkhead.getRejected());
+        assertEquals(1.0, bulkhead.getSaturation(), 0);
+    }
+
+    @Test
+    public void testTracing_TraceparentAndRequestId() throws Exception {
+        DefaultHttpServiceClient client = new DefaultHttpServiceClient(false);
+        String traceparent = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+        HttpGet request = new HttpGet("https://localhost/v1/m/charges/tr1");
+        Span previous = Span.fromTraceparent(traceparent).attach();
+        try {
+            client.addHeaders(request);
+        } finally {
+            Span.restore(previous);
+        }
+        assertEquals(traceparent, request.getFirstHeader("traceparent").getValue());
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("X-Request-Id", "req-1");
+        assertEquals("req-1", client.createResult(response).getRequestId());
+    }
+
+    @Test
+    public void testWarmUp_ResumesTlsSessions() throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream in = this.getClass().getResourceAsStream("/localhost.jks");
+        try {
+            keyStore.load(in, "openpay".toCharArray());
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, "openpay".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+        final SSLServerSocket tls = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+        final List<Socket> sockets = new ArrayList<Socket>();
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        SSLSocket socket = (SSLSocket) tls.accept();
+                        sockets.add(socket);
+                        socket.startHandshake();
+                    }
+                } catch (Exception e) {
+                    // Closed by the test
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        DefaultHttpServiceClient client = new DefaultHttpServiceClient(true) {
+
+            @Override
+            protected SSLContext initTlsContext() throws GeneralSecurityException {
+                return new SSLContextBuilder().useProtocol("TLSv1.2").loadTrustMaterial(keyStore).build();
+            }
+        };
+        client.setMaxConnections(3);
+        try {
+            assertEquals(3, client.warmUp("https://localhost:" + tls.getLocalPort() + "/v1", 5));
+            // Handshake listeners are notified on their own threads
+            long limit = System.currentTimeMillis() + 5000;
+            while (client.getFullHandshakes() + client.getResumedHandshakes() < 3
+                    && System.currentTimeMillis() < limit) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, client.getFullHandshakes());
+            assertEquals(2, client.getResumedHandshakes());
+        } finally {
+            tls.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testWarmUp_NoConnectionOpened() throws Exception {
+        DefaultHttpServiceClient client = new DefaultHttpServiceClient(true);
+        client.setTimeouts(RequestProfile.READ, 300, 300);
+        int port = this.server.getLocalPort();
+        this.server.close();
+        assertEquals(0, client.warmUp("https://localhost:" + port + "/v1", 2));
+        assertEquals(0, client.getFullHandshakes());
+        assertEquals(0, client.getResumedHandshakes());
+    }
+
+    @Test
+    public void testStreamedResult_BodyCutMidway() throws Exception {
+        final ServerSocket cutting = new ServerSocket(0);
+        Thread writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Socket socket = cutting.accept();
+                    OutputStream out = socket.getOutputStream();
+                    out.write("{\"id\":\"c1\",\"na".getBytes("UTF-8"));
+                    out.flush();
+                    socket.close();
+                } catch (Exception e) {
+                    // Closed by the test
+                }
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+        Socket socket = new Socket("localhost", cutting.getLocalPort());
+        try {
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(socket.getInputStream(), ContentType.APPLICATION_JSON));
+            final DefaultSerializer serializer = new DefaultSerializer();
+            new DefaultHttpServiceClient(false).createStreamedResult(response, new ResponseBodyReader() {
+
+                @Override
+                public void read(final Reader body) {
+                    serializer.deserialize(body, Customer.class);
+                }
+            });
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof JsonParseException);
+        } finally {
+            socket.close();
+            cutting.close();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.Customer;
+import mx.openpay.client.Subscription;
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link FastSerializer} gives the same results as {@link DefaultSerializer}.
+ */
+public class FastSerializerTest {
+
+    private static final String[] DATES = { "2014-01-06T13:14:09-06:00", "2014-01-06T19:14:09Z",
+            "2016-02-29T23:59:59+05:30", "2014-02-30T10:00:00-06:00", "2014-01-06T13:14:09.123-06:00",
+            "2014-01-06T13:14:09-0600", "2014-01-06T24:14:09-06:00", "2014-01-06", "1500-01-01T00:00:00Z",
+            "not a date", "" };
+
+    private final DefaultSerializer reference = new DefaultSerializer();
+
+    private final FastSerializer fast = new FastSerializer();
+
+    private TimeZone defaultZone;
+
+    @Before
+    public void setUp() {
+        this.defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Mexico/General"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(this.defaultZone);
+    }
+
+    @Test
+    public void testDeserializeList() {
+        String json = SampleResponses.chargeList(100);
+        List<Charge> expected = this.reference.deserializeList(json, Charge.class);
+        List<Charge> charges = this.fast.deserializeList(json, Charge.class);
+        assertEquals(this.reference.serialize(expected), this.reference.serialize(charges));
+        assertEquals(this.reference.serialize(expected), this.fast.serialize(charges));
+    }
+
+    @Test
+    public void testDeserializeDates() {
+        for (String date : DATES) {
+            String json = "{\"id\":\"tr1\",\"creation_date\":\"" + date + "\"}";
+            assertEquals(date, this.reference.deserialize(json, Charge.class).getCreationDate(),
+                    this.fast.deserialize(json, Charge.class).getCreationDate());
+        }
+        String json = "{\"id\":\"tr1\",\"creation_date\":{\"date\":1},\"operation_date\":null}";
+        assertEquals(null, this.fast.deserialize(json, Charge.class).getCreationDate());
+    }
+
+    @Test
+    public void testSerializeDates() {
+        Random random = new Random(42);
+        Charge charge = new Charge();
+        for (int i = 0; i < 10000; i++) {
+            // From around 1900 to 2100, plus a few outside of the range parsed without the calendar
+            long millis = (random.nextLong() % 3200000000000L) + (i % 100 == 0 ? -20000000000000L : 0);
+            charge.setCreationDate(new Date(millis));
+            String json = this.fast.serialize(charge);
+            assertEquals(this.reference.serialize(charge), json);
+            assertEquals(json, this.fast.serialize(this.fast.deserialize(json, Charge.class)));
+        }
+    }
+
+    @Test
+    public void testSubscriptionTrialEndDate() {
+        Subscription subscription = new Subscription();
+        subscription.setTrialEndDate(new Date(1400000000000L));
+        subscription.setCreationDate(new Date(1400000000000L));
+        String json = this.fast.serialize(subscription);
+        assertEquals(this.reference.serialize(subscription), json);
+        assertTrue(json, json.contains("\"trial_end_date\":\"2014-05-13\""));
+    }
+
+    @Test
+    public void testBytes() throws Exception {
+        Customer customer = new Customer().name("José").lastName("Pérez Ñúñez").email("jose@example.com");
+        byte[] bytes = this.fast.serializeToBytes(customer);
+        assertArrayEquals(this.reference.serialize(customer).getBytes("UTF-8"),
+                bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.reference.serialize(customer, out);
+        assertArrayEquals(bytes, out.toByteArray());
+        assertEquals("Pérez Ñúñez", this.fast.deserialize(new ByteArrayInputStream(bytes), Customer.class)
+                .getLastName());
+        byte[] list = SampleResponses.chargeList(5).getBytes("UTF-8");
+        assertEquals(5, this.fast.deserializeList(new ByteArrayInputStream(list), Charge.class).size());
+    }
+
+}
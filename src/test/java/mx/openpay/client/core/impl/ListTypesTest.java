@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import mx.openpay.client.Bin;
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.ElementHandler;
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+public class ListTypesTest {
+
+    private final DefaultSerializer serializer = new DefaultSerializer();
+
+    @Test
+    public void testGetType_AnyClass() throws Exception {
+        assertEquals(new TypeToken<List<Bin>>() {
+        }.getType(), ListTypes.getType(Bin.class));
+        assertEquals(new TypeToken<List<Bin>>() {
+        }.getType().hashCode(), ListTypes.getType(Bin.class).hashCode());
+        assertSame(ListTypes.getType(Bin.class), ListTypes.getType(Bin.class));
+
+        List<Bin> bins = this.serializer.deserializeList("[{\"bin\":\"411111\",\"allowed_online\":true},{}]",
+                Bin.class);
+        assertEquals(2, bins.size());
+        assertEquals("411111", bins.get(0).getBin());
+        assertEquals(Boolean.TRUE, bins.get(0).getAllowedOnline());
+    }
+
+    @Test
+    public void testDeserializeList_Handler() throws Exception {
+        String json = SampleResponses.chargeList(50);
+        final List<Charge> received = new ArrayList<Charge>();
+        int count = this.serializer.deserializeList(new StringReader(json), Charge.class,
+                new ElementHandler<Charge>() {
+
+                    @Override
+                    public void handle(final Charge element) {
+                        received.add(element);
+                    }
+                });
+        assertEquals(50, count);
+        List<Charge> expected = this.serializer.deserializeList(json, Charge.class);
+        assertEquals(this.serializer.serialize(expected), this.serializer.serialize(received));
+        assertEquals(0, this.serializer.deserializeList(new StringReader("null"), Charge.class, null));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testDeserializeList_HandlerNotAList() throws Exception {
+        this.serializer.deserializeList(new StringReader("{\"id\":\"x\"}"), Charge.class,
+                new ElementHandler<Object>() {
+
+                    @Override
+                    public void handle(final Object element) {
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.Customer;
+import mx.openpay.client.serialization.Projection;
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.Test;
+
+public class ProjectingSerializerTest {
+
+    private final DefaultSerializer full = new DefaultSerializer();
+
+    private final ProjectingSerializer projecting = new ProjectingSerializer(new Projection(Charge.class,
+            "id", "status", "amount", "order_id", "metadata"));
+
+    @Test
+    public void testDeserializeList_OnlyProjectedFields() throws Exception {
+        String json = SampleResponses.chargeList(20);
+        List<Charge> expected = this.full.deserializeList(json, Charge.class);
+        List<Charge> charges = this.projecting.deserializeList(json, Charge.class);
+        assertEquals(expected.size(), charges.size());
+        for (int i = 0; i < charges.size(); i++) {
+            Charge charge = charges.get(i);
+            assertEquals(expected.get(i).getId(), charge.getId());
+            assertEquals(expected.get(i).getStatus(), charge.getStatus());
+            assertEquals(expected.get(i).getAmount(), charge.getAmount());
+            assertEquals(expected.get(i).getOrderId(), charge.getOrderId());
+            assertEquals(expected.get(i).getMetadata(), charge.getMetadata());
+            assertNull(charge.getCard());
+            assertNull(charge.getCreationDate());
+            assertNull(charge.getFee());
+            assertNull(charge.getMethod());
+        }
+    }
+
+    @Test
+    public void testDeserialize_NullAndOtherClasses() throws Exception {
+        assertNull(this.projecting.deserialize("null", Charge.class));
+        Charge charge = this.projecting.deserialize("{\"id\":\"tr1\",\"card\":{\"id\":\"c1\",\"brand\":[1,{}]}}",
+                Charge.class);
+        assertEquals("tr1", charge.getId());
+        String customer = "{\"id\":\"c1\",\"name\":\"Juan\",\"creation_date\":\"2014-05-01T11:56:25-05:00\"}";
+        assertEquals(this.full.serialize(this.full.deserialize(customer, Customer.class)),
+                this.projecting.serialize(this.projecting.deserialize(customer, Customer.class)));
+    }
+
+}
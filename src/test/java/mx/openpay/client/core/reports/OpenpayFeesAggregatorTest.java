@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mx.openpay.client.GenericTransaction;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.operations.OpenpayFeesOperations;
+import mx.openpay.client.enums.FeeDetailsType;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.reports.OpenpayFeesSummary;
+import mx.openpay.client.utils.PaginationParams;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OpenpayFeesAggregatorTest {
+
+    private CannedFeesOperations fees;
+
+    private OpenpayFeesAggregator aggregator;
+
+    @Before
+    public void setUp() throws Exception {
+        this.fees = new CannedFeesOperations();
+        this.aggregator = new OpenpayFeesAggregator(this.fees, 4, 10);
+    }
+
+    @Test
+    public void testGetSummary() throws Exception {
+        OpenpayFeesRangeSummary summary = this.aggregator.getSummary(2013, 11, 2014, 2);
+        assertEquals(4, summary.getMonths().size());
+        assertEquals("[2013-11, 2013-12, 2014-01, 2014-02]", summary.getMonths().keySet().toString());
+        assertEquals(new BigDecimal("0.40"), summary.getTotal().getCharged());
+        assertEquals(new BigDecimal("0.064"), summary.getTotal().getChargedTax());
+        assertEquals(BigDecimal.ZERO, summary.getTotal().getRefunded());
+    }
+
+    @Test
+    public void testGetSummary_CachesMonths() throws Exception {
+        this.aggregator.getSummary(2014, 1, 2014, 6);
+        this.aggregator.getSummary(2014, 4, 2014, 9);
+        assertEquals(9, this.fees.summaryCalls.get());
+    }
+
+    @Test
+    public void testGetDetails_PagesEveryMonth() throws Exception {
+        final List<GenericTransaction> received = new ArrayList<GenericTransaction>();
+        long count = this.aggregator.getDetails(2014, 1, 2014, 3, EnumSet.of(FeeDetailsType.CHARGED),
+                new FeeDetailsConsumer() {
+
+                    @Override
+                    public void accept(final int year, final int month, final FeeDetailsType feeType,
+                            final GenericTransaction transaction) {
+                        received.add(transaction);
+                    }
+                });
+        assertEquals(75, count);
+        assertEquals(75, received.size());
+    }
+
+    @Test
+    public void testGetSummary_MissingMonth() throws Exception {
+        this.fees.missingMonth = 12;
+        OpenpayFeesRangeSummary summary = this.aggregator.getSummary(2013, 11, 2014, 2);
+        assertNull(summary.getMonths().get("2013-12"));
+        assertEquals(new BigDecimal("0.30"), summary.getTotal().getCharged());
+        this.aggregator.getSummary(2013, 11, 2014, 2);
+        assertEquals(5, this.fees.summaryCalls.get());
+    }
+
+    @Test
+    public void testGetSummary_FirstErrorStopsTheRest() throws Exception {
+        this.fees.slowMonth = 1;
+        this.fees.failingMonth = 2;
+        long start = System.currentTimeMillis();
+        try {
+            this.aggregator.getSummary(2014, 1, 2014, 2);
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertEquals("February", e.getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testGetDetails_MissingPage() throws Exception {
+        this.fees.missingMonth = 2;
+        this.aggregator.getDetails(2014, 1, 2014, 3, EnumSet.of(FeeDetailsType.CHARGED), new FeeDetailsConsumer() {
+
+            @Override
+            public void accept(final int year, final int month, final FeeDetailsType feeType,
+                    final GenericTransaction transaction) {
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetSummary_InvalidRange() throws Exception {
+        this.aggregator.getSummary(2014, 5, 2014, 4);
+    }
+
+    private static class CannedFeesOperations extends OpenpayFeesOperations {
+
+        private final AtomicInteger summaryCalls = new AtomicInteger();
+
+        /** Month that returns no summary nor pages. */
+        private int missingMonth;
+
+        /** Month whose summary takes a minute. */
+        private int slowMonth;
+
+        /** Month whose summary fails. */
+        private int failingMonth;
+
+        CannedFeesOperations() {
+            super(new JsonServiceClient("https://sandbox-api.openpay.mx", "m", "sk"));
+        }
+
+        @Override
+        public OpenpayFeesSummary getSummary(final int year, final int month) throws OpenpayServiceException,
+                ServiceUnavailableException {
+            this.summaryCalls.incrementAndGet();
+            if (month == this.missingMonth) {
+                return null;
+            } else if (month == this.failingMonth) {
+                throw new ServiceUnavailableException("February");
+            } else if (month == this.slowMonth) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    throw new ServiceUnavailableException(e);
+                }
+            }
+            OpenpayFeesSummary summary = new OpenpayFeesSummary();
+            summary.setCharged(new BigDecimal("0.10"));
+            summary.setChargedTax(new BigDecimal("0.016"));
+            return summary;
+        }
+
+        @Override
+        public List<GenericTransaction> getDetails(final int year, final int month, final FeeDetailsType feeType,
+                final PaginationParams pagination) throws OpenpayServiceException, ServiceUnavailableException {
+            if (month == this.missingMonth) {
+                return null;
+            }
+            // 25 transactions per month
+            int offset = Integer.parseInt(pagination.asMap().get("offset"));
+            int limit = Integer.parseInt(pagination.asMap().get("limit"));
+            int size = Math.max(0, Math.min(limit, 25 - offset));
+            return new ArrayList<GenericTransaction>(Collections.nCopies(size, new GenericTransaction()));
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.reports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import mx.openpay.client.GenericTransaction;
+import mx.openpay.client.TransactionFee;
+import mx.openpay.client.TransactionsPayoutResume;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.operations.TransactionsPayoutOperations;
+import mx.openpay.client.enums.TransactionsPayoutType;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.PaginationParams;
+
+import org.junit.Test;
+
+public class PayoutSettlementBuilderTest {
+
+    @Test
+    public void testBuild_Balanced() throws Exception {
+        CannedPayoutOperations payouts = new CannedPayoutOperations(new BigDecimal("250.00"));
+        PayoutSettlement settlement = new PayoutSettlementBuilder(payouts, 4, 10).build("po1");
+        assertTrue(settlement.isBalanced());
+        PayoutSettlement.Total in = settlement.getTotals().get(TransactionsPayoutType.IN);
+        assertEquals(25, in.getCount());
+        assertEquals(new BigDecimal("250.00"), in.getAmount());
+        assertEquals(new BigDecimal("40.600"), in.getFees());
+        assertEquals(0, settlement.getTotals().get(TransactionsPayoutType.OUT).getCount());
+    }
+
+    @Test
+    public void testBuild_Discrepancy() throws Exception {
+        CannedPayoutOperations payouts = new CannedPayoutOperations(new BigDecimal("260.00"));
+        PayoutSettlement settlement = new PayoutSettlementBuilder(payouts, 2, 7).build("po1");
+        assertFalse(settlement.isBalanced());
+        assertEquals(1, settlement.getDiscrepancies().size());
+        PayoutSettlement.Discrepancy discrepancy = settlement.getDiscrepancies().get(0);
+        assertEquals(TransactionsPayoutType.IN, discrepancy.getType());
+        assertEquals(new BigDecimal("-10.00"), discrepancy.getDifference());
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testBuild_MissingPage() throws Exception {
+        CannedPayoutOperations payouts = new CannedPayoutOperations(new BigDecimal("250.00"));
+        payouts.missingOffset = 20;
+        new PayoutSettlementBuilder(payouts, 4, 10).build("po1");
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testBuild_MissingResume() throws Exception {
+        new PayoutSettlementBuilder(new CannedPayoutOperations(null), 4, 10).build("po1");
+    }
+
+    @Test
+    public void testBuild_InterruptedIsNotADiscrepancy() throws Exception {
+        CannedPayoutOperations payouts = new CannedPayoutOperations(new BigDecimal("250.00"));
+        payouts.interrupting = true;
+        try {
+            new PayoutSettlementBuilder(payouts, 4, 10).build("po1");
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof InterruptedException);
+        }
+    }
+
+    private static class CannedPayoutOperations extends TransactionsPayoutOperations {
+
+        private final BigDecimal in;
+
+        /** Offset of the IN details whose page is not returned, or -1. */
+        private int missingOffset = -1;
+
+        /** Whether getting a page interrupts the thread that gets it. */
+        private boolean interrupting;
+
+        CannedPayoutOperations(final BigDecimal in) {
+            super(new JsonServiceClient("https://sandbox-api.openpay.mx", "m", "sk"));
+            this.in = in;
+        }
+
+        @Override
+        public TransactionsPayoutResume getResume(final String payoutId) throws OpenpayServiceException,
+                ServiceUnavailableException {
+            if (this.in == null) {
+                return null;
+            }
+            TransactionsPayoutResume resume = new TransactionsPayoutResume();
+            resume.setIn(this.in);
+            resume.setOut(BigDecimal.ZERO);
+            return resume;
+        }
+
+        @Override
+        public List<GenericTransaction> getDetails(final String payoutId, final TransactionsPayoutType type,
+                final PaginationParams pagination) throws OpenpayServiceException, ServiceUnavailableException {
+            List<GenericTransaction> page = new ArrayList<GenericTransaction>();
+            if (type != TransactionsPayoutType.IN) {
+                return page;
+            }
+            // 25 transactions of 10.00 with a fee of 1.40 plus tax
+            int offset = Integer.parseInt(pagination.asMap().get("offset"));
+            int limit = Integer.parseInt(pagination.asMap().get("limit"));
+            if (offset == this.missingOffset) {
+                return null;
+            }
+            if (this.interrupting) {
+                Thread.currentThread().interrupt();
+            }
+            for (int i = offset; i < Math.min(offset + limit, 25); i++) {
+                GenericTransaction transaction = new GenericTransaction();
+                transaction.setAmount(new BigDecimal("10.00"));
+                TransactionFee fee = new TransactionFee();
+                fee.setAmount(new BigDecimal("1.40"));
+                fee.setTax(new BigDecimal("0.224"));
+                transaction.setFee(fee);
+                page.add(transaction);
+            }
+            return page;
+        }
+
+    }
+
+}
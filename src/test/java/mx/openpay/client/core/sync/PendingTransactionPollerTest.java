@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.utils.SearchParams;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.JsonIOException;
+
+public class PendingTransactionPollerTest {
+
+    private final CannedChargeSource source = new CannedChargeSource();
+
+    private PendingTransactionPoller<Charge> poller;
+
+    @After
+    public void tearDown() {
+        if (this.poller != null) {
+            this.poller.stop();
+        }
+    }
+
+    @Test
+    public void testPoll_SearchesDayOfManyCharges() throws Exception {
+        final CountDownLatch changes = new CountDownLatch(30);
+        this.poller = this.newPoller(changes);
+        for (int i = 0; i < 30; i++) {
+            assertTrue(this.poller.track(this.source.put(charge("tr" + i, "in_progress"))));
+        }
+        assertFalse(this.poller.track(charge("done", "completed")));
+        for (int i = 0; i < 30; i++) {
+            this.source.put(charge("tr" + i, "completed"));
+        }
+        // Started after tracking, so all the charges are due on the first tick
+        this.poller.start();
+        assertTrue(changes.await(5, TimeUnit.SECONDS));
+        assertEquals(0, this.poller.size());
+        assertEquals(0, this.source.gets.get());
+        assertTrue(this.source.searches.get() > 0);
+    }
+
+    @Test
+    public void testPoll_GetsSingleCharge() throws Exception {
+        final CountDownLatch changes = new CountDownLatch(1);
+        this.poller = this.newPoller(changes);
+        this.poller.track(this.source.put(charge("tr1", "in_progress")));
+        this.poller.track(this.source.put(charge("tr2", "in_progress")));
+        this.poller.untrack("tr2");
+        this.source.put(charge("tr1", "cancelled"));
+        this.source.put(charge("tr2", "cancelled"));
+        this.poller.start();
+        assertTrue(changes.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(0, this.poller.size());
+        assertEquals(1, this.source.gets.get());
+        assertEquals(0, this.source.searches.get());
+    }
+
+    @Test
+    public void testPoll_RetriesBadResponses() throws Exception {
+        final CountDownLatch changes = new CountDownLatch(12);
+        this.poller = this.newPoller(changes);
+        for (int i = 0; i < 12; i++) {
+            this.poller.track(this.source.put(charge("tr" + i, "in_progress")));
+            this.source.put(charge("tr" + i, "completed"));
+        }
+        // The search gets no page, then one get returns nothing and another one fails to parse
+        this.source.nullResponses.set(2);
+        this.source.brokenResponses.set(1);
+        this.poller.start();
+        assertTrue(changes.await(5, TimeUnit.SECONDS));
+        assertEquals(0, this.poller.size());
+        assertEquals(14, this.source.gets.get());
+    }
+
+    @Test
+    public void testPoll_HundredThousandCharges() throws Exception {
+        int count = 100000;
+        final CountDownLatch changes = new CountDownLatch(count);
+        this.poller = this.newPoller(changes).batchThreshold(Integer.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            this.poller.track(this.source.put(charge("tr" + i, "in_progress")));
+        }
+        this.poller.start();
+        // The first polls find the charges still pending and schedule them again
+        Thread.sleep(200);
+        for (int i = 0; i < count; i++) {
+            this.source.put(charge("tr" + i, "completed"));
+        }
+        assertTrue(changes.await(20, TimeUnit.SECONDS));
+        assertEquals(0, this.poller.size());
+        assertTrue(this.source.gets.get() >= count);
+    }
+
+    @Test
+    public void testNextDelay() throws Exception {
+        PendingTransactionPoller<Charge> intervals = new PendingTransactionPoller<Charge>(this.source,
+                new NoListener()).intervals(1000, 60000);
+        long now = 1000000;
+        assertEquals(1000, intervals.nextDelay(now - 500, 0, now));
+        assertEquals(10000, intervals.nextDelay(now - 20000, 0, now));
+        assertEquals(60000, intervals.nextDelay(now - 200000, 0, now));
+        // Tightened as the due date approaches, and growing again after it
+        assertEquals(5000, intervals.nextDelay(now - 200000, now + 10000, now));
+        assertEquals(1000, intervals.nextDelay(now - 200000, now + 1000, now));
+        assertEquals(1000, intervals.nextDelay(now - 200000, now - 500, now));
+        assertEquals(8000, intervals.nextDelay(now - 200000, now - 8000, now));
+    }
+
+    private PendingTransactionPoller<Charge> newPoller(final CountDownLatch changes) {
+        PendingTransactionPoller<Charge> newPoller = new PendingTransactionPoller<Charge>(this.source,
+                new StatusListener<Charge>() {
+
+                    @Override
+                    public void statusChanged(final Charge transaction, final String previousStatus) {
+                        assertEquals("in_progress", previousStatus);
+                        changes.countDown();
+                    }
+                }).tickMillis(50).intervals(20, 20).batchThreshold(10).parallelism(2);
+        return newPoller;
+    }
+
+    private static Charge charge(final String id, final String status) {
+        Charge charge = new Charge();
+        charge.setId(id);
+        charge.setStatus(status);
+        charge.setCreationDate(new Date());
+        return charge;
+    }
+
+    private static class NoListener implements StatusListener<Charge> {
+
+        @Override
+        public void statusChanged(final Charge transaction, final String previousStatus) {
+        }
+
+    }
+
+    private static class CannedChargeSource implements MirrorSource<Charge> {
+
+        private final Map<String, Charge> charges = new ConcurrentHashMap<String, Charge>();
+
+        private final AtomicInteger gets = new AtomicInteger();
+
+        private final AtomicInteger searches = new AtomicInteger();
+
+        /** Number of the next calls that return null, like a 200 response that isn't JSON. */
+        private final AtomicInteger nullResponses = new AtomicInteger();
+
+        /** Number of the next gets that fail like a body cut while it is parsed. */
+        private final AtomicInteger brokenResponses = new AtomicInteger();
+
+        Charge put(final Charge charge) {
+            this.charges.put(charge.getId(), charge);
+            return charge;
+        }
+
+        @Override
+        public Class<Charge> getType() {
+            return Charge.class;
+        }
+
+        @Override
+        public List<Charge> list(final SearchParams params) {
+            this.searches.incrementAndGet();
+            if (this.nullResponses.getAndDecrement() > 0) {
+                return null;
+            }
+            return new ArrayList<Charge>(this.charges.values());
+        }
+
+        @Override
+        public Charge get(final String id) {
+            this.gets.incrementAndGet();
+            if (this.nullResponses.getAndDecrement() > 0) {
+                return null;
+            }
+            if (this.brokenResponses.getAndDecrement() > 0) {
+                throw new JsonIOException("Connection reset");
+            }
+            return this.charges.get(id);
+        }
+
+    }
+
+}
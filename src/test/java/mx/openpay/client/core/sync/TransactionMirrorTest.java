@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.utils.SearchParams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransactionMirrorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CannedChargeSource source;
+
+    private File store;
+
+    @Before
+    public void setUp() throws Exception {
+        this.source = new CannedChargeSource();
+        this.store = new File(this.folder.getRoot(), "charges.json");
+    }
+
+    @Test
+    public void testSync_FetchesOnlyDelta() throws Exception {
+        this.source.add(charge("tr1", "oid-1", "completed", 1000));
+        this.source.add(charge("tr2", "oid-2", "in_progress", 2000));
+        TransactionMirror<Charge> mirror = new TransactionMirror<Charge>(this.store, this.source);
+        assertEquals(2, mirror.sync());
+        assertNull(this.source.lastSearch.get("creation[gte]"));
+
+        this.source.add(charge("tr2", "oid-2", "completed", 2000));
+        assertEquals(1, mirror.sync());
+        assertNotNull(this.source.lastSearch.get("creation[gte]"));
+        assertEquals(1, this.source.gets);
+        assertEquals("completed", mirror.getByOrderId("oid-2").getStatus());
+        assertEquals(0, mirror.sync());
+        assertEquals(1, this.source.gets);
+    }
+
+    @Test
+    public void testLoad_ReadsLatestVersion() throws Exception {
+        this.source.add(charge("tr1", "oid-1", "in_progress", 1000));
+        new TransactionMirror<Charge>(this.store, this.source).sync();
+        this.source.add(charge("tr1", "oid-1", "completed", 1000));
+        new TransactionMirror<Charge>(this.store, this.source).sync();
+
+        // A line cut by a crash is ignored
+        FileWriter writer = new FileWriter(this.store, true);
+        writer.write("\n{\"id\":\"tr9\",\"stat");
+        writer.close();
+
+        TransactionMirror<Charge> mirror = new TransactionMirror<Charge>(this.store, this.source);
+        assertEquals(1, mirror.size());
+        assertEquals("completed", mirror.get("tr1").getStatus());
+        mirror.compact();
+        mirror = new TransactionMirror<Charge>(this.store, this.source);
+        assertEquals("completed", mirror.get("tr1").getStatus());
+        assertEquals(new Date(1000000), mirror.getHighWaterMark());
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testSync_MissingPage() throws Exception {
+        this.source.missingPage = true;
+        new TransactionMirror<Charge>(this.store, this.source).sync();
+    }
+
+    @Test
+    public void testSync_PendingNotFound() throws Exception {
+        this.source.add(charge("tr1", "oid-1", "in_progress", 1000));
+        this.source.add(charge("tr2", "oid-2", "in_progress", 2000));
+        TransactionMirror<Charge> mirror = new TransactionMirror<Charge>(this.store, this.source);
+        assertEquals(2, mirror.sync());
+
+        this.source.charges.remove("tr1");
+        this.source.missing = "tr2";
+        assertEquals(0, mirror.sync());
+        assertEquals(2, this.source.gets);
+        // tr2 is no longer checked, and tr1, which came back empty, still is
+        this.source.add(charge("tr1", "oid-1", "completed", 1000));
+        assertEquals(1, mirror.sync());
+        assertEquals(3, this.source.gets);
+        assertEquals("completed", mirror.get("tr1").getStatus());
+    }
+
+    @Test
+    public void testSync_MarkInAnotherTimeZone() throws Exception {
+        TimeZone previous = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        try {
+            // 2014-05-10 23:30 in Mexico City is already 2014-05-11 in UTC
+            Charge charge = charge("tr1", "oid-1", "completed", 0);
+            charge.setCreationDate(new Date(1399782600000L));
+            this.source.add(charge);
+            TransactionMirror<Charge> mirror = new TransactionMirror<Charge>(this.store, this.source);
+            mirror.sync();
+            mirror.sync();
+            assertEquals("2014-05-10", this.source.lastSearch.get("creation[gte]"));
+        } finally {
+            TimeZone.setDefault(previous);
+        }
+    }
+
+    private static Charge charge(final String id, final String orderId, final String status, final long seconds) {
+        Charge charge = new Charge();
+        charge.setId(id);
+        charge.setOrderId(orderId);
+        charge.setStatus(status);
+        charge.setCreationDate(new Date(seconds * 1000));
+        return charge;
+    }
+
+    private static class CannedChargeSource implements MirrorSource<Charge> {
+
+        private final Map<String, Charge> charges = new HashMap<String, Charge>();
+
+        private Map<String, String> lastSearch;
+
+        private int gets;
+
+        private boolean missingPage;
+
+        /** Id of the charge that is not found. */
+        private String missing;
+
+        void add(final Charge charge) {
+            this.charges.put(charge.getId(), charge);
+        }
+
+        @Override
+        public Class<Charge> getType() {
+            return Charge.class;
+        }
+
+        @Override
+        public List<Charge> list(final SearchParams params) throws OpenpayServiceException,
+                ServiceUnavailableException {
+            this.lastSearch = params.asMap();
+            if (this.missingPage) {
+                return null;
+            }
+            List<Charge> found = new ArrayList<Charge>();
+            // Search by day is not emulated, the tests only check that the delta is requested
+            if (params.asMap().get("creation[gte]") == null) {
+                found.addAll(this.charges.values());
+            }
+            return found;
+        }
+
+        @Override
+        public Charge get(final String id) throws OpenpayServiceException, ServiceUnavailableException {
+            this.gets++;
+            if (id.equals(this.missing)) {
+                OpenpayServiceException e = new OpenpayServiceException();
+                e.setHttpCode(404);
+                throw e;
+            }
+            return this.charges.get(id);
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mx.openpay.client.Customer;
+import mx.openpay.client.core.HttpServiceResponse;
+import mx.openpay.client.core.JsonServiceClient;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.core.tracing.Span.Phase;
+import mx.openpay.client.exceptions.OpenpayServiceException;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+import mx.openpay.client.test.CannedHttpServiceClient;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TracerTest {
+
+    private static final String PARENT = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+    private CannedHttpServiceClient http;
+
+    /** Traceparent of the current span on each request. */
+    private List<String> traceparents;
+
+    private JsonServiceClient client;
+
+    private InMemorySpanExporter exporter;
+
+    @Before
+    public void setUp() {
+        this.traceparents = new CopyOnWriteArrayList<String>();
+        this.http = new CannedHttpServiceClient() {
+
+            @Override
+            protected HttpServiceResponse respond(final String method, final String url, final String json)
+                    throws ServiceUnavailableException {
+                Span span = Span.current();
+                TracerTest.this.traceparents.add(span == null ? null : span.getTraceparent());
+                return super.respond(method, url, json);
+            }
+        }.answer("GET", "/customers/c1", "{\"id\":\"c1\",\"name\":\"Juan\"}");
+        this.http.setRequestId("req-1");
+        this.client = new JsonServiceClient("https://localhost", "m1", "sk", new DefaultSerializer(), this.http);
+        this.exporter = new InMemorySpanExporter();
+        this.client.setTracer(new Tracer(this.exporter));
+    }
+
+    @Test
+    public void testPost_ExportsSpan() throws Exception {
+        Customer customer = this.client.post("/m1/customers", new Customer().name("Juan"), Customer.class);
+        assertEquals("Juan", customer.getName());
+        assertNull(Span.current());
+        List<Span> spans = this.exporter.getSpans();
+        assertEquals(1, spans.size());
+        Span span = spans.get(0);
+        assertEquals("POST /{merchantId}/customers", span.getName());
+        assertEquals(200, span.getStatusCode());
+        assertEquals("req-1", span.getRequestId());
+        assertNull(span.getParentSpanId());
+        assertEquals(span.getTraceparent(), this.traceparents.get(0));
+        assertTrue(span.getTraceparent().matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+        assertTrue(span.getNanos(Phase.SERIALIZATION) > 0);
+        assertTrue(span.getNanos(Phase.DESERIALIZATION) > 0);
+        assertTrue(span.getDurationNanos() >= span.getNanos(Phase.SERIALIZATION));
+    }
+
+    @Test
+    public void testGet_ContinuesRemoteTrace() throws Exception {
+        Span remote = Span.fromTraceparent(PARENT);
+        Span previous = remote.attach();
+        try {
+            this.client.get("/m1/customers/c1", Customer.class);
+        } finally {
+            Span.restore(previous);
+        }
+        Span span = this.exporter.getSpans().get(0);
+        assertEquals("0af7651916cd43dd8448eb211c80319c", span.getTraceId());
+        assertEquals("b7ad6b7169203331", span.getParentSpanId());
+        assertEquals("GET /{merchantId}/customers/{id}", span.getName());
+        assertSame(previous, Span.current());
+    }
+
+    @Test
+    public void testGet_ErrorKeepsRequestId() throws Exception {
+        this.http.setStatus(404);
+        try {
+            this.client.get("/m1/customers/c2", Customer.class);
+            fail();
+        } catch (OpenpayServiceException e) {
+            assertEquals("req-1", e.getRequestId());
+            Span span = this.exporter.getSpans().get(0);
+            assertSame(e, span.getError());
+            assertEquals(404, span.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testDisabled_PropagatesRemoteContext() throws Exception {
+        this.client.setTracer(null);
+        Span previous = Span.fromTraceparent(PARENT).attach();
+        try {
+            this.client.get("/m1/customers/c1", Customer.class);
+        } finally {
+            Span.restore(previous);
+        }
+        assertEquals(0, this.exporter.getSpans().size());
+        assertEquals(PARENT, this.traceparents.get(0));
+    }
+
+    @Test
+    public void testFromTraceparent_Invalid() {
+        assertNull(Span.fromTraceparent(null));
+        assertNull(Span.fromTraceparent("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331"));
+        assertNull(Span.fromTraceparent("00-00000000000000000000000000000000-b7ad6b7169203331-01"));
+        assertNull(Span.fromTraceparent("ff-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01"));
+        assertNull(Span.fromTraceparent("00-0AF7651916CD43DD8448EB211C80319C-b7ad6b7169203331-01"));
+        assertEquals(false, Span.fromTraceparent("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00")
+                .isSampled());
+    }
+
+}
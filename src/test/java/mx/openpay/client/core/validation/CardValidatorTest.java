@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import mx.openpay.client.Bin;
+import mx.openpay.client.Card;
+import mx.openpay.client.core.requests.transactions.CreateCardChargeParams;
+import mx.openpay.client.exceptions.CardValidationException;
+
+import org.junit.Test;
+
+public class CardValidatorTest {
+
+    private final CardValidator validator = new CardValidator();
+
+    @Test
+    public void testValidate_ValidCard() throws Exception {
+        this.validator.validate(this.card(), true);
+        this.validator.validateCharge(new CreateCardChargeParams().amount(BigDecimal.TEN).card(this.card()));
+        this.validator.validateCharge(new CreateCardChargeParams().amount(BigDecimal.TEN)
+                .cardId("kdx205scoizh93upqbte"));
+    }
+
+    @Test
+    public void testValidate_Luhn() throws Exception {
+        this.assertRejected(this.card().cardNumber("4111111111111112"), true,
+                CardValidationException.INVALID_CARD_NUMBER);
+        this.assertRejected(this.card().cardNumber("4111 1111 1111 1111"), true,
+                CardValidationException.INVALID_FIELD);
+    }
+
+    @Test
+    public void testValidate_Expired() throws Exception {
+        int lastYear = Calendar.getInstance().get(Calendar.YEAR) - 2001;
+        this.assertRejected(this.card().expirationYear(lastYear), true, CardValidationException.CARD_EXPIRED);
+        this.assertRejected(this.card().expirationMonth(13), true, CardValidationException.INVALID_FIELD);
+    }
+
+    @Test
+    public void testValidate_Cvv2() throws Exception {
+        this.assertRejected(this.card().cvv2(null), true, CardValidationException.CVV2_REQUIRED);
+        this.validator.validate(this.card().cvv2(null), false);
+        this.assertRejected(this.card().cvv2("12"), false, CardValidationException.INVALID_FIELD);
+    }
+
+    @Test
+    public void testValidate_Bin() throws Exception {
+        BinCache cache = new BinCache(null, 10);
+        Bin bin = new Bin();
+        bin.setBin("411111");
+        bin.setBrand("visa");
+        bin.setAllowedOnline(false);
+        cache.put(bin);
+        this.validator.binLookup(cache);
+        this.assertRejected(this.card(), true, CardValidationException.CARD_NOT_SUPPORTED);
+        bin.setAllowedOnline(true);
+        this.validator.validate(this.card(), true);
+        this.validator.allowedBrands("mastercard");
+        this.assertRejected(this.card(), true, CardValidationException.CARD_NOT_SUPPORTED);
+    }
+
+    private Card card() {
+        return new Card().cardNumber("4111111111111111").holderName("Juan Perez Ramirez").cvv2("110")
+                .expirationMonth(12).expirationYear(Calendar.getInstance().get(Calendar.YEAR) - 1999);
+    }
+
+    private void assertRejected(final Card card, final boolean charge, final int errorCode) {
+        try {
+            this.validator.validate(card, charge);
+            fail();
+        } catch (CardValidationException e) {
+            assertEquals(errorCode, e.getErrorCode().intValue());
+        }
+    }
+
+}
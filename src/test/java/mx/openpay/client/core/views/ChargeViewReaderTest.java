@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.core.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.ElementHandler;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.Test;
+
+public class ChargeViewReaderTest {
+
+    private final DefaultSerializer serializer = new DefaultSerializer();
+
+    @Test
+    public void testRead_SameValuesAsCharges() throws Exception {
+        final List<Charge> copies = new ArrayList<Charge>();
+        final List<ChargeView> views = new ArrayList<ChargeView>();
+        ChargeViewReader reader = new ChargeViewReader(new ElementHandler<ChargeView>() {
+
+            @Override
+            public void handle(final ChargeView view) {
+                views.add(view);
+                copies.add(view.toCharge());
+                assertEquals(view.getAmount().movePointRight(2).longValueExact(), view.getUnscaledAmount());
+                assertEquals(view.toCharge().getMoney(), view.getMoney());
+                assertEquals(view.getCreationDate().getTime(), view.getCreationMillis());
+            }
+        });
+        reader.read(new StringReader(SampleResponses.chargeList(0, 30)));
+        assertEquals(30, reader.getLastCount());
+        reader.read(new StringReader(SampleResponses.chargeList(30, 20)));
+        assertEquals(20, reader.getLastCount());
+        assertEquals(50, reader.getTotalCount());
+        assertSame(views.get(0), views.get(49));
+
+        List<Charge> charges = this.serializer.deserializeList(SampleResponses.chargeList(50), Charge.class);
+        for (int i = 0; i < charges.size(); i++) {
+            Charge expected = charges.get(i);
+            Charge copy = copies.get(i);
+            assertEquals(expected.getId(), copy.getId());
+            assertEquals(expected.getAmount(), copy.getAmount());
+            assertEquals(expected.getStatus(), copy.getStatus());
+            assertEquals(expected.getOrderId(), copy.getOrderId());
+            assertEquals(expected.getCreationDate(), copy.getCreationDate());
+            assertEquals(expected.getOperationDate(), copy.getOperationDate());
+            if (expected.getCard() == null) {
+                assertNull(copy.getCard());
+            } else {
+                assertEquals(expected.getCard().getBrand(), copy.getCard().getBrand());
+                assertEquals(expected.getCard().getBankName(), copy.getCard().getBankName());
+            }
+        }
+    }
+
+    @Test
+    public void testUnscaledAmount() throws Exception {
+        String[] amounts = { "100", "100.5", "-0.05", "1e2", "2.900", "0.1", "12345678901234.56" };
+        long[] expected = { 10000, 10050, -5, 10000, 290, 10, 1234567890123456L };
+        for (int i = 0; i < amounts.length; i++) {
+            assertEquals(amounts[i], expected[i], this.view(amounts[i]).getUnscaledAmount());
+        }
+        assertEquals(0, this.view("null").getUnscaledAmount());
+        assertEquals(ChargeView.NO_DATE, this.view("null").getCreationMillis());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testUnscaledAmount_TooManyDecimals() throws Exception {
+        this.view("1.234").getUnscaledAmount();
+    }
+
+    @Test
+    public void testRead_Escapes() throws Exception {
+        final List<String> descriptions = new ArrayList<String>();
+        ChargeViewReader reader = new ChargeViewReader(new ElementHandler<ChargeView>() {
+
+            @Override
+            public void handle(final ChargeView view) {
+                descriptions.add(view.getDescription());
+                assertEquals(view.getStatus() != null, view.hasStatus("completed"));
+            }
+        });
+        reader.read(new StringReader(" [ {\"description\" : \"Caf\\u00e9 \\\"1\\\"\\n\", \"status\":\"completed\","
+                + "\"metadata\":{\"a\":[1,{\"b\":\"}\"}]}} , {\"card\":{\"brand\":\"visa\"}} ] "));
+        assertEquals(Arrays.asList("Caf\u00e9 \"1\"\n", null), descriptions);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRead_Truncated() throws Exception {
+        new ChargeViewReader(new ElementHandler<ChargeView>() {
+
+            @Override
+            public void handle(final ChargeView view) {
+            }
+        }).read(new StringReader("[{\"id\":\"tr1\"},{\"id\":"));
+    }
+
+    private ChargeView view(final String amount) throws Exception {
+        final ChargeView[] view = new ChargeView[1];
+        new ChargeViewReader(new ElementHandler<ChargeView>() {
+
+            @Override
+            public void handle(final ChargeView element) {
+                view[0] = element;
+            }
+        }).read(new StringReader("[{\"id\":\"tr1\",\"amount\":" + amount + ",\"card\":null,\"refunds\":[{}]}]"));
+        return view[0];
+    }
+
+}
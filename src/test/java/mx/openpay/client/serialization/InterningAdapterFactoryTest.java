@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import mx.openpay.client.Charge;
+import mx.openpay.client.core.impl.DefaultSerializer;
+import mx.openpay.client.test.SampleResponses;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class InterningAdapterFactoryTest {
+
+    private static final int SIZE = 1000;
+
+    private static String json;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        json = SampleResponses.chargeList(SIZE);
+    }
+
+    @Test
+    public void testDeserialize_SharesValues() throws Exception {
+        List<Charge> charges = new DefaultSerializer(true).deserializeList(json, Charge.class);
+        assertEquals(SIZE, charges.size());
+        Set<String> statuses = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        Set<String> brands = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (Charge charge : charges) {
+            statuses.add(charge.getStatus());
+            if (charge.getCard() != null) {
+                brands.add(charge.getCard().getBrand());
+            }
+        }
+        assertEquals(3, statuses.size());
+        assertEquals(3, brands.size());
+        assertSame(charges.get(1).getCurrency(), charges.get(2).getCurrency());
+        assertSame(charges.get(0).getCard().getBankName(), charges.get(1).getCard().getBankName());
+    }
+
+    @Test
+    public void testDeserialize_FewerStrings() throws Exception {
+        // Counts the instances kept instead of measuring the heap, which depends on when the collector runs
+        assertEquals(SIZE * 3, this.sharedStrings(new DefaultSerializer(false)));
+        assertEquals(3 + 2 + 3, this.sharedStrings(new DefaultSerializer(true)));
+    }
+
+    @Test
+    public void testIntern_Collision() throws Exception {
+        StringInterner interner = new StringInterner(1, 32);
+        String completed = interner.intern(new String("completed"));
+        assertSame(completed, interner.intern(new String("completed")));
+        String failed = interner.intern(new String("failed"));
+        assertSame(failed, interner.intern(new String("failed")));
+        // The only slot now holds "failed", so "completed" gets a new canonical instance
+        String again = interner.intern(new String("completed"));
+        assertNotSame(completed, again);
+        assertSame(again, interner.intern(new String("completed")));
+    }
+
+    /**
+     * @return The number of distinct instances of the status, currency and method of the charges.
+     */
+    private int sharedStrings(final DefaultSerializer serializer) {
+        List<Charge> charges = serializer.deserializeList(json, Charge.class);
+        assertEquals(SIZE, charges.size());
+        Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (Charge charge : charges) {
+            strings.add(charge.getStatus());
+            strings.add(charge.getCurrency());
+            strings.add(charge.getMethod());
+        }
+        return strings.size();
+    }
+
+}
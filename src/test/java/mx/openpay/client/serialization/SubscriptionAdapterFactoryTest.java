@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import mx.openpay.client.Card;
+import mx.openpay.client.Subscription;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+public class SubscriptionAdapterFactoryTest {
+
+    private final Gson streaming = new GsonBuilder().registerTypeAdapter(Date.class, new DateFormatDeserializer())
+            .registerTypeAdapterFactory(new SubscriptionAdapterFactory()).create();
+
+    private final Gson tree = new GsonBuilder().registerTypeAdapter(Date.class, new DateFormatDeserializer())
+            .registerTypeAdapterFactory(new TreeSubscriptionAdapterFactory()).create();
+
+    @Test
+    public void testWrite_SameAsTree() throws Exception {
+        Subscription subscription = new Subscription().trialEndDate(new Date(1399999999000L)).planId("p1")
+                .card(new Card().cardNumber("4111111111111111"));
+        subscription.setCancelAtPeriodEnd(true);
+        subscription.setCurrentPeriodNumber(3);
+        subscription.setCreationDate(new Date(1390000000000L));
+        String json = this.streaming.toJson(subscription);
+        assertEquals(this.tree.toJson(subscription), json);
+        assertEquals(1, json.split("\"trial_end_date\":\"\\d{4}-\\d{2}-\\d{2}\"").length - 1);
+    }
+
+    @Test
+    public void testWrite_NestedList() throws Exception {
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (int i = 0; i < 3; i++) {
+            subscriptions.add(new Subscription().planId("p" + i).trialEndDate(i == 1 ? null : new Date(i * 1000L)));
+        }
+        List<List<Subscription>> nested = new ArrayList<List<Subscription>>();
+        nested.add(subscriptions);
+        nested.add(subscriptions);
+        assertEquals(this.tree.toJson(nested), this.streaming.toJson(nested));
+    }
+
+    @Test
+    public void testWrite_NullTrialEndDate() throws Exception {
+        Subscription subscription = new Subscription().planId("p1");
+        assertEquals(this.tree.toJson(subscription), this.streaming.toJson(subscription));
+        Gson nulls = new GsonBuilder().registerTypeAdapterFactory(new SubscriptionAdapterFactory()).serializeNulls()
+                .create();
+        assertEquals("null", nulls.toJsonTree(subscription).getAsJsonObject().get("trial_end_date").toString());
+    }
+
+    @Test
+    public void testRead_SameAsTree() throws Exception {
+        String json = "[{\"id\":\"s1\",\"trial_end_date\":\"2014-05-13\",\"card\":{\"id\":\"c1\"}},"
+                + "{\"id\":\"s2\",\"trial_end_date\":null}]";
+        List<Subscription> read = this.streaming.fromJson(json, new TypeToken<List<Subscription>>() {
+        }.getType());
+        List<Subscription> expected = this.tree.fromJson(json, new TypeToken<List<Subscription>>() {
+        }.getType());
+        assertEquals(this.tree.toJson(expected), this.tree.toJson(read));
+        assertEquals("c1", read.get(0).getCard().getId());
+        assertNull(read.get(1).getTrialEndDate());
+    }
+
+    @Test
+    public void testRewrite_Objects() throws Exception {
+        FieldRewritingAdapterFactory<Subscription> factory = new FieldRewritingAdapterFactory<Subscription>(
+                Subscription.class, "card") {
+
+            @Override
+            protected void writeField(final Subscription value, final String name, final JsonWriter out)
+                    throws IOException {
+                out.value(value.getCard().getCardNumber().substring(12));
+            }
+        };
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(factory).create();
+        Subscription subscription = new Subscription().planId("p1").card(new Card().cardNumber("4111111111111111"));
+        assertEquals("{\"plan_id\":\"p1\",\"card\":\"1111\"}", gson.toJson(subscription));
+
+        Subscription read = gson.fromJson("{\"plan_id\":\"p1\",\"card\":{\"id\":\"c1\"}}", Subscription.class);
+        assertEquals("p1", read.getPlanId());
+        assertEquals("c1", read.getCard().getId());
+    }
+
+    /**
+     * The previous implementation, which copied each subscription into a tree.
+     */
+    private static class TreeSubscriptionAdapterFactory extends OpenpayTypeAdapterFactory<Subscription> {
+
+        TreeSubscriptionAdapterFactory() {
+            super(Subscription.class);
+        }
+
+        @Override
+        protected void beforeWrite(final Subscription value, final JsonElement tree) {
+            if (tree.getAsJsonObject().has("trial_end_date") && value.getTrialEndDate() != null) {
+                tree.getAsJsonObject().addProperty("trial_end_date",
+                        new java.text.SimpleDateFormat("yyyy-MM-dd").format(value.getTrialEndDate()));
+            }
+        }
+    }
+
+}
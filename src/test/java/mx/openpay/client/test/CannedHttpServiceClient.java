@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mx.openpay.client.core.HttpServiceClient;
+import mx.openpay.client.core.HttpServiceResponse;
+import mx.openpay.client.core.ResponseBodyReader;
+import mx.openpay.client.core.StreamingHttpServiceClient;
+import mx.openpay.client.exceptions.ServiceUnavailableException;
+
+/**
+ * HttpServiceClient that answers with canned JSON bodies instead of calling Openpay, and keeps the requests made, for
+ * tests of the code above the HTTP client.
+ * <p>
+ * Each request gets the body of the last answer added for its method whose path ends its URL. Without an answer, PUTs
+ * and POSTs get their own body back and the rest get no body.
+ * </p>
+ */
+public class CannedHttpServiceClient implements HttpServiceClient {
+
+    private final List<Answer> answers = new CopyOnWriteArrayList<Answer>();
+
+    private final List<String> requests = new CopyOnWriteArrayList<String>();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile int status = 200;
+
+    private volatile String requestId;
+
+    /**
+     * Answers the requests of the method whose URL ends with the path.
+     * @return This client.
+     */
+    public CannedHttpServiceClient answer(final String method, final String path, final String body) {
+        this.answers.add(0, new Answer(method, path, body));
+        return this;
+    }
+
+    /**
+     * Answers every request with the status, and a JSON error body if it isn't 200.
+     */
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    /**
+     * Answers the next requests with a 503 error, before going back to the status set.
+     */
+    public void failNext(final int count) {
+        this.failures.set(count);
+    }
+
+    public void setRequestId(final String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * @return The requests made, as the method and the URL, like GET https://localhost/m/customers/c1.
+     */
+    public List<String> getRequests() {
+        return this.requests;
+    }
+
+    /**
+     * @return The URLs of the requests made with the method.
+     */
+    public List<String> getRequests(final String method) {
+        List<String> urls = new ArrayList<String>();
+        for (String request : this.requests) {
+            if (request.startsWith(method + " ")) {
+                urls.add(request.substring(method.length() + 1));
+            }
+        }
+        return urls;
+    }
+
+    @Override
+    public void setKey(final String key) {
+    }
+
+    @Override
+    public void setConnectionTimeout(final int timeoutMillis) {
+    }
+
+    @Override
+    public void setSocketTimeout(final int timeoutMillis) {
+    }
+
+    @Override
+    public HttpServiceResponse get(final String url) throws ServiceUnavailableException {
+        return this.respond("GET", url, null);
+    }
+
+    @Override
+    public HttpServiceResponse get(final String url, final Map<String, String> queryParams)
+            throws ServiceUnavailableException {
+        return this.respond("GET", url, null);
+    }
+
+    @Override
+    public HttpServiceResponse delete(final String url) throws ServiceUnavailableException {
+        return this.respond("DELETE", url, null);
+    }
+
+    @Override
+    public HttpServiceResponse put(final String url, final String json) throws ServiceUnavailableException {
+        return this.respond("PUT", url, json);
+    }
+
+    @Override
+    public HttpServiceResponse post(final String url, final String json) throws ServiceUnavailableException {
+        return this.respond("POST", url, json);
+    }
+
+    /**
+     * Keeps the request and builds its response. Every call to the client ends here.
+     * @param json The body of a PUT or POST, or null.
+     */
+    protected HttpServiceResponse respond(final String method, final String url, final String json)
+            throws ServiceUnavailableException {
+        this.requests.add(method + " " + url);
+        int statusCode = this.status;
+        if (this.failures.get() > 0 && this.failures.getAndDecrement() > 0) {
+            statusCode = 503;
+        }
+        HttpServiceResponse response = new HttpServiceResponse();
+        response.setStatusCode(statusCode);
+        response.setContentType("application/json");
+        response.setRequestId(this.requestId);
+        if (statusCode != 200) {
+            response.setBody("{\"http_code\":" + statusCode + "}");
+            return response;
+        }
+        for (Answer answer : this.answers) {
+            if (answer.method.equals(method) && url.endsWith(answer.path)) {
+                response.setBody(answer.body);
+                return response;
+            }
+        }
+        response.setBody(json);
+        return response;
+    }
+
+    private static class Answer {
+
+        private final String method;
+
+        private final String path;
+
+        private final String body;
+
+        Answer(final String method, final String path, final String body) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+
+    }
+
+    /**
+     * Gives the bodies of successful GETs to the reader, like the default client does.
+     */
+    public static class Streaming extends CannedHttpServiceClient implements StreamingHttpServiceClient {
+
+        private final AtomicInteger streamed = new AtomicInteger();
+
+        @Override
+        public HttpServiceResponse get(final String url, final Map<String, String> queryParams,
+                final ResponseBodyReader reader) throws ServiceUnavailableException {
+            HttpServiceResponse response = this.respond("GET", url, null);
+            if (response.getStatusCode() == 200 && response.getBody() != null) {
+                this.streamed.incrementAndGet();
+                try {
+                    reader.read(new StringReader(response.getBody()));
+                } catch (IOException e) {
+                    throw new ServiceUnavailableException(e);
+                }
+                response.setBody(null);
+            }
+            return response;
+        }
+
+        /**
+         * @return The number of bodies given to a reader.
+         */
+        public int getStreamed() {
+            return this.streamed.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Opencard Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.openpay.client.test;
+
+/**
+ * Builds JSON responses with the same shape as the ones returned by Openpay, for tests and benchmarks that can't call
+ * the service.
+ */
+public class SampleResponses {
+
+    private static final String[] STATUSES = { "completed", "completed", "completed", "in_progress", "failed" };
+
+    private static final String[] METHODS = { "card", "card", "store", "bank_account" };
+
+    private static final String[] BRANDS = { "visa", "mastercard", "american_express" };
+
+    public static String charge(final int i) {
+        String method = METHODS[i % METHODS.length];
+        StringBuilder sb = new StringBuilder(700);
+        sb.append("{\"id\":\"tr").append(String.format("%018d", i)).append('"');
+        sb.append(",\"amount\":").append(100 + i % 1000).append('.').append(String.format("%02d", i % 100));
+        sb.append(",\"authorization\":\"").append(String.format("%06d", i % 1000000)).append('"');
+        sb.append(",\"method\":\"").append(method).append('"');
+        sb.append(",\"operation_type\":\"in\",\"transaction_type\":\"charge\"");
+        sb.append(",\"status\":\"").append(STATUSES[i % STATUSES.length]).append('"');
+        sb.append(",\"currency\":\"").append(i % 10 == 0 ? "USD" : "MXN").append('"');
+        sb.append(",\"creation_date\":\"2014-05-").append(String.format("%02d", 1 + i % 28))
+                .append("T11:56:25-05:00\"");
+        sb.append(",\"operation_date\":\"2014-05-").append(String.format("%02d", 1 + i % 28))
+                .append("T11:56:26-05:00\"");
+        sb.append(",\"description\":\"Cargo inicial a mi cuenta\"");
+        sb.append(",\"order_id\":\"oid-").append(i).append('"');
+        sb.append(",\"error_message\":null,\"customer_id\":\"ag4nktpdzebjiye1tlze\"");
+        sb.append(",\"fee\":{\"amount\":2.90,\"tax\":0.46,\"currency\":\"MXN\"}");
+        sb.append(",\"metadata\":{\"source\":\"web\"}");
+        if ("card".equals(method)) {
+            sb.append(",\"card\":{\"type\":\"debit\",\"brand\":\"").append(BRANDS[i % BRANDS.length]).append('"');
+            sb.append(",\"card_number\":\"411111XXXXXX1111\",\"holder_name\":\"Juan Perez Ramirez\"");
+            sb.append(",\"expiration_year\":\"20\",\"expiration_month\":\"12\",\"allows_charges\":true");
+            sb.append(",\"allows_payouts\":true,\"bank_name\":\"Banamex\",\"bank_code\":\"002\"}");
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static String chargeList(final int size) {
+        return chargeList(0, size);
+    }
+
+    public static String chargeList(final int offset, final int size) {
+        StringBuilder sb = new StringBuilder(size * 700 + 2);
+        sb.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(charge(offset + i));
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+}